@@ -0,0 +1,166 @@
+package com.tom.jpedit.bench;
+
+import com.tom.jpedit.document.DocumentChangeBus;
+import com.tom.jpedit.document.DocumentSnapshot;
+import com.tom.jpedit.document.EditJournal;
+import com.tom.jpedit.document.PieceTable;
+import com.tom.jpedit.listeners.DocumentSnapshotPublisher;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Types into a document on one thread while other threads read the snapshots it publishes and flush its
+ * autosave journal, the way a window, its background workers and the autosave I/O thread do.
+ * <p>
+ * A single-threaded executor stands in for the JavaFX Application Thread: it makes every edit, delivers the
+ * {@link DocumentChangeBus} and records the hash of the text at each revision that is delivered. The readers
+ * check that every {@link DocumentSnapshot} they get from the {@link DocumentSnapshotPublisher} holds exactly the
+ * text of its revision, both through {@link DocumentSnapshot#toString()} and {@link DocumentSnapshot#writeTo}.
+ * The flusher keeps flushing an {@link EditJournal} of the document, and once typing stops the journal is
+ * recovered and compared with the document.
+ * <p>
+ * Run with {@code mvn -Pbench compile} and then
+ * {@code java -cp target/classes com.tom.jpedit.bench.SnapshotStress [pulses] [readers]}.
+ * It exits with status 1 if any check fails.
+ */
+public class SnapshotStress {
+    private static final int DEFAULT_PULSES = 20_000;
+    private static final int DEFAULT_READERS = 3;
+    private static final int MAX_EDITS_PER_PULSE = 8;
+
+    private record Subscribers(DocumentSnapshotPublisher publisher, EditJournal journal) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int pulses = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PULSES;
+        int readerCount = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_READERS;
+        Path directory = Files.createTempDirectory("jpedit-snapshot-stress");
+        Path baseFile = directory.resolve("stress.tmp");
+        Path journalFile = directory.resolve("stress.journal");
+
+        ExecutorService fxThread = Executors.newSingleThreadExecutor(r -> new Thread(r, "Editor"));
+        PieceTable document = new PieceTable("JPEdit snapshot stress\n");
+        Map<Long, Integer> hashes = new ConcurrentHashMap<>();
+        // built on the editor thread, which is the only one that touches the document and the bus
+        Subscribers subscribers = fxThread.submit(() -> {
+            DocumentChangeBus bus = new DocumentChangeBus(document, fxThread::execute);
+            hashes.put(document.revision(), document.toString().hashCode());
+            // subscribed before the publisher, so a revision is recorded before its snapshot can be read
+            bus.subscribe(changes -> hashes.put(document.revision(), document.toString().hashCode()));
+            return new Subscribers(new DocumentSnapshotPublisher(bus), new EditJournal(bus, baseFile, journalFile));
+        }).get();
+        DocumentSnapshotPublisher publisher = subscribers.publisher();
+        EditJournal journal = subscribers.journal();
+
+        AtomicBoolean typing = new AtomicBoolean(true);
+        AtomicLong checks = new AtomicLong();
+        AtomicLong flushes = new AtomicLong();
+        ExecutorService background = Executors.newFixedThreadPool(readerCount + 1);
+        List<Future<?>> running = new ArrayList<>();
+        for (int i = 0; i < readerCount; i++) {
+            running.add(background.submit(() -> {
+                while (typing.get()) {
+                    check(publisher.getSnapshot(), hashes);
+                    checks.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        running.add(background.submit(() -> {
+            while (typing.get()) {
+                journal.flush();
+                flushes.incrementAndGet();
+            }
+            return null;
+        }));
+
+        long start = System.nanoTime();
+        Random random = new Random(pulses);
+        for (int pulse = 0; pulse < pulses; pulse++) {
+            int edits = 1 + random.nextInt(MAX_EDITS_PER_PULSE);
+            long seed = random.nextLong();
+            // each pulse's edits run together, and the bus delivers them after it as Platform.runLater would
+            fxThread.execute(() -> type(document, new Random(seed), edits));
+        }
+        fxThread.submit(() -> null).get();
+        typing.set(false);
+        try {
+            for (Future<?> future : running) {
+                future.get();
+            }
+        } catch (Exception e) {
+            fail("a reader or the flusher failed: " + e.getCause());
+        }
+        background.shutdown();
+        String text = fxThread.submit(document::toString).get();
+        journal.flush();
+        fxThread.submit(journal::detach).get();
+        journal.close();
+        fxThread.shutdown();
+        fxThread.awaitTermination(1, TimeUnit.MINUTES);
+
+        if (!EditJournal.recover(baseFile, journalFile).equals(text)) {
+            fail("the recovered journal is not the document");
+        }
+        System.out.println("ok: " + pulses + " pulses in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+                                   + "ms, " + checks.get() + " snapshots checked, " + flushes.get() + " flushes, "
+                                   + text.length() + " characters");
+        Files.deleteIfExists(baseFile);
+        Files.deleteIfExists(journalFile);
+        Files.deleteIfExists(directory);
+    }
+
+    /**
+     * Makes a burst of typing, deleting and pasting at random places, keeping the document between a few hundred
+     * and a few thousand characters
+     */
+    private static void type(PieceTable document, Random random, int edits) {
+        for (int i = 0; i < edits; i++) {
+            int length = document.length();
+            int offset = random.nextInt(length + 1);
+            int kind = random.nextInt(10);
+            if (kind < 6 || length < 256) {
+                document.insert(offset, String.valueOf((char) ('a' + random.nextInt(26))));
+            } else if (kind < 9 || length > 4096) {
+                int removed = Math.min(1 + random.nextInt(4), length - offset);
+                document.delete(offset, removed);
+            } else {
+                document.insert(offset, "pasted line " + random.nextInt(1000) + "\n");
+            }
+        }
+    }
+
+    private static void check(DocumentSnapshot snapshot, Map<Long, Integer> hashes) throws IOException {
+        Integer expected = hashes.get(snapshot.revision());
+        if (expected == null) {
+            fail("snapshot of revision " + snapshot.revision() + " was published before it was delivered");
+        }
+        if (snapshot.toString().hashCode() != expected) {
+            fail("snapshot of revision " + snapshot.revision() + " does not hold the text of its revision");
+        }
+        StringWriter writer = new StringWriter(snapshot.length());
+        snapshot.writeTo(writer);
+        if (writer.toString().hashCode() != expected) {
+            fail("snapshot of revision " + snapshot.revision() + " writes text other than its own");
+        }
+    }
+
+    private static void fail(String message) {
+        System.err.println("FAILED: " + message);
+        System.exit(1);
+    }
+}
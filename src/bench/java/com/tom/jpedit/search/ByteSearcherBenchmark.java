@@ -0,0 +1,100 @@
+package com.tom.jpedit.search;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times a search through 256 MB of off-heap text with {@link ByteSearcher}, once through {@code VectorByteKernel}
+ * and once with the scalar Horspool loop, for queries of a few lengths with and without Ignore Case, against
+ * {@link String#indexOf(String)} over the same text held as a Latin-1 String.
+ * <p>
+ * The text is log-like ASCII and the query is not in it, so every byte is looked at. The forked JVM is given the
+ * Vector API; the {@code vector} score only differs from the {@code scalar} one when JPEdit was built with the
+ * vector profile and the platform has vectors of at least 16 bytes, which {@link ByteSearcher#isVectorized()}
+ * reports before the run. {@code String.indexOf} has no Ignore Case, so its score is for the exact query either way.
+ * <p>
+ * Run with {@code mvn -Pbench,vector compile exec:java -Dexec.mainClass=com.tom.jpedit.search.ByteSearcherBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class ByteSearcherBenchmark {
+    private static final long TEXT_BYTES = 256L * 1024 * 1024;
+
+    @Param({"needle", "needle in a haystack", "a needle in a haystack that is long enough to skip"})
+    public String query;
+
+    @Param({"false", "true"})
+    public boolean ignoreCase;
+
+    private Arena arena;
+    private MemorySegment text;
+    private String string;
+    private ByteSearcher searcher;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        arena = Arena.ofShared();
+        text = arena.allocate(TEXT_BYTES);
+        Random random = new Random(TEXT_BYTES);
+        long at = 0;
+        while (at < TEXT_BYTES) {
+            byte[] line = ("2024-01-01 12:00:00 INFO request " + random.nextInt(1_000_000) + " handled in "
+                           + random.nextInt(100) + "ms\n").getBytes(StandardCharsets.US_ASCII);
+            int length = (int) Math.min(line.length, TEXT_BYTES - at);
+            MemorySegment.copy(line, 0, text, ValueLayout.JAVA_BYTE, at, length);
+            at += length;
+        }
+        string = new String(text.toArray(ValueLayout.JAVA_BYTE), StandardCharsets.ISO_8859_1);
+        searcher = new ByteSearcher(query, ignoreCase);
+        System.out.println("vectorized: " + ByteSearcher.isVectorized());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        arena.close();
+    }
+
+    @Benchmark
+    public long vector() {
+        return searcher.indexOf(text, 0, TEXT_BYTES);
+    }
+
+    @Benchmark
+    public long scalar() {
+        return searcher.scalarIndexOf(text, 0, TEXT_BYTES);
+    }
+
+    @Benchmark
+    public long stringIndexOf() {
+        return string.indexOf(query);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ByteSearcherBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,92 @@
+package com.tom.jpedit.search;
+
+import com.tom.jpedit.document.DocumentSnapshot;
+import com.tom.jpedit.document.PieceTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times {@link ParallelSearch#findAll} on one thread and on the pool for snapshots of a range of sizes, to find
+ * where splitting starts to pay and so what {@link ParallelSearch#SEQUENTIAL_THRESHOLD} should be.
+ * <p>
+ * The document is log-like text with a few hundred edits in it, so the snapshot has pieces of both buffers like
+ * a document that has been typed in. The query matches about once per ten thousand characters, as a search for
+ * a word usually does. The pool has as many threads as the search pool of the application.
+ * <p>
+ * Run with {@code mvn -Pbench compile exec:java -Dexec.mainClass=com.tom.jpedit.search.ParallelSearchBenchmark}.
+ * The threshold is right where the {@code parallel} score drops below the {@code sequential} one. On a single core
+ * the pool would have one thread and never split, so pass {@code -jvmArgsAppend -XX:ActiveProcessorCount=4} to the
+ * JMH runner there; the {@code parallel} score then shows what splitting costs and nothing of what it saves.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParallelSearchBenchmark {
+    @Param({"262144", "524288", "1048576", "2097152", "4194304", "8388608", "16777216"})
+    public int chars;
+
+    @Param({"sequential", "parallel"})
+    public String mode;
+
+    private DocumentSnapshot snapshot;
+    private HorspoolSearcher searcher;
+    private ForkJoinPool pool;
+    private int threshold;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(chars);
+        StringBuilder text = new StringBuilder(chars + 128);
+        while (text.length() < chars) {
+            text.append("2024-01-01 12:00:00 INFO request ").append(random.nextInt(1_000_000))
+                .append(random.nextInt(150) == 0 ? " needle" : " handled").append(" in ")
+                .append(random.nextInt(100)).append("ms\n");
+        }
+        text.setLength(chars);
+        PieceTable document = new PieceTable(text);
+        for (int i = 0; i < 500; i++) {
+            int offset = random.nextInt(document.length());
+            document.replace(offset, Math.min(4, document.length() - offset), "edit");
+        }
+        snapshot = document.snapshot();
+        searcher = new HorspoolSearcher("needle", false);
+        pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        threshold = mode.equals("sequential") ? Integer.MAX_VALUE : 0;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public int[] findAll() {
+        return ParallelSearch.findAll(searcher, snapshot, pool, () -> false, count -> {
+        }, threshold);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ParallelSearchBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -9,5 +9,8 @@ public enum Action {
     REPLACE_ACTION,
     INSERT_TIME_DATE_ACTION,
     SHOW_HELP_ACTION,
-    SAVE_AS_ACTION
+    SAVE_AS_ACTION,
+    UNDO_ACTION,
+    REDO_ACTION,
+    GO_TO_LINE_ACTION
 }
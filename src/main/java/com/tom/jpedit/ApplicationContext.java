@@ -9,6 +9,8 @@ import com.tom.jpedit.plugins.PluginProperties;
 import com.tom.jpedit.util.LoadedJPPlugin;
 import com.tom.jpedit.util.UserPreferences;
 import com.tom.jpedit.util.Version;
+import com.tom.jpedit.workers.AutoSaveCoordinator;
+import com.tom.jpedit.workers.AutoSaveWorker;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.Event;
@@ -157,6 +159,9 @@ public class ApplicationContext {
     private final Properties properties = new Properties();
     private final UserPreferences userPreferences = new UserPreferences();
     private final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(8);
+    private final AutoSaveCoordinator autoSaveCoordinator = new AutoSaveCoordinator(autoSaveWorkersThreadGroup);
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "File Save Thread"));
+    private final ForkJoinPool searchPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
     private int existingWindows = 0;
     private int windowIdGen = 0;
     private int totalWindowCount = 0;
@@ -346,14 +351,44 @@ public class ApplicationContext {
     }
 
     /**
-     * Gets the thread pool executor for the autosave thread
+     * Gets the thread pool executor for background work such as loading files. Autosave runs on
+     * its own thread, see {@link #getAutoSaveCoordinator()}
      *
-     * @return the thread pool executor for autosave
+     * @return the thread pool executor for background work
      */
     public ScheduledThreadPoolExecutor getExecutor() {
         return executor;
     }
 
+    /**
+     * Gets the pool that large documents are searched on, split into segments that are searched in parallel.
+     * See {@link com.tom.jpedit.search.ParallelSearch}
+     *
+     * @return the fork/join pool for searching
+     */
+    public ForkJoinPool getSearchPool() {
+        return searchPool;
+    }
+
+    /**
+     * Gets the coordinator that runs the autosave of every window as one batch on its own thread
+     *
+     * @return the autosave coordinator
+     */
+    public AutoSaveCoordinator getAutoSaveCoordinator() {
+        return autoSaveCoordinator;
+    }
+
+    /**
+     * Gets the executor that files are saved on. It has a single thread so saves happen in the order
+     * they were requested, and the application waits for it to finish before exiting
+     *
+     * @return the executor for saving files
+     */
+    public ExecutorService getIoExecutor() {
+        return ioExecutor;
+    }
+
     /**
      * Gets the instance of the user preferences Properties class
      *
@@ -460,6 +495,16 @@ public class ApplicationContext {
         return ++windowIdGen;
     }
 
+    /**
+     * Makes sure no new window is given an id up to and including {@code id}, for example because a
+     * window being recovered still has temporary save files under that id
+     *
+     * @param id the highest id in use
+     */
+    public void reserveWindowIds(int id) {
+        windowIdGen = Math.max(windowIdGen, id);
+    }
+
     public void newRecentFile(File f) {
         recentFiles.remove(f);
         recentFiles.addFirst(f);
@@ -523,12 +568,22 @@ public class ApplicationContext {
             JPLogger.getAppLog().info("Saving loaded plugins...");
             saveLoadedPlugins();
             JPLogger.getAppLog().info("Done!");
-            // force shutdown since all auto-save files are deleted on normal shutdown anyway
+            JPLogger.getAppLog().info("Waiting for saves to finish...");
+            ioExecutor.shutdown();
+            if (!ioExecutor.awaitTermination(1, TimeUnit.MINUTES)) {
+                JPLogger.getErrLog().severe("Saves did not finish in time");
+            }
+            JPLogger.getAppLog().info("Done!");
+            // lets the closed windows finish deleting their auto-save files, but runs no more autosaves
             JPLogger.getAppLog().info("Shutting down autosave worker pool");
+            autoSaveCoordinator.shutdown();
             executor.shutdownNow();
+            searchPool.shutdownNow();
+            JPLogger.getAppLog().info("Autosave wrote " + AutoSaveWorker.getTotalWriteCount() + " times and skipped "
+                                              + AutoSaveWorker.getTotalSkippedCount() + " unchanged documents");
             JPLogger.getAppLog().info("Done!");
             JPLogger.getAppLog().info("Shutting down.");
-        } catch (IOException e) {
+        } catch (IOException | InterruptedException e) {
             throw new RuntimeException(e);
         }
     }
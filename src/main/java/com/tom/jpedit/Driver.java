@@ -1,21 +1,32 @@
 package com.tom.jpedit;
 
+import com.tom.jpedit.document.EditJournal;
 import com.tom.jpedit.gui.JPEditWindow;
 import com.tom.jpedit.gui.confirmation.ConfirmationDialog;
 import com.tom.jpedit.gui.confirmation.ConfirmationType;
 import com.tom.jpedit.gui.i18n.Strings;
 import com.tom.jpedit.logging.JPLogger;
+import com.tom.jpedit.workers.AutoSaveManifest;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.stage.Stage;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import tom.javafx.JavaFXUtilsKt;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.util.stream.Collectors;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * @author Thomas Povinelli
@@ -24,6 +35,21 @@ import java.util.stream.Collectors;
  */
 public class Driver extends Application {
 
+    private static final Pattern TEMP_SAVE_NAME = Pattern.compile("tempSave_(\\d+)\\.tmp");
+
+    /**
+     * An autosave left behind by a window, found through the manifest or, failing that, by its file name
+     */
+    private record Recoverable(
+            int windowId,
+            @NotNull Path base,
+            @NotNull Path journal,
+            @Nullable File saveFile,
+            @NotNull Charset charset,
+            long size
+    ) {
+    }
+
     public static void main(String[] args) {
         launch(args);
     }
@@ -56,8 +82,7 @@ public class Driver extends Application {
                 if (contents != null && contents.length > 0) {
                     ConfirmationType confirmationType = promptForRecovery();
                     if (confirmationType == ConfirmationType.YES) {
-                        recoverAllTempFiles(contents);
-                        removeRecoverableFiles(contents);
+                        recoverAllTempFiles(file, contents);
                         return;
                     }
                     if (confirmationType == ConfirmationType.NO) {
@@ -74,22 +99,138 @@ public class Driver extends Application {
         }
     }
 
-    private void recoverAllTempFiles(@NotNull File @NotNull [] contents) {
-        for (File tf : contents) {
-            try (BufferedReader reader = new BufferedReader(new FileReader(tf))) {
-                String recovered = reader.lines().collect(Collectors.joining(System.lineSeparator()));
-                JPEditWindow window = new JPEditWindow();
-                window.setTitle(tf.getName());
-                window.getTextArea().setText(recovered);
-                context.registerWindow(window);
-                window.show();
-            } catch (IOException e) {
+    /**
+     * Opens a window for every autosave in the temporary saves directory, with the edits in its journal
+     * replayed onto it.
+     * <p>
+     * The autosaves are read in parallel on the background executor, largest first, and each window opens as
+     * soon as its own text has been read. Once every autosave has been recovered, the base and journal of each are
+     * removed and its entry is taken out of the manifest, which the windows already open may have autosaved into by
+     * then. If any cannot be recovered, nothing is removed so the user may be prompted again the next time JPEdit
+     * starts
+     */
+    private void recoverAllTempFiles(@NotNull File tempSaveDir, @NotNull File @NotNull [] contents) {
+        List<Recoverable> recoverables = findRecoverable(tempSaveDir.toPath(), contents);
+        recoverables.sort(Comparator.comparingLong(Recoverable::size).reversed());
+        // new windows must not autosave over files that are still being recovered
+        recoverables.forEach(r -> context.reserveWindowIds(r.windowId()));
+        List<CompletableFuture<Void>> recoveries = new ArrayList<>();
+        for (Recoverable recoverable : recoverables) {
+            recoveries.add(CompletableFuture.supplyAsync(() -> recover(recoverable), context.getExecutor())
+                                            .thenAcceptAsync(text -> openRecovered(recoverable, text), Platform::runLater));
+        }
+        CompletableFuture.allOf(recoveries.toArray(CompletableFuture[]::new)).whenCompleteAsync((ignored, e) -> {
+            if (e == null) {
+                removeRecovered(recoverables);
+            } else {
                 JavaFXUtilsKt.popupAlert(
                         "The temporary saves could not be recovered. No files will be deleted. You may be prompted the next time you start JPEdit",
                         "Could not recover text!"
                 );
+                JPLogger.getErrLog().warning("Could not recover temporary saves: " + e.getMessage());
+            }
+            if (context.getWindowsUnmodifiable().isEmpty()) {
+                normalStartUp();
+            }
+        }, Platform::runLater);
+    }
+
+    private @NotNull List<Recoverable> findRecoverable(@NotNull Path tempSaveDir, @NotNull File @NotNull [] contents) {
+        List<Recoverable> recoverables = new ArrayList<>();
+        try {
+            List<AutoSaveManifest.Entry> entries = AutoSaveManifest.read(tempSaveDir);
+            if (entries != null) {
+                List<AutoSaveManifest.Entry> kept = new ArrayList<>();
+                for (AutoSaveManifest.Entry entry : entries) {
+                    Path base = tempSaveDir.resolve(entry.baseFile());
+                    if (Files.isRegularFile(base)) {
+                        kept.add(entry);
+                        recoverables.add(new Recoverable(
+                                entry.windowId(),
+                                base,
+                                tempSaveDir.resolve(entry.journalFile()),
+                                entry.savePath() == null ? null : new File(entry.savePath()),
+                                charsetOf(entry),
+                                entry.size()
+                        ));
+                    }
+                }
+                context.getAutoSaveCoordinator().keepRecovering(kept);
+                return recoverables;
+            }
+        } catch (IOException e) {
+            JPLogger.getErrLog().warning("Could not read the autosave manifest, recovering by file name: " + e.getMessage());
+        }
+        // no manifest, so every base is recovered without knowing where it came from
+        for (File tf : contents) {
+            Matcher matcher = TEMP_SAVE_NAME.matcher(tf.getName());
+            if (!matcher.matches()) {
+                continue;
+            }
+            Path journal = tf.toPath().resolveSibling(tf.getName().replaceFirst("\\.tmp$", ".journal"));
+            recoverables.add(new Recoverable(
+                    Integer.parseInt(matcher.group(1)),
+                    tf.toPath(),
+                    journal,
+                    null,
+                    StandardCharsets.UTF_8,
+                    tf.length()
+            ));
+        }
+        return recoverables;
+    }
+
+    private static @NotNull Charset charsetOf(@NotNull AutoSaveManifest.Entry entry) {
+        try {
+            return Charset.forName(entry.encoding());
+        } catch (IllegalArgumentException e) {
+            JPLogger.getErrLog().warning(
+                    "Unknown encoding " + entry.encoding() + " of autosave " + entry.baseFile() + ", recovering it as UTF-8");
+            return StandardCharsets.UTF_8;
+        }
+    }
+
+    private static @NotNull String recover(@NotNull Recoverable recoverable) {
+        try {
+            return EditJournal.recover(recoverable.base(), recoverable.journal(), recoverable.charset());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void openRecovered(@NotNull Recoverable recoverable, @NotNull String text) {
+        JPEditWindow window = new JPEditWindow();
+        window.getTextArea().setText(text);
+        if (recoverable.saveFile() != null) {
+            window.setSaveFile(recoverable.saveFile());
+            window.setTitle(recoverable.saveFile().getName());
+            // the recovered text is not what is in the file
+            window.wasDirtied();
+        } else {
+            window.setTitle(recoverable.base().getFileName().toString());
+        }
+        context.registerWindow(window);
+        window.show();
+    }
+
+    private void removeRecovered(@NotNull List<Recoverable> recoverables) {
+        List<Integer> windowIds = new ArrayList<>();
+        for (Recoverable recoverable : recoverables) {
+            try {
+                JPLogger.getAppLog().info("Attempting to delete " + recoverable.base());
+                Files.deleteIfExists(recoverable.base());
+                Files.deleteIfExists(recoverable.journal());
+                windowIds.add(recoverable.windowId());
+            } catch (IOException e) {
+                JavaFXUtilsKt.popupAlert("Could not remove temporary files. See logs for details", "Could not remove files");
+                JPLogger.getErrLog().warning(() -> "Could not remove temporary file " + recoverable.base().getFileName());
+                JPLogger.getErrLog().warning(e::getMessage);
+                JPLogger.getErrLog().warning(() -> JavaFXUtilsKt.stackTraceToString(e.getStackTrace()));
+                break;
             }
         }
+        // an autosave that could not be removed keeps its entry, so it is recovered knowing what it was
+        context.getAutoSaveCoordinator().forgetRecovered(windowIds);
     }
 
     private void removeRecoverableFiles(@NotNull File @NotNull [] contents) {
@@ -0,0 +1,106 @@
+package com.tom.jpedit.document;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hands the changes made to a {@link PieceTable} to its subscribers once per pulse rather than inside every edit.
+ * <p>
+ * The bus is the document's only {@link DocumentListener} that is not part of the text control. It queues each
+ * edit as a delta, merging it into the one before when the two are one run of typing or deleting, and the first
+ * change of a pulse asks the scheduler to deliver them. Each subscriber then gets a single
+ * {@link DocumentChanges} with the deltas, so a burst of edits costs it work in proportion to the edits and not
+ * to the document, and never one call per key. A reset of the document drops the queued deltas and is
+ * delivered as a reset.
+ * <p>
+ * Anything that needs to see the document inside each edit, such as the text control itself, listens to the
+ * document directly instead. A subscriber about to read something the bus may not have delivered yet can
+ * {@link #flush()} it first.
+ * <p>
+ * A DocumentChangeBus is not thread safe and should only be used on the thread that edits the document.
+ */
+public class DocumentChangeBus implements DocumentListener {
+    private final PieceTable document;
+    private final Consumer<Runnable> scheduler;
+    private final List<DocumentChangeListener> subscribers = new ArrayList<>();
+    private List<DocumentEdit> pending = new ArrayList<>();
+    private boolean resetPending = false;
+    private boolean deliveryScheduled = false;
+
+    /**
+     * Starts listening to the document
+     *
+     * @param document  the document to publish the changes of
+     * @param scheduler runs a delivery later on the thread that edits the document, once the current pulse is done,
+     *                  such as {@code Platform::runLater}
+     */
+    public DocumentChangeBus(@NotNull PieceTable document, @NotNull Consumer<Runnable> scheduler) {
+        this.document = document;
+        this.scheduler = scheduler;
+        document.addListener(this);
+    }
+
+    public @NotNull PieceTable getDocument() {
+        return document;
+    }
+
+    /**
+     * Adds a subscriber, which is told about changes from the next delivery on
+     */
+    public void subscribe(@NotNull DocumentChangeListener subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    public void unsubscribe(@NotNull DocumentChangeListener subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    @Override
+    public void edited(@NotNull DocumentEdit edit) {
+        if (!resetPending) {
+            DocumentEdit merged = pending.isEmpty() ? null : pending.getLast().mergedWith(edit);
+            if (merged == null) {
+                pending.add(edit);
+            } else if (merged.isEmpty()) {
+                pending.removeLast();
+            } else {
+                pending.set(pending.size() - 1, merged);
+            }
+        }
+        scheduleDelivery();
+    }
+
+    @Override
+    public void documentReset(@NotNull PieceTable document) {
+        resetPending = true;
+        pending.clear();
+        scheduleDelivery();
+    }
+
+    private void scheduleDelivery() {
+        if (!deliveryScheduled) {
+            deliveryScheduled = true;
+            scheduler.accept(this::flush);
+        }
+    }
+
+    /**
+     * Delivers the changes queued so far right away rather than at the end of the pulse. Does nothing if there
+     * are none
+     */
+    public void flush() {
+        deliveryScheduled = false;
+        if (!resetPending && pending.isEmpty()) {
+            return;
+        }
+        DocumentChanges changes = new DocumentChanges(List.copyOf(pending), resetPending, document.revision());
+        pending = new ArrayList<>();
+        resetPending = false;
+        for (DocumentChangeListener subscriber : List.copyOf(subscribers)) {
+            subscriber.documentChanged(changes);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.tom.jpedit.document;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Subscribes to a {@link DocumentChangeBus}. Unlike a {@link DocumentListener}, which is called inside every edit,
+ * a subscriber is called at most once a pulse, after the edits, with everything that changed since it was last
+ * called.
+ */
+@FunctionalInterface
+public interface DocumentChangeListener {
+
+    /**
+     * Called on the thread the bus delivers on, which for a window is the JavaFX Application Thread
+     *
+     * @param changes what changed since the last call
+     */
+    void documentChanged(@NotNull DocumentChanges changes);
+}
@@ -0,0 +1,21 @@
+package com.tom.jpedit.document;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * The changes made to a {@link PieceTable} during one pulse, as handed out by a {@link DocumentChangeBus}.
+ * <p>
+ * The edits are in the order they were made, each one relative to the document as the ones before it left it,
+ * with consecutive typing or deleting merged into one edit. When the document was reset during the pulse the
+ * edits are not listed, since anything known about the content before no longer applies, and a subscriber has to
+ * start over from the document as it is now.
+ *
+ * @param edits    the edits made, empty if the document was reset
+ * @param reset    true if the whole content of the document was replaced, see
+ *                 {@link DocumentListener#documentReset(PieceTable)}
+ * @param revision the revision of the document after the changes
+ */
+public record DocumentChanges(@NotNull List<DocumentEdit> edits, boolean reset, long revision) {
+}
@@ -0,0 +1,76 @@
+package com.tom.jpedit.document;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A single change made to a {@link PieceTable}: {@code removedLength} characters starting at {@code offset}
+ * were replaced by {@code inserted}. Either may be empty but not both.
+ * <p>
+ * Only the length of the removed text is kept, so an edit costs the size of what was typed or pasted however
+ * much was deleted.
+ *
+ * @param offset        where the change starts
+ * @param removedLength how many characters were removed
+ * @param inserted      the text that was put in their place
+ * @param revision      the revision of the document after the change
+ */
+public record DocumentEdit(int offset, int removedLength, @NotNull String inserted, long revision) {
+
+    /**
+     * @return the offset just after the inserted text
+     */
+    public int insertedEnd() {
+        return offset + inserted.length();
+    }
+
+    /**
+     * @return the offset just after the removed text, in the document as it was before the change
+     */
+    public int removedEnd() {
+        return offset + removedLength;
+    }
+
+    /**
+     * @return how much longer the document became, negative if it became shorter
+     */
+    public int lengthDelta() {
+        return inserted.length() - removedLength;
+    }
+
+    /**
+     * Merges an edit that directly follows this one into a single edit, when the two are one run of typing or of
+     * deleting: text inserted right after this one's, backspace over it or over the text before it, or delete
+     * at the same offset again
+     *
+     * @param next the edit made right after this one
+     * @return the edit that has the same effect as both, an empty edit if the second undoes the first, or null if
+     * they cannot be merged
+     */
+    @Nullable DocumentEdit mergedWith(@NotNull DocumentEdit next) {
+        if (next.removedLength == 0 && next.offset == insertedEnd()) {
+            return new DocumentEdit(offset, removedLength, inserted + next.inserted, next.revision);
+        }
+        if (!next.inserted.isEmpty()) {
+            return null;
+        }
+        if (next.offset >= offset && next.removedEnd() == insertedEnd()) {
+            // backspace over the text this edit inserted
+            return new DocumentEdit(offset, removedLength, inserted.substring(0, next.offset - offset), next.revision);
+        }
+        if (inserted.isEmpty() && next.removedEnd() == offset) {
+            return new DocumentEdit(next.offset, next.removedLength + removedLength, "", next.revision);
+        }
+        if (inserted.isEmpty() && next.offset == offset) {
+            return new DocumentEdit(offset, removedLength + next.removedLength, "", next.revision);
+        }
+        return null;
+    }
+
+    /**
+     * @return true if the edit changes nothing, which only a merge of an edit with its undoing makes
+     */
+    boolean isEmpty() {
+        return removedLength == 0 && inserted.isEmpty();
+    }
+}
@@ -0,0 +1,46 @@
+package com.tom.jpedit.document;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Listens for changes to a {@link PieceTable}. Listeners are called on the thread that changed the
+ * document, which is the JavaFX Application Thread, right after the change has been applied.
+ */
+public interface DocumentListener {
+
+    /**
+     * Called just before part of the document is replaced, while the text about to be removed can still be read.
+     * Most listeners only need {@link #edited(DocumentEdit)}
+     *
+     * @param document      the document being edited
+     * @param offset        where the change starts
+     * @param removedLength how many characters are about to be removed
+     */
+    default void aboutToEdit(@NotNull PieceTable document, int offset, int removedLength) {
+    }
+
+    /**
+     * Called just before the entire content of the document is replaced by {@link PieceTable#reset(CharSequence)},
+     * while the old content can still be read. Text appended to the original buffer while a file is loaded is not
+     * announced
+     *
+     * @param document the document about to be reset
+     */
+    default void aboutToReset(@NotNull PieceTable document) {
+    }
+
+    /**
+     * Called after part of the document was replaced
+     *
+     * @param edit the change that was made
+     */
+    void edited(@NotNull DocumentEdit edit);
+
+    /**
+     * Called after the entire content of the document was replaced, or text was appended to its original buffer
+     * while a file is loaded. Anything a listener knows about the previous content no longer applies
+     *
+     * @param document the document that was reset
+     */
+    void documentReset(@NotNull PieceTable document);
+}
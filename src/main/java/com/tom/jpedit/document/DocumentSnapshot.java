@@ -0,0 +1,198 @@
+package com.tom.jpedit.document;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An immutable view of a {@link PieceTable} as it was at one revision.
+ * <p>
+ * Taking a snapshot only copies the list of pieces. The buffers the pieces refer to are shared with
+ * the live document, which is safe because a range of a {@link TextBuffer} never changes once written.
+ * Unlike the document itself, a snapshot may be read from any thread once it has been handed over,
+ * for example to a worker that writes it to disk while the user keeps typing.
+ */
+public final class DocumentSnapshot implements CharSequence {
+    private final List<PieceTable.Piece> pieces;
+    private final int[] pieceStarts;
+    private final int length;
+    private final long revision;
+    private final long contentHash;
+    private final FileLayout fileLayout;
+
+    DocumentSnapshot(
+            @NotNull List<PieceTable.Piece> pieces,
+            long revision,
+            long contentHash,
+            @Nullable FileLayout fileLayout
+    ) {
+        this.pieces = List.copyOf(pieces);
+        this.pieceStarts = new int[this.pieces.size()];
+        int offset = 0;
+        for (int i = 0; i < this.pieces.size(); i++) {
+            pieceStarts[i] = offset;
+            offset += this.pieces.get(i).length();
+        }
+        this.length = offset;
+        this.revision = revision;
+        this.contentHash = contentHash;
+        this.fileLayout = fileLayout;
+    }
+
+    /**
+     * @return where the text of the document was on disk when the snapshot was taken, or null if unknown
+     */
+    public @Nullable FileLayout fileLayout() {
+        return fileLayout;
+    }
+
+    /**
+     * @return the revision of the document this is a snapshot of
+     * @see PieceTable#revision()
+     */
+    public long revision() {
+        return revision;
+    }
+
+    /**
+     * @return the hash of the text of the snapshot
+     * @see PieceTable#contentHash()
+     */
+    public long contentHash() {
+        return contentHash;
+    }
+
+    List<PieceTable.Piece> pieces() {
+        return pieces;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index " + index + " out of bounds for length " + length);
+        }
+        int p = findPiece(index);
+        PieceTable.Piece piece = pieces.get(p);
+        return piece.buffer().charAt(piece.start() + index - pieceStarts[p]);
+    }
+
+    @Override
+    public @NotNull String subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("range [" + start + ", " + end + ") out of bounds for length " + length);
+        }
+        if (start == end) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(end - start);
+        int p = findPiece(start);
+        int offset = start;
+        while (offset < end) {
+            PieceTable.Piece piece = pieces.get(p);
+            int inPiece = offset - pieceStarts[p];
+            int n = Math.min(piece.length() - inPiece, end - offset);
+            piece.buffer().appendTo(sb, piece.start() + inPiece, piece.start() + inPiece + n);
+            offset += n;
+            p++;
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public @NotNull String toString() {
+        return subSequence(0, length);
+    }
+
+    /**
+     * Writes the snapshot to the writer piece by piece
+     *
+     * @param writer the destination of the text
+     * @throws IOException if the writer throws
+     */
+    public void writeTo(@NotNull Writer writer) throws IOException {
+        for (PieceTable.Piece piece : pieces) {
+            piece.buffer().writeTo(writer, piece.start(), piece.end());
+        }
+    }
+
+    /**
+     * Writes the snapshot to a channel as UTF-8, copying every piece that {@code layout} says is already in
+     * {@code source} with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+     * and encoding only the rest. When most of the document is unchanged since it was loaded or last saved,
+     * the cost of the save depends on the size of the edits rather than the size of the file.
+     *
+     * @param channel the channel being written to, positioned at 0
+     * @param writer  a UTF-8 writer on {@code channel}
+     * @param layout  where pieces can be found in {@code source}, or null to encode every piece
+     * @param source  the file the layout describes, open for reading, or null to encode every piece
+     * @return where each piece ended up in the written file, or null if that cannot be known exactly
+     * @throws IOException if reading or writing fails
+     */
+    public @Nullable List<FileLayout.Span> writeUtf8(
+            @NotNull FileChannel channel,
+            @NotNull Writer writer,
+            @Nullable FileLayout layout,
+            @Nullable FileChannel source
+    ) throws IOException {
+        List<FileLayout.Span> written = new ArrayList<>(pieces.size());
+        boolean exact = true;
+        long position = 0;
+        // the writer holds back a high surrogate at the end of a write until it sees what follows
+        boolean writerHoldsSurrogate = false;
+        for (PieceTable.Piece piece : pieces) {
+            TextBuffer buffer = piece.buffer();
+            boolean pieceExact = buffer.isUtf8Exact(piece.start(), piece.end());
+            long bytes = pieceExact ? buffer.utf8Offset(piece.end()) - buffer.utf8Offset(piece.start()) : 0;
+            FileLayout.Span span = pieceExact && !writerHoldsSurrogate && layout != null && source != null
+                                   ? layout.find(buffer, piece.start(), piece.end())
+                                   : null;
+            if (span != null) {
+                writer.flush();
+                transfer(source, layout.fileOffset(span, piece.start()), bytes, channel);
+            } else {
+                buffer.writeTo(writer, piece.start(), piece.end());
+                writerHoldsSurrogate = Character.isHighSurrogate(buffer.charAt(piece.end() - 1));
+            }
+            exact &= pieceExact;
+            written.add(new FileLayout.Span(buffer, piece.start(), piece.end(), position));
+            position += bytes;
+        }
+        writer.flush();
+        return exact && position == channel.position() ? written : null;
+    }
+
+    private static void transfer(FileChannel source, long from, long count, FileChannel target) throws IOException {
+        while (count > 0) {
+            long n = source.transferTo(from, count, target);
+            if (n <= 0) {
+                throw new IOException("Source file ended before byte " + (from + count));
+            }
+            from += n;
+            count -= n;
+        }
+    }
+
+    private int findPiece(int offset) {
+        int lo = 0;
+        int hi = pieces.size() - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (pieceStarts[mid] <= offset) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,432 @@
+package com.tom.jpedit.document;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of the edits made to a {@link PieceTable}, used for autosave.
+ * <p>
+ * Rather than writing out the whole document every time, the journal keeps a <i>base</i> file holding the
+ * document as it was at some point and a <i>journal</i> file holding every edit made since, as
+ * (offset, removed length, inserted text) records. The amount written by each {@link #flush()} is the
+ * amount that was typed, not the size of the document. Once the edits logged since the base outgrow the
+ * document the journal is compacted: a new base is written and the journal starts over.
+ * <p>
+ * The journal subscribes to the document's {@link DocumentChangeBus} on the FX thread, where it only queues the
+ * edits of each pulse and, when a new base is needed, takes a {@link DocumentSnapshot}. {@link #flush()} does the writing and may be called from any
+ * one thread at a time.
+ * <p>
+ * Both files start with a generation number. A journal is only replayed onto a base of the same generation,
+ * so a crash between writing a new base and starting its journal can never replay old edits onto it.
+ * Each record carries a CRC so a record torn by a crash ends the replay rather than corrupting it.
+ * <p>
+ * The journal also tracks the {@link PieceTable#revision()} of the document it has queued and the one it has
+ * persisted, so a caller can tell without touching the document whether there is anything to write.
+ *
+ * @see #recover(Path, Path)
+ */
+public class EditJournal implements DocumentChangeListener, Closeable {
+    private static final int BASE_MAGIC = 0x4A504231; // JPB1
+    private static final int JOURNAL_MAGIC = 0x4A504A31; // JPJ1
+    private static final int HEADER_BYTES = Integer.BYTES + Long.BYTES;
+    private static final int RECORD_OVERHEAD_BYTES = 4 * Integer.BYTES;
+    /**
+     * The journal is never compacted before it holds this many bytes of edits
+     */
+    private static final long MIN_COMPACT_BYTES = 1024 * 1024;
+    private static final int RECOVER_BLOCK_BYTES = 64 * 1024;
+
+    private final DocumentChangeBus bus;
+    private final PieceTable document;
+    private final Path baseFile;
+    private final Path journalFile;
+
+    // guarded by this, written on the FX thread and taken by flush
+    private DocumentSnapshot pendingBase;
+    private List<DocumentEdit> pendingEdits = new ArrayList<>();
+    private long bytesSinceBase;
+    private long queuedRevision;
+    private volatile long persistedRevision = -1;
+
+    // only used by the flushing thread
+    private long generation;
+    private FileChannel journal;
+    private long bytesWritten;
+
+    /**
+     * Starts a journal of the document. The first {@link #flush()} writes the document as it is now as the base
+     *
+     * @param bus         the change bus of the document to journal. The journal subscribes to it
+     * @param baseFile    where the base is written
+     * @param journalFile where the edits are written
+     */
+    public EditJournal(@NotNull DocumentChangeBus bus, @NotNull Path baseFile, @NotNull Path journalFile) {
+        this.bus = bus;
+        this.document = bus.getDocument();
+        this.baseFile = baseFile;
+        this.journalFile = journalFile;
+        this.pendingBase = document.snapshot();
+        this.queuedRevision = document.revision();
+        bus.subscribe(this);
+    }
+
+    @Override
+    public synchronized void documentChanged(@NotNull DocumentChanges changes) {
+        long seen = queuedRevision;
+        if (changes.revision() <= seen) {
+            return;
+        }
+        queuedRevision = changes.revision();
+        if (changes.reset()) {
+            rebase();
+            return;
+        }
+        for (DocumentEdit edit : changes.edits()) {
+            // edits made before the journal started are already in its base
+            if (edit.revision() > seen) {
+                pendingEdits.add(edit);
+                bytesSinceBase += RECORD_OVERHEAD_BYTES + 3L * edit.inserted().length();
+            }
+        }
+        if (bytesSinceBase > MIN_COMPACT_BYTES && bytesSinceBase > document.length()) {
+            // replaying the journal would now cost more than reading a new base
+            rebase();
+        }
+    }
+
+    private void rebase() {
+        pendingBase = document.snapshot();
+        pendingEdits = new ArrayList<>();
+        bytesSinceBase = 0;
+    }
+
+    /**
+     * @return true if the revision of the document last seen by the journal has been written to disk
+     */
+    public synchronized boolean isUpToDate() {
+        return queuedRevision == persistedRevision;
+    }
+
+    /**
+     * @return the revision of the document as of the last {@link #flush()}, or -1 if nothing was flushed yet
+     */
+    public long getPersistedRevision() {
+        return persistedRevision;
+    }
+
+    public long flush() throws IOException {
+        return flush(false);
+    }
+
+    /**
+     * Writes the queued base, if any, and appends the queued edits to the journal.
+     * <p>
+     * If either cannot be written, whatever was not written is queued again ahead of anything queued since, so the
+     * next flush retries it. A record only partly appended is cut off the journal again first
+     *
+     * @param forceBase true to force a new base to the storage device before it replaces the old one.
+     *                  The journal itself is only forced by {@link #force()}
+     * @return the number of bytes written
+     * @throws IOException if either file cannot be written
+     */
+    public long flush(boolean forceBase) throws IOException {
+        DocumentSnapshot base;
+        List<DocumentEdit> edits;
+        long revision;
+        synchronized (this) {
+            base = pendingBase;
+            edits = pendingEdits;
+            revision = queuedRevision;
+            pendingBase = null;
+            pendingEdits = new ArrayList<>();
+        }
+        long before = bytesWritten;
+        try {
+            if (base != null) {
+                writeBase(base, forceBase);
+                base = null;
+            }
+            if (!edits.isEmpty()) {
+                append(edits);
+            }
+        } catch (IOException e) {
+            requeue(base, edits);
+            throw e;
+        }
+        persistedRevision = revision;
+        return bytesWritten - before;
+    }
+
+    private void append(List<DocumentEdit> edits) throws IOException {
+        if (journal == null) {
+            throw new IllegalStateException("Edits were journaled before any base was written");
+        }
+        ByteBuffer records = ByteBuffer.wrap(encode(edits));
+        long end = journal.position();
+        try {
+            while (records.hasRemaining()) {
+                bytesWritten += journal.write(records);
+            }
+        } catch (IOException e) {
+            try {
+                journal.truncate(end);
+            } catch (IOException ignored) {
+                // a torn record ends the replay on recovery, and the edits are written again after it anyway
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Puts back a base and edits that could not be written, unless a newer base has been queued since, which
+     * replaces them both
+     */
+    private synchronized void requeue(DocumentSnapshot base, List<DocumentEdit> edits) {
+        if (pendingBase != null) {
+            return;
+        }
+        pendingBase = base;
+        pendingEdits.addAll(0, edits);
+    }
+
+    /**
+     * @return the total number of bytes this journal has written to both files
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Forces everything flushed to the journal so far to the storage device
+     *
+     * @throws IOException if the journal cannot be forced
+     */
+    public void force() throws IOException {
+        if (journal != null) {
+            journal.force(false);
+        }
+    }
+
+    private void writeBase(DocumentSnapshot base, boolean force) throws IOException {
+        generation++;
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+        Path temp = Files.createTempFile(baseFile.toAbsolutePath().getParent(), baseFile.getFileName() + ".", ".part");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE);
+                 Writer writer = Channels.newWriter(channel, newEncoder(), 64 * 1024)) {
+                channel.write(header(BASE_MAGIC, generation));
+                base.writeTo(writer);
+                writer.flush();
+                if (force) {
+                    channel.force(true);
+                }
+                bytesWritten += channel.size();
+            }
+            try {
+                Files.move(temp, baseFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, baseFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        journal = FileChannel.open(
+                journalFile,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING
+        );
+        bytesWritten += journal.write(header(JOURNAL_MAGIC, generation));
+    }
+
+    private static ByteBuffer header(int magic, long generation) {
+        return ByteBuffer.allocate(HEADER_BYTES).putInt(magic).putLong(generation).flip();
+    }
+
+    private static byte[] encode(List<DocumentEdit> edits) throws CharacterCodingException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CharsetEncoder encoder = newEncoder();
+        CRC32 crc = new CRC32();
+        for (DocumentEdit edit : edits) {
+            ByteBuffer inserted = encoder.encode(CharBuffer.wrap(edit.inserted()));
+            ByteBuffer record = ByteBuffer.allocate(RECORD_OVERHEAD_BYTES + inserted.remaining());
+            record.putInt(edit.offset()).putInt(edit.removedLength()).putInt(inserted.remaining()).put(inserted);
+            crc.reset();
+            crc.update(record.array(), 0, record.position());
+            record.putInt((int) crc.getValue());
+            bytes.writeBytes(record.array());
+        }
+        return bytes.toByteArray();
+    }
+
+    // unpaired surrogates become a single '?', so character offsets are the same after decoding
+    private static CharsetEncoder newEncoder() {
+        return StandardCharsets.UTF_8.newEncoder()
+                                     .onMalformedInput(CodingErrorAction.REPLACE)
+                                     .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Stops journaling the document. Edits already queued are still written by the next flush.
+     * Call on the FX thread
+     */
+    public void detach() {
+        bus.unsubscribe(this);
+    }
+
+    /**
+     * Closes the journal file. The files are left on disk. Call on the flushing thread once the journal has been
+     * {@link #detach() detached}, so no flush can follow
+     */
+    @Override
+    public void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+
+    /**
+     * Rebuilds the text of a document from its base and journal, written as UTF-8
+     *
+     * @see #recover(Path, Path, Charset)
+     */
+    public static @NotNull String recover(@NotNull Path baseFile, @NotNull Path journalFile) throws IOException {
+        return recover(baseFile, journalFile, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Rebuilds the text of a document from its base and journal.
+     * <p>
+     * A base written before journals existed (plain text without a header) is returned as it is. Records
+     * are replayed up to the end of the journal or the first record that is torn or does not apply.
+     * <p>
+     * Both files are read through a channel a block at a time and the base is decoded straight into the
+     * original buffer of the document the journal is replayed onto, so recovering holds the text once rather
+     * than the bytes of both files as well.
+     *
+     * @param baseFile    the base written by a journal
+     * @param journalFile the journal, which need not exist
+     * @param charset     the charset the base and the inserted text of the journal were written in
+     * @return the recovered text
+     * @throws IOException if the base cannot be read
+     */
+    public static @NotNull String recover(
+            @NotNull Path baseFile,
+            @NotNull Path journalFile,
+            @NotNull Charset charset
+    ) throws IOException {
+        PieceTable document = new PieceTable();
+        long baseGeneration;
+        try (FileChannel base = FileChannel.open(baseFile, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            if (!readFully(base, header) || header.getInt(0) != BASE_MAGIC) {
+                decodeInto(document, base.position(0), charset);
+                return document.toString();
+            }
+            baseGeneration = header.getLong(Integer.BYTES);
+            decodeInto(document, base, charset);
+        }
+        if (!Files.exists(journalFile)) {
+            return document.toString();
+        }
+        try (FileChannel journal = FileChannel.open(journalFile, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            if (!readFully(journal, header) || header.getInt(0) != JOURNAL_MAGIC || header.getLong(Integer.BYTES) != baseGeneration) {
+                return document.toString();
+            }
+            CharsetDecoder decoder = newDecoder(charset);
+            ByteBuffer fields = ByteBuffer.allocate(3 * Integer.BYTES);
+            ByteBuffer checksum = ByteBuffer.allocate(Integer.BYTES);
+            CRC32 crc = new CRC32();
+            while (readFully(journal, fields.clear())) {
+                int offset = fields.getInt(0);
+                int removed = fields.getInt(Integer.BYTES);
+                int insertedBytes = fields.getInt(2 * Integer.BYTES);
+                // a torn length must not be trusted for an allocation
+                if (insertedBytes < 0 || journal.size() - journal.position() < insertedBytes + Integer.BYTES) {
+                    break;
+                }
+                ByteBuffer inserted = ByteBuffer.allocate(insertedBytes);
+                if (!readFully(journal, inserted) || !readFully(journal, checksum.clear())) {
+                    break;
+                }
+                crc.reset();
+                crc.update(fields.array());
+                crc.update(inserted.array());
+                if (checksum.getInt(0) != (int) crc.getValue()
+                        || offset < 0 || removed < 0 || offset + removed > document.length()) {
+                    break;
+                }
+                document.replace(offset, removed, decoder.reset().decode(inserted.flip()).toString());
+            }
+        }
+        return document.toString();
+    }
+
+    /**
+     * Fills the buffer from the channel
+     *
+     * @return false if the channel ended first
+     */
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the rest of the channel onto the end of the original buffer of the document, a block at a time
+     */
+    private static void decodeInto(PieceTable document, FileChannel channel, Charset charset) throws IOException {
+        CharsetDecoder decoder = newDecoder(charset);
+        ByteBuffer bytes = ByteBuffer.allocate(RECOVER_BLOCK_BYTES);
+        CharBuffer chars = CharBuffer.allocate((int) Math.ceil(RECOVER_BLOCK_BYTES * decoder.maxCharsPerByte()));
+        boolean end = false;
+        while (!end) {
+            end = channel.read(bytes) < 0;
+            decoder.decode(bytes.flip(), chars, end);
+            if (end) {
+                decoder.flush(chars);
+            }
+            // a character split across blocks stays in the buffer for the next read
+            bytes.compact();
+            document.appendOriginal(chars.flip());
+            chars.clear();
+        }
+    }
+
+    private static CharsetDecoder newDecoder(Charset charset) {
+        return charset.newDecoder()
+                      .onMalformedInput(CodingErrorAction.REPLACE)
+                      .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+}
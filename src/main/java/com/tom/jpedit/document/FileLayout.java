@@ -0,0 +1,127 @@
+package com.tom.jpedit.document;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Records where ranges of a document's buffers are stored, byte for byte as UTF-8, in a file on disk.
+ * <p>
+ * A layout is made when a file is loaded without any loss (the whole original buffer is the file) and
+ * again after every save (each piece of the saved snapshot is somewhere in the new file). When the document
+ * is next saved, any piece that lies within a recorded span can be copied straight from that file instead
+ * of being encoded again, which is what makes a save of a huge, lightly edited file cheap.
+ * <p>
+ * The layout only holds as long as the file has not been changed by anyone else, which is checked
+ * with {@link #isUnchangedOnDisk()} before it is used.
+ */
+public final class FileLayout {
+
+    /**
+     * The characters {@code [start, end)} of the buffer are stored in the file starting at {@code fileOffset}
+     */
+    public record Span(@NotNull TextBuffer buffer, int start, int end, long fileOffset) {
+    }
+
+    private final Path file;
+    private final long size;
+    private final BasicFileAttributes attributes;
+    private final Map<TextBuffer, TreeMap<Integer, Span>> spans = new IdentityHashMap<>();
+
+    private FileLayout(@NotNull Path file, @NotNull BasicFileAttributes attributes, @NotNull List<Span> spans) {
+        this.file = file;
+        this.size = attributes.size();
+        this.attributes = attributes;
+        for (Span span : spans) {
+            if (span.start() < span.end()) {
+                this.spans.computeIfAbsent(span.buffer(), b -> new TreeMap<>()).putIfAbsent(span.start(), span);
+            }
+        }
+    }
+
+    /**
+     * @param file       the file the spans are in
+     * @param attributes the attributes the file had when the spans were written to or read from it
+     * @param spans      where each range is in the file
+     * @return a layout of the file
+     */
+    public static @NotNull FileLayout of(@NotNull Path file, @NotNull BasicFileAttributes attributes, @NotNull List<Span> spans) {
+        return new FileLayout(file, attributes, spans);
+    }
+
+    /**
+     * Lays out a file that was read, without any change, into the whole of a buffer
+     *
+     * @return the layout, or null if the buffer is not exactly the UTF-8 content of the file
+     */
+    static @Nullable FileLayout ofWholeBuffer(@NotNull TextBuffer buffer, @NotNull Path file, @NotNull BasicFileAttributes attributes) {
+        if (!buffer.isUtf8Exact(0, buffer.length()) || buffer.utf8Offset(buffer.length()) != attributes.size()) {
+            return null;
+        }
+        return new FileLayout(file, attributes, List.of(new Span(buffer, 0, buffer.length(), 0)));
+    }
+
+    public @NotNull Path getFile() {
+        return file;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return true if the file still has the size, modification time and identity it had when the layout was made
+     */
+    public boolean isUnchangedOnDisk() {
+        try {
+            BasicFileAttributes now = Files.readAttributes(file, BasicFileAttributes.class);
+            return now.size() == size
+                    && now.lastModifiedTime().equals(attributes.lastModifiedTime())
+                    && Objects.equals(now.fileKey(), attributes.fileKey());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return true if every span refers to one of the buffers
+     */
+    boolean refersOnlyTo(@NotNull TextBuffer a, @NotNull TextBuffer b) {
+        return spans.keySet().stream().allMatch(buffer -> buffer == a || buffer == b);
+    }
+
+    /**
+     * Finds the span containing the whole range of the buffer
+     *
+     * @return the span or null if the range is not entirely in the file
+     */
+    public @Nullable Span find(@NotNull TextBuffer buffer, int start, int end) {
+        TreeMap<Integer, Span> forBuffer = spans.get(buffer);
+        if (forBuffer == null) {
+            return null;
+        }
+        Entry<Integer, Span> entry = forBuffer.floorEntry(start);
+        if (entry == null || entry.getValue().end() < end) {
+            return null;
+        }
+        return entry.getValue();
+    }
+
+    /**
+     * @return the offset in the file of the byte that the character at {@code index} of the span's buffer starts at
+     */
+    public long fileOffset(@NotNull Span span, int index) {
+        TextBuffer buffer = span.buffer();
+        return span.fileOffset() + buffer.utf8Offset(index) - buffer.utf8Offset(span.start());
+    }
+}
@@ -0,0 +1,188 @@
+package com.tom.jpedit.document;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * The offset at which every line of a document starts, so that an offset is turned into a line and column, and a
+ * line into an offset, by a binary search rather than by counting newlines.
+ * <p>
+ * The starts are kept in an {@code int[]} with a gap in it at the line last edited. Starts before the gap are
+ * offsets from the start of the document and starts after it are distances from the end, so an edit does not
+ * change the entries on either side of it. It only moves the gap to itself, which costs as many entries as there
+ * are lines between it and the edit before, drops the starts of the lines it removed and adds those of the lines
+ * it inserted. Typing therefore costs the same on the millionth line of a document as on the first, and reading
+ * the start of any line costs one array access wherever the gap is.
+ * <p>
+ * The index follows the document as a {@link DocumentListener}. Text appended while a file is loaded is scanned as
+ * it arrives and only a {@link PieceTable#reset(CharSequence)} scans the whole document again. Lines are ended by
+ * {@code '\n'}, which is the only line ending a TextArea holds. A LineIndex must only be used on the JavaFX
+ * Application Thread.
+ */
+public final class LineIndex implements DocumentListener {
+    private final PieceTable document;
+    private int[] starts;
+    // the gap is [gapStart, gapEnd) of starts
+    private int gapStart;
+    private int gapEnd;
+    // the length of the document as the index last saw it, which the starts after the gap are counted back from
+    private int length;
+    private boolean resetting = false;
+
+    /**
+     * Indexes the lines of the document and adds itself as a listener to keep up with it
+     */
+    public LineIndex(@NotNull PieceTable document) {
+        this.document = document;
+        rebuild();
+        document.addListener(this);
+    }
+
+    /**
+     * @return the number of lines in the document, at least 1. A document ending in a newline has an empty last
+     * line
+     */
+    public int lineCount() {
+        return starts.length - (gapEnd - gapStart);
+    }
+
+    /**
+     * @param line the line, counting from 0
+     * @return the offset of the first character of the line
+     * @throws IndexOutOfBoundsException if there is no such line
+     */
+    public int offsetOfLine(int line) {
+        if (line < 0 || line >= lineCount()) {
+            throw new IndexOutOfBoundsException("line " + line + " out of bounds for " + lineCount() + " lines");
+        }
+        return lineStart(line);
+    }
+
+    /**
+     * @param offset an offset in the document, which may be its length
+     * @return the line the offset is on, counting from 0. The offset of a newline is on the line it ends
+     * @throws IndexOutOfBoundsException if the offset is outside the document
+     */
+    public int lineOfOffset(int offset) {
+        if (offset < 0 || offset > length) {
+            throw new IndexOutOfBoundsException("offset " + offset + " out of bounds for length " + length);
+        }
+        // the last line starting at or before the offset, line 0 always starts at 0
+        int lo = 0;
+        int hi = lineCount() - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (lineStart(mid) <= offset) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * @param offset an offset in the document, which may be its length
+     * @return how far the offset is from the start of its line, counting from 0
+     * @throws IndexOutOfBoundsException if the offset is outside the document
+     */
+    public int columnOfOffset(int offset) {
+        return offset - lineStart(lineOfOffset(offset));
+    }
+
+    private int lineStart(int line) {
+        return line < gapStart ? starts[line] : length - starts[line + gapEnd - gapStart];
+    }
+
+    @Override
+    public void aboutToReset(@NotNull PieceTable document) {
+        resetting = true;
+    }
+
+    @Override
+    public void documentReset(@NotNull PieceTable document) {
+        if (resetting) {
+            resetting = false;
+            rebuild();
+        } else {
+            // text appended to the original buffer of an unedited document while it is loaded
+            int from = length;
+            moveGap(lineCount());
+            length = document.length();
+            scan(from, length);
+        }
+    }
+
+    @Override
+    public void edited(@NotNull DocumentEdit edit) {
+        int offset = edit.offset();
+        int removedEnd = edit.removedEnd();
+        // the lines after the one the edit starts on come after the gap
+        moveGap(lineOfOffset(offset) + 1);
+        // a line starting inside the removed text, or just after it, began with a removed newline
+        while (gapEnd < starts.length && length - starts[gapEnd] <= removedEnd) {
+            gapEnd++;
+        }
+        length += edit.inserted().length() - edit.removedLength();
+        String inserted = edit.inserted();
+        for (int i = inserted.indexOf('\n'); i >= 0; i = inserted.indexOf('\n', i + 1)) {
+            addStart(offset + i + 1);
+        }
+    }
+
+    /**
+     * Indexes the whole document again, with the gap at the end
+     */
+    private void rebuild() {
+        // a new array, so the starts of a much larger document that was replaced are not kept
+        starts = new int[16];
+        gapStart = 1;
+        gapEnd = starts.length;
+        starts[0] = 0;
+        length = document.length();
+        scan(0, length);
+    }
+
+    /**
+     * Adds the starts of the lines after the newlines in {@code [from, to)} of the document at the gap
+     */
+    private void scan(int from, int to) {
+        int offset = from;
+        for (PieceTable.Piece piece : document.piecesOf(from, to)) {
+            TextBuffer buffer = piece.buffer();
+            for (int i = piece.start(); i < piece.end(); i++) {
+                if (buffer.charAt(i) == '\n') {
+                    addStart(offset + i - piece.start() + 1);
+                }
+            }
+            offset += piece.length();
+        }
+    }
+
+    /**
+     * Adds the start of a line at the gap, after every start before it
+     */
+    private void addStart(int start) {
+        if (gapStart == gapEnd) {
+            int after = starts.length - gapEnd;
+            int[] grown = Arrays.copyOf(starts, Math.max(16, starts.length * 2));
+            gapEnd = grown.length - after;
+            System.arraycopy(starts, gapStart, grown, gapEnd, after);
+            starts = grown;
+        }
+        starts[gapStart++] = start;
+    }
+
+    /**
+     * Moves the gap to before the line, converting the starts it moves over between the two ways they are counted
+     */
+    private void moveGap(int line) {
+        while (gapStart > line) {
+            starts[--gapEnd] = length - starts[--gapStart];
+        }
+        while (gapStart < line) {
+            starts[gapStart++] = length - starts[gapEnd++];
+        }
+    }
+}
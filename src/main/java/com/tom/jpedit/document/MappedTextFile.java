@@ -0,0 +1,261 @@
+package com.tom.jpedit.document;
+
+import com.tom.jpedit.search.ByteSearcher;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntPredicate;
+
+/**
+ * A read-only text file that is memory mapped rather than read onto the heap.
+ * <p>
+ * Opening the file only maps it and builds an index of where each line starts, found with a
+ * parallel scan for newline bytes. Text is decoded a few lines at a time with {@link #decodeLines(int, int)},
+ * so the heap used is the line index plus whatever lines are currently being shown, no matter how large
+ * the file is.
+ * <p>
+ * Lines are found by looking for {@code '\n'} bytes, so the charset must be one in which that byte
+ * only ever means a newline (UTF-8, ASCII and the ISO-8859 family all qualify)
+ */
+public class MappedTextFile implements Closeable {
+    /**
+     * Below this many bytes a scan is not split any further
+     */
+    private static final long SCAN_SPLIT_BYTES = 8L << 20;
+
+    private final File file;
+    private final Charset charset;
+    private final Arena arena;
+    private final MemorySegment segment;
+    private final long[] lineStarts;
+
+    private MappedTextFile(File file, Charset charset, Arena arena, MemorySegment segment, long[] lineStarts) {
+        this.file = file;
+        this.charset = charset;
+        this.arena = arena;
+        this.segment = segment;
+        this.lineStarts = lineStarts;
+    }
+
+    public static @NotNull MappedTextFile open(@NotNull File file) throws IOException {
+        return open(file, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Maps the file and indexes its lines
+     *
+     * @param file    the file to open
+     * @param charset the charset used to decode lines
+     * @return the mapped file
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public static @NotNull MappedTextFile open(@NotNull File file, @NotNull Charset charset) throws IOException {
+        Arena arena = Arena.ofShared();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MemorySegment segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+            long[] newlines = ForkJoinPool.commonPool().invoke(new NewlineScan(segment, 0, segment.byteSize()));
+            long[] lineStarts = new long[newlines.length + 1];
+            for (int i = 0; i < newlines.length; i++) {
+                lineStarts[i + 1] = newlines[i] + 1;
+            }
+            return new MappedTextFile(file, charset, arena, segment, lineStarts);
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+    }
+
+    public @NotNull File getFile() {
+        return file;
+    }
+
+    public long size() {
+        return segment.byteSize();
+    }
+
+    public @NotNull Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * @return the number of lines in the file. A file ending in a newline has an empty last line
+     */
+    public int lineCount() {
+        return lineStarts.length;
+    }
+
+    /**
+     * @return the byte offset at which the line begins
+     */
+    public long lineStart(int line) {
+        return lineStarts[line];
+    }
+
+    /**
+     * Decodes {@code count} lines starting at {@code firstLine}. Only the bytes of those lines are read
+     *
+     * @param firstLine the first line to decode
+     * @param count     how many lines to decode. Clamped to the end of the file
+     * @return the text of the lines, including their line endings
+     */
+    public @NotNull String decodeLines(int firstLine, int count) {
+        int first = Math.clamp(firstLine, 0, lineCount() - 1);
+        int last = (int) Math.min((long) first + count, lineCount());
+        long from = lineStarts[first];
+        long to = last == lineCount() ? size() : lineStarts[last];
+        return decode(from, to);
+    }
+
+    /**
+     * Decodes the bytes between two offsets, which should both be at the start of a character
+     *
+     * @param from the offset of the first byte to decode
+     * @param to   the offset just past the last byte to decode
+     * @return the decoded text
+     */
+    public @NotNull String decode(long from, long to) {
+        return charset.decode(segment.asSlice(from, to - from).asByteBuffer()).toString();
+    }
+
+    /**
+     * Counts the UTF-16 chars that the UTF-8 bytes between two offsets decode to. The file must be UTF-8
+     *
+     * @param from    the offset of the first byte, at the start of a character
+     * @param to      the offset just past the last byte
+     * @param skipped the ASCII characters not to count, such as those a TextArea drops
+     * @return the number of chars
+     */
+    public long charsBetween(long from, long to, @NotNull IntPredicate skipped) {
+        long chars = 0;
+        for (long at = from; at < to; at++) {
+            chars += utf16Length(segment.get(ValueLayout.JAVA_BYTE, at), skipped);
+        }
+        return chars;
+    }
+
+    /**
+     * Finds the byte offset that a number of UTF-16 chars after another offset is at, the inverse of
+     * {@link #charsBetween(long, long, IntPredicate)}. The file must be UTF-8
+     *
+     * @param from    the offset to count from, at the start of a character
+     * @param chars   how many chars to move on
+     * @param skipped the ASCII characters not to count, such as those a TextArea drops
+     * @return the offset of the start of the character the chars end at, or the size of the file if they go past
+     * its end
+     */
+    public long offsetAfterChars(long from, long chars, @NotNull IntPredicate skipped) {
+        long at = from;
+        long size = size();
+        for (long left = chars; left > 0 && at < size; at++) {
+            left -= utf16Length(segment.get(ValueLayout.JAVA_BYTE, at), skipped);
+        }
+        // past the rest of the last character
+        while (at < size && isContinuation(segment.get(ValueLayout.JAVA_BYTE, at))) {
+            at++;
+        }
+        return at;
+    }
+
+    /**
+     * @return how many UTF-16 chars the UTF-8 sequence that the byte starts takes, or 0 if it does not start one or
+     * is a skipped character
+     */
+    private static int utf16Length(byte b, IntPredicate skipped) {
+        if (isContinuation(b) || (b >= 0 && skipped.test(b))) {
+            return 0;
+        }
+        // four byte sequences are characters outside the BMP, which take a surrogate pair
+        return (b & 0xF8) == 0xF0 ? 2 : 1;
+    }
+
+    private static boolean isContinuation(byte b) {
+        return (b & 0xC0) == 0x80;
+    }
+
+    /**
+     * @return the line the byte at the offset is on, counting from 0
+     */
+    public int lineOf(long offset) {
+        int i = Arrays.binarySearch(lineStarts, offset);
+        // a miss gives the insertion point, just past the line the offset is on
+        return i >= 0 ? i : -i - 2;
+    }
+
+    /**
+     * Finds the first match of the searcher that starts at or after the offset. The bytes are searched in place,
+     * without being decoded, so the file must be in a charset the searcher's pattern is encoded in
+     *
+     * @param searcher the bytes to look for
+     * @param from     the first byte offset a match may start at
+     * @return the byte offset of the match or -1 if there is none
+     */
+    public long indexOf(@NotNull ByteSearcher searcher, long from) {
+        return searcher.indexOf(segment, from, size());
+    }
+
+    /**
+     * Unmaps the file. No lines can be decoded afterward
+     */
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    /**
+     * Finds the offset of every newline in a range of the mapped file. Large ranges are split in half
+     * and scanned in parallel and the two sorted halves joined.
+     */
+    private static class NewlineScan extends RecursiveTask<long[]> {
+        private final MemorySegment segment;
+        private final long from;
+        private final long to;
+
+        NewlineScan(MemorySegment segment, long from, long to) {
+            this.segment = segment;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (to - from <= SCAN_SPLIT_BYTES) {
+                return scan();
+            }
+            long mid = from + (to - from) / 2;
+            NewlineScan left = new NewlineScan(segment, from, mid);
+            NewlineScan right = new NewlineScan(segment, mid, to);
+            left.fork();
+            long[] r = right.compute();
+            long[] l = left.join();
+            long[] joined = Arrays.copyOf(l, l.length + r.length);
+            System.arraycopy(r, 0, joined, l.length, r.length);
+            return joined;
+        }
+
+        private long[] scan() {
+            long[] found = new long[64];
+            int count = 0;
+            for (long i = from; i < to; i++) {
+                if (segment.get(ValueLayout.JAVA_BYTE, i) == '\n') {
+                    if (count == found.length) {
+                        found = Arrays.copyOf(found, count * 2);
+                    }
+                    found[count++] = i;
+                }
+            }
+            return Arrays.copyOf(found, count);
+        }
+    }
+}
@@ -0,0 +1,533 @@
+package com.tom.jpedit.document;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The text of a {@link com.tom.jpedit.gui.JPEditWindow} stored as a piece table.
+ * <p>
+ * The document is made of two append-only buffers: the <i>original</i> buffer holding the text
+ * the document was created with, and the <i>add</i> buffer holding every piece of text inserted
+ * since. The content of the document is the concatenation of a list of pieces, each of which is
+ * a range of one of those buffers. An edit never copies the document; it only splits the piece(s)
+ * at the edit boundaries and appends the inserted text to the add buffer, so the cost of an edit
+ * depends on the size of the edit and not on the size of the document.
+ * <p>
+ * This class implements {@link CharSequence} so the document can be searched and written
+ * out without ever being turned into one large {@link String}.
+ * <p>
+ * A PieceTable is not thread safe and should only be modified on the JavaFX Application Thread.
+ * Other threads should be handed a {@link #snapshot()} instead. Every change is reported to the
+ * {@link DocumentListener}s of the table as it happens.
+ * <p>
+ * The table keeps a {@link #contentHash()} of its text up to date as it is edited, so whether two versions of the
+ * document can be the same is known without reading either of them, see {@link #contentEquals(DocumentSnapshot)}.
+ */
+public class PieceTable implements CharSequence {
+
+    /**
+     * A range of one of the two buffers of the table. Pieces are immutable.
+     */
+    record Piece(@NotNull TextBuffer buffer, int start, int length) {
+        int end() {
+            return start + length;
+        }
+    }
+
+    private TextBuffer original;
+    private TextBuffer add = new TextBuffer();
+    private final List<Piece> pieces = new ArrayList<>();
+    private int length;
+    private long revision;
+    // the sum of hashChar over every character, which does not depend on where in the document a character is
+    private long contentHash;
+    // where the buffers are stored in the file the document was last loaded from or saved to
+    private FileLayout fileLayout;
+    private final List<DocumentListener> listeners = new ArrayList<>();
+
+    // document offset of the start of each piece, only the first validPieceStarts entries are up-to-date
+    private int[] pieceStarts = new int[0];
+    private int validPieceStarts;
+    // the piece found by the last lookup, sequential access (searching, writing) hits this almost always
+    private int cursorPiece;
+
+    public PieceTable() {
+        this("");
+    }
+
+    public PieceTable(@NotNull CharSequence originalText) {
+        reset(originalText);
+    }
+
+    /**
+     * Throws away both buffers and every piece and starts over with the text as the original buffer.
+     * <p>
+     * Used when the entire document is replaced, so the memory held for the previous text is released
+     * rather than kept in buffers nothing refers to anymore
+     *
+     * @param originalText the new content of the document
+     */
+    public void reset(@NotNull CharSequence originalText) {
+        for (DocumentListener listener : List.copyOf(listeners)) {
+            listener.aboutToReset(this);
+        }
+        original = new TextBuffer(originalText);
+        add = new TextBuffer();
+        fileLayout = null;
+        pieces.clear();
+        if (original.length() > 0) {
+            pieces.add(new Piece(original, 0, original.length()));
+        }
+        length = original.length();
+        contentHash = hashOf(originalText);
+        validPieceStarts = 0;
+        cursorPiece = 0;
+        revision++;
+        fireReset();
+    }
+
+    /**
+     * Adds text to the end of the original buffer and the end of the document. This is how a file being
+     * loaded in chunks is added to the document so that the whole file ends up as the original buffer.
+     *
+     * @param text the next chunk of the file
+     * @throws IllegalStateException if the document has been edited since it was last {@link #reset(CharSequence)}
+     */
+    public void appendOriginal(@NotNull CharSequence text) {
+        if (!isUnedited()) {
+            throw new IllegalStateException("Text can only be appended to the original buffer of an unedited document");
+        }
+        if (text.isEmpty()) {
+            return;
+        }
+        original.append(text);
+        pieces.clear();
+        pieces.add(new Piece(original, 0, original.length()));
+        length = original.length();
+        contentHash += hashOf(text);
+        validPieceStarts = 0;
+        cursorPiece = 0;
+        revision++;
+        fireReset();
+    }
+
+    public void addListener(@NotNull DocumentListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(@NotNull DocumentListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void fireReset() {
+        for (DocumentListener listener : List.copyOf(listeners)) {
+            listener.documentReset(this);
+        }
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return a number that increases every time the content of the document changes
+     */
+    public long revision() {
+        return revision;
+    }
+
+    /**
+     * Takes an immutable snapshot of the document as it is now. This only copies the list of pieces
+     *
+     * @return a snapshot that can be read from any thread
+     */
+    public @NotNull DocumentSnapshot snapshot() {
+        return new DocumentSnapshot(pieces, revision, contentHash, fileLayout);
+    }
+
+    /**
+     * A hash of the text of the document that is kept up to date at the cost of hashing the text of each edit.
+     * <p>
+     * Every character adds a hash of its own value, wherever it is, so text inserted in the middle of the
+     * document does not change what the characters after it add. The hash depends only on the content: two
+     * versions of the document with the same text have the same hash however they were edited, but text whose
+     * characters were only moved around does too, so an equal hash means the text may be the same and a
+     * different hash that it is not
+     *
+     * @return the hash of the text of the document
+     */
+    public long contentHash() {
+        return contentHash;
+    }
+
+    /**
+     * Tells if the document has exactly the text of the snapshot, usually one taken of it when it was saved.
+     * <p>
+     * A snapshot of a different length or {@link #contentHash()} is never read. Otherwise the pieces of the two are
+     * walked side by side, and a stretch where both refer to the same range of the same buffer, which is all of
+     * the text not edited since the snapshot, is known to be equal without being read. Only the stretches that
+     * were edited are compared character by character
+     *
+     * @param snapshot the version of the document to compare with
+     * @return true if the document has the same text as the snapshot
+     */
+    public boolean contentEquals(@NotNull DocumentSnapshot snapshot) {
+        if (snapshot.length() != length || snapshot.contentHash() != contentHash) {
+            return false;
+        }
+        List<Piece> other = snapshot.pieces();
+        int p = 0;
+        int q = 0;
+        int inP = 0;
+        int inQ = 0;
+        while (p < pieces.size() && q < other.size()) {
+            Piece a = pieces.get(p);
+            Piece b = other.get(q);
+            int n = Math.min(a.length() - inP, b.length() - inQ);
+            int aStart = a.start() + inP;
+            int bStart = b.start() + inQ;
+            if (a.buffer() != b.buffer() || aStart != bStart) {
+                for (int i = 0; i < n; i++) {
+                    if (a.buffer().charAt(aStart + i) != b.buffer().charAt(bStart + i)) {
+                        return false;
+                    }
+                }
+            }
+            inP += n;
+            inQ += n;
+            if (inP == a.length()) {
+                p++;
+                inP = 0;
+            }
+            if (inQ == b.length()) {
+                q++;
+                inQ = 0;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records that the document, unedited, is exactly the content of a file. Does nothing if the document
+     * has been edited or its original buffer is not the file byte for byte
+     *
+     * @param file       the file the document was loaded from
+     * @param attributes the attributes of the file when it was loaded
+     */
+    public void loadedFrom(@NotNull Path file, @NotNull BasicFileAttributes attributes) {
+        fileLayout = isUnedited() ? FileLayout.ofWholeBuffer(original, file, attributes) : null;
+    }
+
+    /**
+     * @return where the text of the document can be found on disk, or null if that is not known
+     */
+    public @Nullable FileLayout getFileLayout() {
+        return fileLayout;
+    }
+
+    /**
+     * Sets where the text of the document can be found on disk, usually after it has been saved.
+     * A layout referring to buffers the document no longer uses is ignored
+     *
+     * @param layout the layout of the file the document was saved to
+     */
+    public void setFileLayout(@Nullable FileLayout layout) {
+        if (layout == null || layout.refersOnlyTo(original, add)) {
+            fileLayout = layout;
+        }
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index " + index + " out of bounds for length " + length);
+        }
+        int p = findPiece(index);
+        Piece piece = pieces.get(p);
+        return piece.buffer().charAt(piece.start() + index - pieceStarts[p]);
+    }
+
+    /**
+     * Returns the characters of {@code [start, end)} as a new String. Only the range is copied.
+     */
+    @Override
+    public @NotNull String subSequence(int start, int end) {
+        checkRange(start, end);
+        StringBuilder sb = new StringBuilder(end - start);
+        appendRange(sb, start, end);
+        return sb.toString();
+    }
+
+    /**
+     * Materializes the whole document as a String. This copies the entire document and should be avoided
+     * for anything that runs often. Prefer {@link #writeTo(Writer)} or reading with {@link #charAt(int)}
+     */
+    @Override
+    public @NotNull String toString() {
+        return subSequence(0, length);
+    }
+
+    /**
+     * Replaces {@code removedLength} characters starting at {@code offset} with {@code inserted}.
+     * <p>
+     * The removed text is not copied anywhere, not even for the listeners; only the pieces covering the edited
+     * range are touched.
+     *
+     * @param offset        where the edit starts
+     * @param removedLength how many characters are removed
+     * @param inserted      the text that is put in their place
+     */
+    public void replace(int offset, int removedLength, @NotNull CharSequence inserted) {
+        checkRange(offset, offset + removedLength);
+        if (removedLength == 0 && inserted.isEmpty()) {
+            return;
+        }
+        for (DocumentListener listener : List.copyOf(listeners)) {
+            listener.aboutToEdit(this, offset, removedLength);
+        }
+        int end = offset + removedLength;
+        long removedHash = hashOfRange(offset, end);
+        int first = offset == length ? pieces.size() : findPiece(offset);
+
+        if (removedLength == 0 && (first == pieces.size() || pieceStarts[first] == offset)) {
+            // insertion on a piece boundary: nothing has to be split
+            insertAtBoundary(first, inserted);
+        } else {
+            int last = removedLength == 0 ? first : findPiece(end - 1);
+            Piece head = pieces.get(first);
+            Piece tail = pieces.get(last);
+            int headKeep = offset - pieceStarts[first];
+            int tailCut = (removedLength == 0 ? offset : end) - pieceStarts[last];
+
+            List<Piece> replacement = new ArrayList<>(3);
+            if (headKeep > 0) {
+                replacement.add(new Piece(head.buffer(), head.start(), headKeep));
+            }
+            if (!inserted.isEmpty()) {
+                replacement.add(new Piece(add, add.append(inserted), inserted.length()));
+            }
+            if (tailCut < tail.length()) {
+                replacement.add(new Piece(tail.buffer(), tail.start() + tailCut, tail.length() - tailCut));
+            }
+            List<Piece> removed = pieces.subList(first, last + 1);
+            removed.clear();
+            removed.addAll(replacement);
+        }
+        length += inserted.length() - removedLength;
+        contentHash += hashOf(inserted) - removedHash;
+        revision++;
+        validPieceStarts = Math.min(validPieceStarts, first);
+        cursorPiece = Math.max(0, Math.min(first, pieces.size() - 1));
+        if (!listeners.isEmpty()) {
+            DocumentEdit edit = new DocumentEdit(offset, removedLength, inserted.toString(), revision);
+            for (DocumentListener listener : List.copyOf(listeners)) {
+                listener.edited(edit);
+            }
+        }
+    }
+
+    private void insertAtBoundary(int index, CharSequence inserted) {
+        int start = add.append(inserted);
+        if (index > 0) {
+            Piece previous = pieces.get(index - 1);
+            if (previous.buffer() == add && previous.end() == start) {
+                // typing continues right after the last insertion, so the piece just grows
+                pieces.set(index - 1, new Piece(add, previous.start(), previous.length() + inserted.length()));
+                return;
+            }
+        }
+        pieces.add(index, new Piece(add, start, inserted.length()));
+    }
+
+    /**
+     * @return true if the document is exactly its original buffer, that is, nothing has been inserted or deleted
+     * since it was created or last {@link #reset(CharSequence)}
+     */
+    public boolean isUnedited() {
+        boolean onlyOriginal = pieces.isEmpty() || (pieces.size() == 1 && pieces.getFirst().length() == original.length());
+        return onlyOriginal && add.length() == 0;
+    }
+
+    public void insert(int offset, @NotNull CharSequence text) {
+        replace(offset, 0, text);
+    }
+
+    public void delete(int offset, int count) {
+        replace(offset, count, "");
+    }
+
+    /**
+     * Replaces the entire content of the document
+     *
+     * @param text the new content of the document
+     */
+    public void setText(@NotNull CharSequence text) {
+        replace(0, length, text);
+    }
+
+    /**
+     * Appends the characters of {@code [start, end)} to the builder without materializing the rest of the document
+     */
+    public void appendRange(@NotNull StringBuilder sb, int start, int end) {
+        if (start == end) {
+            return;
+        }
+        int p = findPiece(start);
+        int offset = start;
+        while (offset < end) {
+            Piece piece = pieces.get(p);
+            int inPiece = offset - pieceStarts[p];
+            int n = Math.min(piece.length() - inPiece, end - offset);
+            piece.buffer().appendTo(sb, piece.start() + inPiece, piece.start() + inPiece + n);
+            offset += n;
+            p++;
+        }
+    }
+
+    /**
+     * Returns the pieces that make up {@code [start, end)}, the first and last cut to the range. Since the buffers
+     * never change, the pieces go on holding that text after the document is edited, without it being copied
+     */
+    @NotNull List<Piece> piecesOf(int start, int end) {
+        checkRange(start, end);
+        List<Piece> range = new ArrayList<>();
+        if (start == end) {
+            return range;
+        }
+        int p = findPiece(start);
+        int offset = start;
+        while (offset < end) {
+            Piece piece = pieces.get(p);
+            int inPiece = offset - pieceStarts[p];
+            int n = Math.min(piece.length() - inPiece, end - offset);
+            range.add(new Piece(piece.buffer(), piece.start() + inPiece, n));
+            offset += n;
+            p++;
+        }
+        return range;
+    }
+
+    /**
+     * @return true if the buffer is one the document is made from, so that it takes no more memory to refer to it
+     */
+    boolean holds(@NotNull TextBuffer buffer) {
+        return buffer == original || buffer == add;
+    }
+
+    /**
+     * Writes the whole document to the writer piece by piece. No String of the document is ever built
+     *
+     * @param writer the destination of the text
+     * @throws IOException if the writer throws
+     */
+    public void writeTo(@NotNull Writer writer) throws IOException {
+        for (Piece piece : pieces) {
+            piece.buffer().writeTo(writer, piece.start(), piece.end());
+        }
+    }
+
+    /**
+     * @return the number of pieces the document is made of. Mostly useful for diagnostics
+     */
+    public int pieceCount() {
+        return pieces.size();
+    }
+
+    private long hashOfRange(int start, int end) {
+        if (start == end) {
+            return 0;
+        }
+        long hash = 0;
+        int p = findPiece(start);
+        int offset = start;
+        while (offset < end) {
+            Piece piece = pieces.get(p);
+            int from = piece.start() + offset - pieceStarts[p];
+            int n = Math.min(piece.end() - from, end - offset);
+            for (int i = from; i < from + n; i++) {
+                hash += hashChar(piece.buffer().charAt(i));
+            }
+            offset += n;
+            p++;
+        }
+        return hash;
+    }
+
+    private static long hashOf(CharSequence text) {
+        long hash = 0;
+        for (int i = 0; i < text.length(); i++) {
+            hash += hashChar(text.charAt(i));
+        }
+        return hash;
+    }
+
+    /**
+     * Spreads the bits of a character over a long, so that sums of different characters rarely collide
+     */
+    private static long hashChar(char c) {
+        long h = (c + 1) * 0x9E3779B97F4A7C15L;
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        return h ^ (h >>> 31);
+    }
+
+    private void checkRange(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("range [" + start + ", " + end + ") out of bounds for length " + length);
+        }
+    }
+
+    private void ensurePieceStarts() {
+        if (validPieceStarts >= pieces.size()) {
+            return;
+        }
+        if (pieceStarts.length < pieces.size()) {
+            int[] grown = new int[Math.max(pieces.size(), pieceStarts.length * 2)];
+            System.arraycopy(pieceStarts, 0, grown, 0, validPieceStarts);
+            pieceStarts = grown;
+        }
+        int i = validPieceStarts;
+        int offset = i == 0 ? 0 : pieceStarts[i - 1] + pieces.get(i - 1).length();
+        for (; i < pieces.size(); i++) {
+            pieceStarts[i] = offset;
+            offset += pieces.get(i).length();
+        }
+        validPieceStarts = pieces.size();
+    }
+
+    /**
+     * Finds the index of the piece containing the document offset. {@code offset} must be less than the length
+     */
+    private int findPiece(int offset) {
+        ensurePieceStarts();
+        int c = cursorPiece;
+        if (c < pieces.size() && pieceStarts[c] <= offset) {
+            if (offset < pieceStarts[c] + pieces.get(c).length()) {
+                return c;
+            }
+            if (c + 1 < pieces.size() && offset < pieceStarts[c + 1] + pieces.get(c + 1).length()) {
+                cursorPiece = c + 1;
+                return c + 1;
+            }
+        }
+        int lo = 0;
+        int hi = pieces.size() - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (pieceStarts[mid] <= offset) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        cursorPiece = lo;
+        return lo;
+    }
+}
@@ -0,0 +1,209 @@
+package com.tom.jpedit.document;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * An append-only store of characters used as the backing storage of a {@link PieceTable}
+ * <p>
+ * Characters are kept in fixed size chunks which are never moved or resized once allocated.
+ * This means appending never copies what is already stored, and a range of the buffer that has
+ * been written is never changed again, so pieces referring to it stay valid forever.
+ * <p>
+ * Only one thread may append, but any range written before a {@link DocumentSnapshot} was handed to
+ * another thread may be read by that thread while appends continue.
+ * <p>
+ * The buffer also keeps track of how long its text is when encoded as UTF-8, with a checkpoint every
+ * {@code 4096} characters, so the byte offset of any character in the encoded buffer can be found
+ * without encoding everything before it. See {@link #utf8Offset(int)}
+ */
+public final class TextBuffer {
+    static final int CHUNK_SHIFT = 16;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    static final int UTF8_CHECKPOINT_SHIFT = 12;
+    static final int UTF8_CHECKPOINT_MASK = (1 << UTF8_CHECKPOINT_SHIFT) - 1;
+
+    // volatile so a reader on another thread never sees a grown array before its contents were copied
+    private volatile char[][] chunks = new char[4][];
+    private int length;
+    // utf8Checkpoints[k] is the UTF-8 length of the first k << UTF8_CHECKPOINT_SHIFT characters
+    private volatile long[] utf8Checkpoints = new long[16];
+    private long utf8Length;
+    // index of the first unpaired surrogate, which UTF-8 cannot encode as itself
+    private int firstUnpairedSurrogate = Integer.MAX_VALUE;
+
+    public TextBuffer() {
+    }
+
+    public TextBuffer(@NotNull CharSequence initial) {
+        append(initial);
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public char charAt(int index) {
+        return chunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    /**
+     * Appends the characters to the end of this buffer
+     *
+     * @param s the characters to add
+     * @return the index in this buffer at which the first appended character was stored
+     */
+    public int append(@NotNull CharSequence s) {
+        int start = length;
+        int n = s.length();
+        int i = 0;
+        while (i < n) {
+            char[] chunk = chunkForWrite();
+            int offset = length & CHUNK_MASK;
+            int count = Math.min(n - i, CHUNK_SIZE - offset);
+            if (s instanceof String str) {
+                str.getChars(i, i + count, chunk, offset);
+            } else {
+                for (int j = 0; j < count; j++) {
+                    chunk[offset + j] = s.charAt(i + j);
+                }
+            }
+            i += count;
+            length += count;
+        }
+        countUtf8(start, length);
+        return start;
+    }
+
+    /**
+     * Appends a range of a char array to the end of this buffer
+     *
+     * @param src    the characters to add
+     * @param offset the first index in {@code src} to add
+     * @param count  the number of characters to add
+     * @return the index in this buffer at which the first appended character was stored
+     */
+    public int append(char @NotNull [] src, int offset, int count) {
+        int start = length;
+        int i = 0;
+        while (i < count) {
+            char[] chunk = chunkForWrite();
+            int chunkOffset = length & CHUNK_MASK;
+            int n = Math.min(count - i, CHUNK_SIZE - chunkOffset);
+            System.arraycopy(src, offset + i, chunk, chunkOffset, n);
+            i += n;
+            length += n;
+        }
+        countUtf8(start, length);
+        return start;
+    }
+
+    private char[] chunkForWrite() {
+        int index = length >>> CHUNK_SHIFT;
+        if (index == chunks.length) {
+            char[][] grown = new char[chunks.length * 2][];
+            System.arraycopy(chunks, 0, grown, 0, chunks.length);
+            chunks = grown;
+        }
+        if (chunks[index] == null) {
+            chunks[index] = new char[CHUNK_SIZE];
+        }
+        return chunks[index];
+    }
+
+    private void countUtf8(int from, int to) {
+        long[] checkpoints = utf8Checkpoints;
+        for (int i = from; i < to; i++) {
+            char c = charAt(i);
+            if (Character.isLowSurrogate(c) && (i == 0 || !Character.isHighSurrogate(charAt(i - 1)))) {
+                firstUnpairedSurrogate = Math.min(firstUnpairedSurrogate, i);
+            } else if (i > 0 && Character.isHighSurrogate(charAt(i - 1)) && !Character.isLowSurrogate(c)) {
+                firstUnpairedSurrogate = Math.min(firstUnpairedSurrogate, i - 1);
+            }
+            utf8Length += utf8Bytes(c);
+            if (((i + 1) & UTF8_CHECKPOINT_MASK) == 0) {
+                int k = (i + 1) >>> UTF8_CHECKPOINT_SHIFT;
+                if (k == checkpoints.length) {
+                    long[] grown = new long[checkpoints.length * 2];
+                    System.arraycopy(checkpoints, 0, grown, 0, checkpoints.length);
+                    checkpoints = grown;
+                }
+                checkpoints[k] = utf8Length;
+            }
+        }
+        utf8Checkpoints = checkpoints;
+    }
+
+    // a surrogate pair is 4 bytes, counted against the high surrogate
+    private static int utf8Bytes(char c) {
+        if (c < 0x80) {
+            return 1;
+        } else if (c < 0x800) {
+            return 2;
+        } else if (Character.isHighSurrogate(c)) {
+            return 4;
+        } else if (Character.isLowSurrogate(c)) {
+            return 0;
+        } else {
+            return 3;
+        }
+    }
+
+    /**
+     * Finds where a character of this buffer would be if the whole buffer were encoded as UTF-8.
+     * Only meaningful for ranges that {@link #isUtf8Exact(int, int)}
+     *
+     * @param index an index of this buffer, at most its length
+     * @return the number of bytes the characters before {@code index} take up in UTF-8
+     */
+    public long utf8Offset(int index) {
+        int k = index >>> UTF8_CHECKPOINT_SHIFT;
+        long offset = utf8Checkpoints[k];
+        for (int i = k << UTF8_CHECKPOINT_SHIFT; i < index; i++) {
+            offset += utf8Bytes(charAt(i));
+        }
+        return offset;
+    }
+
+    /**
+     * A range is exact when encoding it alone as UTF-8 gives exactly the bytes it has in the encoding of the
+     * whole buffer, that is, it contains no unpaired surrogates and does not split a surrogate pair
+     *
+     * @return true if the byte offsets of {@link #utf8Offset(int)} can be trusted for the range
+     */
+    public boolean isUtf8Exact(int from, int to) {
+        if (from == to) {
+            return true;
+        }
+        return to <= firstUnpairedSurrogate
+                && !Character.isLowSurrogate(charAt(from))
+                && !Character.isHighSurrogate(charAt(to - 1));
+    }
+
+    /**
+     * Copies the characters of {@code [from, to)} to the end of the given builder
+     */
+    public void appendTo(@NotNull StringBuilder sb, int from, int to) {
+        while (from < to) {
+            int offset = from & CHUNK_MASK;
+            int n = Math.min(to - from, CHUNK_SIZE - offset);
+            sb.append(chunks[from >>> CHUNK_SHIFT], offset, n);
+            from += n;
+        }
+    }
+
+    /**
+     * Writes the characters of {@code [from, to)} directly out of the chunks, without building a String
+     */
+    public void writeTo(@NotNull Writer writer, int from, int to) throws IOException {
+        while (from < to) {
+            int offset = from & CHUNK_MASK;
+            int n = Math.min(to - from, CHUNK_SIZE - offset);
+            writer.write(chunks[from >>> CHUNK_SHIFT], offset, n);
+            from += n;
+        }
+    }
+}
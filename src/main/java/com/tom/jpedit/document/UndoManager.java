@@ -0,0 +1,630 @@
+package com.tom.jpedit.document;
+
+import com.tom.jpedit.logging.JPLogger;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The undo and redo history of a window's document, kept as deltas.
+ * <p>
+ * Each step of the history is one change to the document: where it was made, the text it removed and the text it
+ * inserted. The text is not copied. A step refers to the pieces of the buffers that hold it, which never change
+ * (see {@link PieceTable}), so recording a step costs the same whether it covers one character or a Replace All
+ * across the whole document, and undoing it is a single edit the size of that change. Consecutive typing is merged
+ * into one step per word, and so is a run of backspaces or of deletes.
+ * <p>
+ * The edit that undoes a step still goes through the {@link Editor} as a String, since the TextArea holds its own
+ * copy of the text. Undoing a step that replaced the whole document, such as a Replace All, therefore builds the
+ * whole old text and sets it on the TextArea, which resets the document to it, so it costs as much as the document
+ * rather than as much as the matches.
+ * <p>
+ * The history is kept within a memory budget. A step costs a little for itself and its pieces, plus the text of
+ * any piece whose buffer the document has let go of, such as the old text after the whole document was replaced,
+ * since then only the history keeps that buffer alive. Once the history costs more than the budget its oldest
+ * steps are written to a temporary file, compressed, and only read back if they are undone. When even the steps
+ * on disk cost more than the budget the oldest of them are forgotten. Once the text of forgotten steps takes up
+ * more of the file than the text of the steps still in the history, the file is compacted, so it stays within
+ * twice what the history keeps on disk however long the window is open.
+ * <p>
+ * The history listens to the document for the edits to record, and undoes and redoes them through an
+ * {@link Editor}, which for a window is its TextArea, so the control and everything following the document see an
+ * undo as an ordinary edit. An UndoManager must only be used on the JavaFX Application Thread.
+ */
+public class UndoManager implements DocumentListener, Closeable {
+    // rough heap cost of a step and of each piece it refers to, apart from their text
+    private static final long STEP_BYTES = 64;
+    private static final long PIECE_BYTES = 32;
+    private static final int SPILL_BUFFER_BYTES = 64 * 1024;
+
+    /**
+     * Makes the edits that undo and redo steps
+     */
+    @FunctionalInterface
+    public interface Editor {
+        /**
+         * Replaces {@code length} characters of the document starting at {@code offset} with the text
+         */
+        void replace(int offset, int length, @NotNull String text);
+    }
+
+    private enum Kind {
+        TYPING, DELETING, OTHER
+    }
+
+    private static final class Step {
+        private int offset;
+        private final Kind kind;
+        // both null once the text of the step has been written to the spill file
+        private List<PieceTable.Piece> removed;
+        private List<PieceTable.Piece> inserted;
+        private int removedLength;
+        private int insertedLength;
+        private long spillPosition = -1;
+        private long spillLength;
+        private long cost;
+
+        private Step(int offset, Kind kind, List<PieceTable.Piece> removed, List<PieceTable.Piece> inserted) {
+            this.offset = offset;
+            this.kind = kind;
+            this.removed = removed;
+            this.inserted = inserted;
+            this.removedLength = lengthOf(removed);
+            this.insertedLength = lengthOf(inserted);
+        }
+
+        private boolean isSpilled() {
+            return spillPosition >= 0;
+        }
+    }
+
+    private final PieceTable document;
+    private final Editor editor;
+    private final long budgetBytes;
+    // oldest first: the steps whose text is on disk, then the ones still in memory
+    private final ArrayDeque<Step> spilledSteps = new ArrayDeque<>();
+    private final ArrayDeque<Step> undoSteps = new ArrayDeque<>();
+    // the step to redo next is last
+    private final ArrayDeque<Step> redoSteps = new ArrayDeque<>();
+    private long cost;
+    // the steps anywhere in the history whose text is in the spill file
+    private int liveSpilled;
+    // the bytes of the spill file that hold the text of those steps
+    private long liveSpillBytes;
+    private Path spillPath;
+    private FileChannel spill;
+    private boolean enabled = true;
+    private boolean applying = false;
+    // true while the newest step may still take more typing or deleting
+    private boolean mergeable = false;
+    // the text an edit or reset in progress is about to remove
+    private List<PieceTable.Piece> removing;
+
+    /**
+     * Starts recording the edits made to the document
+     *
+     * @param document    the document whose edits are recorded. The history adds itself as a listener
+     * @param editor      makes the edits that undo and redo
+     * @param budgetBytes about how much memory the history may use before it spills to disk
+     */
+    public UndoManager(@NotNull PieceTable document, @NotNull Editor editor, long budgetBytes) {
+        this.document = document;
+        this.editor = editor;
+        this.budgetBytes = budgetBytes;
+        document.addListener(this);
+    }
+
+    /**
+     * Turns recording on or off. Either way the history is cleared, since the edits made while it is off, such as
+     * a file being loaded, cannot be undone
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        clear();
+    }
+
+    public boolean canUndo() {
+        return !undoSteps.isEmpty() || !spilledSteps.isEmpty();
+    }
+
+    public boolean canRedo() {
+        return !redoSteps.isEmpty();
+    }
+
+    /**
+     * Ends the newest step, so the next edit starts a step of its own even if it continues the typing
+     */
+    public void endStep() {
+        mergeable = false;
+    }
+
+    /**
+     * Undoes the newest step
+     *
+     * @return false if there was nothing to undo
+     * @throws IOException if the step was spilled and cannot be read back, in which case the history is cleared
+     */
+    public boolean undo() throws IOException {
+        Step step = undoSteps.isEmpty() ? spilledSteps.pollLast() : undoSteps.pollLast();
+        if (step == null) {
+            return false;
+        }
+        mergeable = false;
+        String removed;
+        try {
+            removed = step.isSpilled() ? readSpilled(step, false) : textOf(step.removed);
+        } catch (IOException e) {
+            forget(step);
+            clear();
+            throw e;
+        }
+        // moved first, since the edit may reset the document and with it the cost of every step
+        redoSteps.addLast(step);
+        apply(step.offset, step.insertedLength, removed);
+        return true;
+    }
+
+    /**
+     * Redoes the step undone last
+     *
+     * @return false if there was nothing to redo
+     * @throws IOException if the step was spilled and cannot be read back, in which case the history is cleared
+     */
+    public boolean redo() throws IOException {
+        Step step = redoSteps.pollLast();
+        if (step == null) {
+            return false;
+        }
+        mergeable = false;
+        String inserted;
+        try {
+            inserted = step.isSpilled() ? readSpilled(step, true) : textOf(step.inserted);
+        } catch (IOException e) {
+            forget(step);
+            clear();
+            throw e;
+        }
+        if (step.isSpilled() && undoSteps.isEmpty()) {
+            spilledSteps.addLast(step);
+        } else {
+            undoSteps.addLast(step);
+        }
+        apply(step.offset, step.removedLength, inserted);
+        return true;
+    }
+
+    private void apply(int offset, int length, String text) {
+        applying = true;
+        try {
+            editor.replace(offset, length, text);
+        } finally {
+            applying = false;
+        }
+    }
+
+    /**
+     * Forgets every step
+     */
+    public void clear() {
+        spilledSteps.clear();
+        undoSteps.clear();
+        redoSteps.clear();
+        cost = 0;
+        liveSpilled = 0;
+        liveSpillBytes = 0;
+        mergeable = false;
+        truncateSpill();
+    }
+
+    /**
+     * @return about how much memory the history uses, which is kept near the budget
+     */
+    public long getCost() {
+        return cost;
+    }
+
+    private boolean isRecording() {
+        return enabled && !applying;
+    }
+
+    @Override
+    public void aboutToEdit(@NotNull PieceTable document, int offset, int removedLength) {
+        removing = isRecording() ? document.piecesOf(offset, offset + removedLength) : null;
+    }
+
+    @Override
+    public void aboutToReset(@NotNull PieceTable document) {
+        removing = isRecording() ? document.piecesOf(0, document.length()) : null;
+    }
+
+    @Override
+    public void edited(@NotNull DocumentEdit edit) {
+        List<PieceTable.Piece> removed = removing;
+        removing = null;
+        if (!isRecording()) {
+            return;
+        }
+        clearRedo();
+        Step newest = undoSteps.peekLast();
+        if (mergeable && newest != null && merge(newest, edit, removed)) {
+            recost(newest);
+        } else {
+            Kind kind = edit.inserted().length() == 1 ? Kind.TYPING
+                        : edit.inserted().isEmpty() && edit.removedLength() == 1 ? Kind.DELETING
+                        : Kind.OTHER;
+            push(new Step(edit.offset(), kind, removed, document.piecesOf(edit.offset(), edit.insertedEnd())));
+            mergeable = kind != Kind.OTHER;
+        }
+        enforceBudget();
+    }
+
+    @Override
+    public void documentReset(@NotNull PieceTable document) {
+        List<PieceTable.Piece> removed = removing;
+        removing = null;
+        if (isRecording()) {
+            if (removed == null) {
+                // text appended while a file is loaded, which is not an edit
+                clear();
+            } else {
+                clearRedo();
+                push(new Step(0, Kind.OTHER, removed, document.piecesOf(0, document.length())));
+                mergeable = false;
+            }
+        }
+        // the document has new buffers, so the history may now be all that holds the old ones
+        cost = 0;
+        for (ArrayDeque<Step> steps : List.of(spilledSteps, undoSteps, redoSteps)) {
+            for (Step step : steps) {
+                step.cost = 0;
+                recost(step);
+            }
+        }
+        enforceBudget();
+    }
+
+    /**
+     * Adds one more typed or deleted character to the newest step if it continues the same word
+     */
+    private boolean merge(Step step, DocumentEdit edit, List<PieceTable.Piece> removed) {
+        if (step.kind == Kind.TYPING && edit.removedLength() == 0 && edit.inserted().length() == 1
+            && edit.offset() == step.offset + step.insertedLength) {
+            if (startsWord(lastChar(step.inserted), edit.inserted().charAt(0))) {
+                return false;
+            }
+            append(step.inserted, document.piecesOf(edit.offset(), edit.insertedEnd()));
+            step.insertedLength++;
+            return true;
+        }
+        if (step.kind == Kind.DELETING && edit.inserted().isEmpty() && edit.removedLength() == 1) {
+            char deleted = firstChar(removed);
+            if (edit.offset() + 1 == step.offset) {
+                // backspace
+                if (startsWord(deleted, firstChar(step.removed))) {
+                    return false;
+                }
+                List<PieceTable.Piece> joined = new ArrayList<>(removed);
+                append(joined, step.removed);
+                step.removed = joined;
+                step.offset = edit.offset();
+            } else if (edit.offset() == step.offset) {
+                // delete
+                if (startsWord(lastChar(step.removed), deleted)) {
+                    return false;
+                }
+                append(step.removed, removed);
+            } else {
+                return false;
+            }
+            step.removedLength++;
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean startsWord(char before, char after) {
+        return Character.isWhitespace(before) && !Character.isWhitespace(after);
+    }
+
+    private void push(Step step) {
+        undoSteps.addLast(step);
+        recost(step);
+    }
+
+    /**
+     * Brings the cost of the step up to date, and the cost of the history with it
+     */
+    private void recost(Step step) {
+        cost -= step.cost;
+        step.cost = STEP_BYTES;
+        if (!step.isSpilled()) {
+            step.cost += costOf(step.removed) + costOf(step.inserted);
+        }
+        cost += step.cost;
+    }
+
+    private long costOf(List<PieceTable.Piece> pieces) {
+        long bytes = 0;
+        for (PieceTable.Piece piece : pieces) {
+            bytes += PIECE_BYTES;
+            if (!document.holds(piece.buffer())) {
+                bytes += 2L * piece.length();
+            }
+        }
+        return bytes;
+    }
+
+    private void clearRedo() {
+        while (!redoSteps.isEmpty()) {
+            forget(redoSteps.pollLast());
+        }
+    }
+
+    private void forget(Step step) {
+        cost -= step.cost;
+        if (!step.isSpilled()) {
+            return;
+        }
+        liveSpillBytes -= step.spillLength;
+        if (--liveSpilled == 0) {
+            truncateSpill();
+        } else {
+            compactSpillIfSparse();
+        }
+    }
+
+    private void enforceBudget() {
+        while (cost > budgetBytes) {
+            Step oldest = undoSteps.peekFirst();
+            if (oldest != null && (oldest != undoSteps.peekLast() || !mergeable)) {
+                undoSteps.pollFirst();
+                if (!oldest.isSpilled() && !spillOrForget(oldest)) {
+                    continue;
+                }
+                spilledSteps.addLast(oldest);
+            } else if (!spilledSteps.isEmpty()) {
+                forget(spilledSteps.pollFirst());
+            } else if (!redoSteps.isEmpty()) {
+                forget(redoSteps.pollFirst());
+            } else {
+                // only the step still being typed is left, it is spilled once it ends
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes the text of the step to the spill file
+     *
+     * @return false if it could not be written, and the step was forgotten along with every step older than it
+     */
+    private boolean spillOrForget(Step step) {
+        try {
+            spill(step);
+            return true;
+        } catch (IOException e) {
+            JPLogger.getErrLog().warning("Could not write undo history to " + spillPath + ": " + e.getMessage());
+            forget(step);
+            while (!spilledSteps.isEmpty()) {
+                forget(spilledSteps.pollFirst());
+            }
+            return false;
+        }
+    }
+
+    private void spill(Step step) throws IOException {
+        if (spill == null) {
+            spillPath = Files.createTempFile("jpedit-undo-", ".tmp");
+            spillPath.toFile().deleteOnExit();
+            spill = FileChannel.open(spillPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        long position = spill.size();
+        spill.position(position);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            // not closed, which would close the channel
+            DeflaterOutputStream out = new DeflaterOutputStream(Channels.newOutputStream(spill), deflater, SPILL_BUFFER_BYTES);
+            ByteBuffer chars = ByteBuffer.allocate(SPILL_BUFFER_BYTES);
+            writeChars(step.removed, chars, out);
+            writeChars(step.inserted, chars, out);
+            out.write(chars.array(), 0, chars.position());
+            out.finish();
+        } catch (IOException e) {
+            spill.truncate(position);
+            throw e;
+        } finally {
+            deflater.end();
+        }
+        step.spillPosition = position;
+        step.spillLength = spill.size() - position;
+        step.removed = null;
+        step.inserted = null;
+        liveSpilled++;
+        liveSpillBytes += step.spillLength;
+        recost(step);
+    }
+
+    /**
+     * Writes the characters of the pieces as UTF-16, which every char can be written in and read back from as is
+     */
+    private static void writeChars(List<PieceTable.Piece> pieces, ByteBuffer chars, OutputStream out) throws IOException {
+        for (PieceTable.Piece piece : pieces) {
+            for (int i = piece.start(); i < piece.end(); i++) {
+                if (!chars.hasRemaining()) {
+                    out.write(chars.array(), 0, chars.position());
+                    chars.clear();
+                }
+                chars.putChar(piece.buffer().charAt(i));
+            }
+        }
+    }
+
+    /**
+     * Reads the removed or the inserted text of a step back from the spill file
+     */
+    private String readSpilled(Step step, boolean inserted) throws IOException {
+        spill.position(step.spillPosition);
+        Inflater inflater = new Inflater();
+        try {
+            // not closed, which would close the channel
+            InputStream in = new InflaterInputStream(Channels.newInputStream(spill), inflater, SPILL_BUFFER_BYTES);
+            if (inserted) {
+                in.skipNBytes(2L * step.removedLength);
+            }
+            int length = inserted ? step.insertedLength : step.removedLength;
+            byte[] bytes = in.readNBytes(2 * length);
+            if (bytes.length != 2 * length) {
+                throw new IOException("Undo history in " + spillPath + " ended early");
+            }
+            return ByteBuffer.wrap(bytes).asCharBuffer().toString();
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Copies the text of the steps still in the history to a new spill file, in the order it was written, once the
+     * text of forgotten steps takes up more of the file than theirs. If the new file cannot be written the old one
+     * is kept as it is
+     */
+    private void compactSpillIfSparse() {
+        try {
+            if (spill.size() - liveSpillBytes > liveSpillBytes) {
+                compactSpill();
+            }
+        } catch (IOException e) {
+            JPLogger.getErrLog().warning("Could not compact undo history in " + spillPath + ": " + e.getMessage());
+        }
+    }
+
+    private void compactSpill() throws IOException {
+        List<Step> live = new ArrayList<>(liveSpilled);
+        for (ArrayDeque<Step> steps : List.of(spilledSteps, undoSteps, redoSteps)) {
+            for (Step step : steps) {
+                if (step.isSpilled()) {
+                    live.add(step);
+                }
+            }
+        }
+        live.sort(Comparator.comparingLong(step -> step.spillPosition));
+        Path compactedPath = Files.createTempFile("jpedit-undo-", ".tmp");
+        compactedPath.toFile().deleteOnExit();
+        long[] positions = new long[live.size()];
+        FileChannel compacted = FileChannel.open(compactedPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            for (int i = 0; i < live.size(); i++) {
+                Step step = live.get(i);
+                positions[i] = compacted.size();
+                long copied = 0;
+                while (copied < step.spillLength) {
+                    long moved = spill.transferTo(step.spillPosition + copied, step.spillLength - copied, compacted);
+                    if (moved <= 0) {
+                        throw new IOException("Undo history in " + spillPath + " ended early");
+                    }
+                    copied += moved;
+                }
+            }
+        } catch (IOException e) {
+            compacted.close();
+            Files.deleteIfExists(compactedPath);
+            throw e;
+        }
+        for (int i = 0; i < live.size(); i++) {
+            live.get(i).spillPosition = positions[i];
+        }
+        FileChannel old = spill;
+        Path oldPath = spillPath;
+        spill = compacted;
+        spillPath = compactedPath;
+        old.close();
+        Files.deleteIfExists(oldPath);
+    }
+
+    private void truncateSpill() {
+        if (spill != null) {
+            try {
+                spill.truncate(0);
+            } catch (IOException e) {
+                JPLogger.getErrLog().warning("Could not truncate " + spillPath + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return the size of the spill file, 0 if there is none
+     */
+    long getSpillFileSize() throws IOException {
+        return spill == null ? 0 : spill.size();
+    }
+
+    /**
+     * Stops recording, forgets every step and deletes the spill file
+     */
+    @Override
+    public void close() throws IOException {
+        document.removeListener(this);
+        clear();
+        if (spill != null) {
+            spill.close();
+            spill = null;
+            Files.deleteIfExists(spillPath);
+        }
+    }
+
+    private static int lengthOf(List<PieceTable.Piece> pieces) {
+        int length = 0;
+        for (PieceTable.Piece piece : pieces) {
+            length += piece.length();
+        }
+        return length;
+    }
+
+    private static String textOf(List<PieceTable.Piece> pieces) {
+        StringBuilder sb = new StringBuilder(lengthOf(pieces));
+        for (PieceTable.Piece piece : pieces) {
+            piece.buffer().appendTo(sb, piece.start(), piece.end());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Adds pieces to the end of a list, growing the last piece instead when the first new one continues it
+     */
+    private static void append(List<PieceTable.Piece> pieces, List<PieceTable.Piece> more) {
+        for (PieceTable.Piece piece : more) {
+            PieceTable.Piece last = pieces.isEmpty() ? null : pieces.getLast();
+            if (last != null && last.buffer() == piece.buffer() && last.end() == piece.start()) {
+                pieces.set(pieces.size() - 1, new PieceTable.Piece(last.buffer(), last.start(), last.length() + piece.length()));
+            } else {
+                pieces.add(piece);
+            }
+        }
+    }
+
+    private static char firstChar(List<PieceTable.Piece> pieces) {
+        PieceTable.Piece first = pieces.getFirst();
+        return first.buffer().charAt(first.start());
+    }
+
+    private static char lastChar(List<PieceTable.Piece> pieces) {
+        PieceTable.Piece last = pieces.getLast();
+        return last.buffer().charAt(last.end() - 1);
+    }
+}
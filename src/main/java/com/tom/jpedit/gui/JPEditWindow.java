@@ -2,12 +2,24 @@ package com.tom.jpedit.gui;
 
 import com.tom.jpedit.Action;
 import com.tom.jpedit.ApplicationContext;
+import com.tom.jpedit.document.DocumentChangeBus;
+import com.tom.jpedit.document.DocumentSnapshot;
+import com.tom.jpedit.document.LineIndex;
+import com.tom.jpedit.document.MappedTextFile;
+import com.tom.jpedit.document.PieceTable;
+import com.tom.jpedit.document.UndoManager;
 import com.tom.jpedit.gui.i18n.Strings;
 import com.tom.jpedit.gui.menu.*;
 import com.tom.jpedit.handlers.ActionHandler;
+import com.tom.jpedit.handlers.edit.PasteActionHandler;
+import com.tom.jpedit.handlers.edit.RedoActionHandler;
+import com.tom.jpedit.handlers.edit.SelectAllActionHandler;
+import com.tom.jpedit.handlers.edit.UndoActionHandler;
 import com.tom.jpedit.handlers.file.*;
 import com.tom.jpedit.handlers.misc.JPEditWindowKeyHandler;
-import com.tom.jpedit.listeners.TextAreaTextChangeListener;
+import com.tom.jpedit.listeners.DocumentDirtyTracker;
+import com.tom.jpedit.listeners.DocumentSnapshotPublisher;
+import com.tom.jpedit.listeners.TextAreaDocumentFilter;
 import com.tom.jpedit.logging.JPLogger;
 import com.tom.jpedit.plugins.PluginProperties;
 import com.tom.jpedit.plugins.components.PluginKeyboardShortcut;
@@ -15,10 +27,14 @@ import com.tom.jpedit.plugins.components.PluginMenuItem;
 import com.tom.jpedit.plugins.components.PluginToolbarButton;
 import com.tom.jpedit.util.LoadedJPPlugin;
 import com.tom.jpedit.workers.AutoSaveWorker;
+import com.tom.jpedit.workers.FileLoadWorker;
+import com.tom.jpedit.workers.LargeFileOpenWorker;
+import javafx.application.Platform;
 import javafx.beans.property.ReadOnlyBooleanProperty;
 import javafx.beans.property.ReadOnlyObjectProperty;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleObjectProperty;
+import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.event.Event;
 import javafx.event.EventTarget;
@@ -27,6 +43,8 @@ import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyCodeCombination;
+import javafx.scene.input.KeyCombination;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
@@ -43,7 +61,7 @@ import java.time.Instant;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.tom.jpedit.ApplicationContext.getContext;
@@ -60,6 +78,14 @@ import static tom.javafx.JavaFXUtilsKt.stackTraceToString;
  * It also contains state regarding save files, autosave workers, autosave state
  * and whether the text area is dirty (unsaved) or not.
  * <p>
+ * The text of the window is held in a {@link PieceTable} document which is kept in step with the
+ * {@link TextArea} one edit at a time. Anything that needs to read the text should read the
+ * document from {@link #getDocument()} rather than calling {@link TextArea#getText()}, which copies
+ * the entire text. Background threads must not read either; they read the immutable snapshot
+ * published by {@link #getSnapshot()}. Anything that follows the changes to the text, including plugins,
+ * subscribes to the {@link DocumentChangeBus} from {@link #getChangeBus()}, which hands out the edits of
+ * each pulse as compact deltas.
+ * <p>
  * The window can be duplicated with all its properties.
  * <p>
  * Because it expends {@link DependableStage} stages can depend on
@@ -80,6 +106,11 @@ public class JPEditWindow extends DependableStage {
     // Controls
     private final VBox root = new VBox();
     private final TextArea textArea = new TextArea();
+    private final PieceTable document = new PieceTable();
+    private final TextAreaDocumentFilter documentFilter = new TextAreaDocumentFilter(textArea, document);
+    private final DocumentChangeBus changeBus = new DocumentChangeBus(document, Platform::runLater);
+    private final LineIndex lineIndex = new LineIndex(document);
+    private final DocumentSnapshotPublisher snapshotPublisher = new DocumentSnapshotPublisher(changeBus);
     private final HBox buttonBox = new HBox();
     private final Button newButton = new Button(Strings.Content.FILE_MENU_ITEM_NEW.text);
     private final Button newWindowButton = new Button(Strings.Content.FILE_MENU_ITEM_NEW_WINDOW.text);
@@ -88,15 +119,23 @@ public class JPEditWindow extends DependableStage {
     private final Button saveAsButton = new Button(Strings.Content.FILE_MENU_ITEM_SAVE_AS.text);
     private final Label lastSavedLabeler = new Label(Strings.Content.UILABEL_LAST_SAVE_LABEL.text);
     private final Label lastSaveLabel = new Label(Strings.Content.UILABEL_LAST_SAVE_LABEL.text);
+    private final Label caretPositionLabel = new Label();
+    private final ProgressBar loadProgressBar = new ProgressBar();
+    private final Button cancelLoadButton = new Button(Strings.Content.BUTTON_CANCEL.text);
     private final MenuBar menuBar = new MenuBar();
     private final Menu pluginMenu = new JPEditPluginMenu(this, "Plugins");
     private final String tempSavesDir = getContext().getProperty("tempsaves_dir");
     // STATE
     private final AtomicBoolean autoSaveEnabled = new AtomicBoolean(true);
     private final int id;
+    private final DocumentDirtyTracker dirtyTracker;
+    private final UndoManager undoManager;
     private Menu openRecentMenu;
+    private volatile LargeFileViewport largeFileViewport;
     // WORKERS
     private AutoSaveWorker autoSaveWorker;
+    // a FileLoadWorker or a LargeFileOpenWorker
+    private volatile Task<?> fileLoadWorker;
     // Properties
     private SimpleObjectProperty<File> saveFile; // = null;
     private SimpleBooleanProperty dirty; // = false;
@@ -108,11 +147,20 @@ public class JPEditWindow extends DependableStage {
 
     public JPEditWindow(String title) {
         id = getContext().newWindowId();
+        dirtyTracker = new DocumentDirtyTracker(changeBus, dirtyPropertyInternal());
+        undoManager = new UndoManager(
+                document,
+                (offset, length, text) -> textArea.replaceText(offset, offset + length, text),
+                getContext().getUserPreferences().getUndoMemoryBudgetBytes()
+        );
         JPLogger.getAppLog().info("Bootstrap of Window with ID=" + id);
         setTitle(title);
         populateMenus();
-        textArea.textProperty().addListener(new TextAreaTextChangeListener(this));
-        textArea.setOnContextMenuRequested(e -> wasDirtied());
+        documentFilter.install();
+        installUndo();
+        textArea.caretPositionProperty().addListener((observable, oldValue, newValue) -> updateCaretPosition());
+        // the caret may stay where it is while the text around it changes, such as when a page is shown
+        changeBus.subscribe(changes -> updateCaretPosition());
         addEventHandler(KeyEvent.KEY_PRESSED, new JPEditWindowKeyHandler(this));
         addEventHandler(WindowEvent.WINDOW_CLOSE_REQUEST, event -> {
             JPLogger.getAppLog().info("Closing Window with ID=" + id);
@@ -137,6 +185,53 @@ public class JPEditWindow extends DependableStage {
         });
     }
 
+    /**
+     * Routes undo and redo to the window's {@link UndoManager} rather than the TextArea's own history, which
+     * copies every edit and has no bound. The keys are caught before the TextArea sees them, and its context menu,
+     * which would undo through the TextArea, is replaced
+     */
+    private void installUndo() {
+        KeyCombination undo = new KeyCodeCombination(KeyCode.Z, KeyCombination.SHORTCUT_DOWN);
+        KeyCombination redo = new KeyCodeCombination(KeyCode.Z, KeyCombination.SHORTCUT_DOWN, KeyCombination.SHIFT_DOWN);
+        KeyCombination redoAlternate = new KeyCodeCombination(KeyCode.Y, KeyCombination.SHORTCUT_DOWN);
+        textArea.addEventFilter(KeyEvent.KEY_PRESSED, event -> {
+            if (undo.match(event)) {
+                new UndoActionHandler(this).handle(ActionHandler.asAction(event));
+                event.consume();
+            } else if (redo.match(event) || redoAlternate.match(event)) {
+                new RedoActionHandler(this).handle(ActionHandler.asAction(event));
+                event.consume();
+            }
+        });
+        MenuItem undoItem = new MenuItem(Strings.Content.EDIT_MENU_UNDO.text);
+        MenuItem redoItem = new MenuItem(Strings.Content.EDIT_MENU_REDO.text);
+        MenuItem cutItem = new MenuItem(Strings.Content.EDIT_MENU_CUT.text);
+        MenuItem copyItem = new MenuItem(Strings.Content.EDIT_MENU_COPY.text);
+        MenuItem pasteItem = new MenuItem(Strings.Content.EDIT_MENU_PASTE.text);
+        MenuItem selectAllItem = new MenuItem(Strings.Content.EDIT_MENU_SELECT_ALL.text);
+        undoItem.setOnAction(new UndoActionHandler(this));
+        redoItem.setOnAction(new RedoActionHandler(this));
+        cutItem.setOnAction(e -> textArea.cut());
+        copyItem.setOnAction(e -> textArea.copy());
+        pasteItem.setOnAction(new PasteActionHandler(this));
+        selectAllItem.setOnAction(new SelectAllActionHandler(this));
+        ContextMenu contextMenu = new ContextMenu(
+                undoItem,
+                redoItem,
+                new SeparatorMenuItem(),
+                cutItem,
+                copyItem,
+                pasteItem,
+                new SeparatorMenuItem(),
+                selectAllItem
+        );
+        contextMenu.setOnShowing(e -> {
+            undoItem.setDisable(!undoManager.canUndo());
+            redoItem.setDisable(!undoManager.canRedo());
+        });
+        textArea.setContextMenu(contextMenu);
+    }
+
     private void populateMenus() {
         Menu fileMenu = new JPEditFileMenu(this, Strings.Content.MENU_TITLE_FILE.text);
         Menu editMenu = new JPEditEditMenu(this, Strings.Content.MENU_TITLE_EDIT.text);
@@ -154,11 +249,11 @@ public class JPEditWindow extends DependableStage {
     }
 
     /**
-     * Marks the window as dirty. Setter does not exist because
-     * unmarking should be up to the JPEditWindow
+     * Marks the window as dirty until it is next saved, even if its text is changed back to what was last saved.
+     * Setter does not exist because unmarking should be up to the JPEditWindow
      */
     public void wasDirtied() {
-        dirtyPropertyInternal().set(true);
+        dirtyTracker.markUnsaved();
     }
 
     private SimpleBooleanProperty dirtyPropertyInternal() {
@@ -169,7 +264,8 @@ public class JPEditWindow extends DependableStage {
      * This property indicates if the {@link TextArea} is dirtied
      * <p>
      * This is a ReadOnlyProperty but it can be watched. It is true
-     * if the TextArea has been changed since the last save.
+     * if the text differs from what was last saved, and turns false
+     * again if the text is edited back to what was saved.
      *
      * @return the Dirty Property of the JPEditWindow
      */
@@ -185,7 +281,9 @@ public class JPEditWindow extends DependableStage {
         buttonBox.setAlignment(Pos.CENTER);
         buttonBox.setPadding(new Insets(5));
         buttonBox.getChildren()
-                 .addAll(newButton, newWindowButton, openButton, saveButton, saveAsButton, lastSavedLabeler, lastSaveLabel);
+                 .addAll(newButton, newWindowButton, openButton, saveButton, saveAsButton, lastSavedLabeler, lastSaveLabel, caretPositionLabel, loadProgressBar, cancelLoadButton);
+        setLoadControlsVisible(false);
+        updateCaretPosition();
         setWidth(800);
         setHeight(600);
         setFullPathInTitle(ApplicationContext.getContext().getUserPreferences().isFullPathShowing());
@@ -200,6 +298,7 @@ public class JPEditWindow extends DependableStage {
         openButton.setOnAction(new OpenActionHandler(this));
         saveButton.setOnAction(new SaveActionHandler(this));
         saveAsButton.setOnAction(new SaveAsActionHandler(this));
+        cancelLoadButton.setOnAction(event -> cancelLoading());
     }
 
     private void startAutoSaveWorker() {
@@ -223,10 +322,13 @@ public class JPEditWindow extends DependableStage {
      */
     public void turnAutoSaveOn() {
         autoSaveEnabled.getAndSet(true);
+        if (autoSaveWorker != null) {
+            autoSaveWorker.requestAutosave();
+        }
         JPLogger.getAppLog()
-                .info(() -> "Auto save turned on beginning fixed interval task with delay=" + ApplicationContext.getContext()
-                                                                                                                .getUserPreferences()
-                                                                                                                .getAutosavePeriodMillis() + "ms");
+                .info(() -> "Auto save turned on with maximum delay=" + ApplicationContext.getContext()
+                                                                                          .getUserPreferences()
+                                                                                          .getAutosavePeriodMillis() + "ms");
     }
 
     /**
@@ -238,28 +340,37 @@ public class JPEditWindow extends DependableStage {
     }
 
     /**
-     * Sets the autoSaveEnabled to false, cancels the Future and shuts down the executor, <b><i>and deletes
-     * the temporary file created by autosave worker</i></b>
+     * Sets the autoSaveEnabled to false, stops the {@link AutoSaveWorker} <b><i>and deletes the temporary files
+     * created by autosave</i></b>. The worker is closed and the files deleted on the autosave I/O thread, after a
+     * run that may be in progress there, so this does not wait for the disk.
      * Auto-save <b>cannot</b> be turned back on once this method is called.
+     *
+     * @return completes once the temporary files have been deleted
      */
-    public void terminateAutoSaveWorker() throws ExecutionException, InterruptedException {
+    public CompletableFuture<Void> terminateAutoSaveWorker() {
         autoSaveEnabled.getAndSet(false);
-        if (autoSaveWorker != null) {
-            autoSaveWorker.terminate();
-        }
+        CompletableFuture<Void> terminated = autoSaveWorker == null
+                                             ? CompletableFuture.completedFuture(null)
+                                             : autoSaveWorker.terminate();
         final File autoSaveFile = FileUtilsKt.toFile(getTempSaveFileName());
-        try {
-            JPLogger.debug(
-                    JPLogger.getAppLog(),
-                    "About to delete " + autoSaveFile.toPath() + " when tearing down auto save worker thread"
-            );
-            Files.deleteIfExists(autoSaveFile.toPath());
-        } catch (IOException | SecurityException e) {
-            popupAlert("Autosave disabled but temporary files not deleted!\nSee logs for more details.");
-            JPLogger.getErrLog()
-                    .severe("Failed to delete autosave temporary files -> " + stackTraceToString(e.getStackTrace()));
-        }
-        JPLogger.getAppLog().info(() -> "Auto save worker terminated.");
+        final File journalFile = FileUtilsKt.toFile(getTempJournalFileName());
+        return terminated.thenRun(() -> {
+            try {
+                JPLogger.debug(
+                        JPLogger.getAppLog(),
+                        "About to delete " + autoSaveFile.toPath() + " when tearing down auto save worker thread"
+                );
+                Files.deleteIfExists(autoSaveFile.toPath());
+                Files.deleteIfExists(journalFile.toPath());
+            } catch (IOException | SecurityException e) {
+                Platform.runLater(() -> popupAlert(
+                        "Autosave disabled but temporary files not deleted!\nSee logs for more details."
+                ));
+                JPLogger.getErrLog()
+                        .severe("Failed to delete autosave temporary files -> " + stackTraceToString(e.getStackTrace()));
+            }
+            JPLogger.getAppLog().info(() -> "Auto save worker terminated.");
+        });
     }
 
     /**
@@ -272,6 +383,16 @@ public class JPEditWindow extends DependableStage {
         return tempSavesDir + File.separator + "tempSave_" + getId() + ".tmp";
     }
 
+    /**
+     * Get the name of the file the {@link AutoSaveWorker} journals edits to. The edits are made
+     * to the text in the file named by {@link #getTempSaveFileName()}
+     *
+     * @return the name of the autosave journal file
+     */
+    public String getTempJournalFileName() {
+        return tempSavesDir + File.separator + "tempSave_" + getId() + ".journal";
+    }
+
     public int getId() {
         return id;
     }
@@ -307,6 +428,7 @@ public class JPEditWindow extends DependableStage {
     @Nullable
     public JPEditWindow duplicate(JPEditWindow intoWindow) {
         intoWindow.getTextArea().setText(textArea.getText());
+        intoWindow.getUndoManager().clear();
         if (hasSaveFile()) {
             intoWindow.fire(Action.SAVE_AS_ACTION);
             // if they choose not to resave the file, the window
@@ -317,7 +439,11 @@ public class JPEditWindow extends DependableStage {
             }
         } else {
             intoWindow.setTitle(getTitle() + " duplicate");
-            intoWindow.dirtyPropertyInternal().set(dirtyPropertyInternal().get());
+            if (isDirty()) {
+                intoWindow.wasDirtied();
+            } else {
+                intoWindow.wasCleaned();
+            }
         }
         if (!autoSaveEnabled.get()) {
             intoWindow.turnAutoSaveOff();
@@ -361,14 +487,190 @@ public class JPEditWindow extends DependableStage {
      * This method will <b>NOT</b> prompt to save ever!
      */
     public void newFile() {
+        cancelLoading();
+        exitLargeFileMode();
         textArea.clear();
+        undoManager.clear();
         ((SimpleObjectProperty<File>) saveFileProperty()).set(null);
         lastSaveLabel.setText(Strings.Content.UILABEL_LAST_SAVE_TIME.text);
         wasCleaned();
     }
 
+    /**
+     * Prepares the window for a file to be loaded into it by a {@link FileLoadWorker}, or opened in large file mode
+     * by a {@link LargeFileOpenWorker}.
+     * <p>
+     * Any file still loading is cancelled, the text is cleared and made read-only until loading ends,
+     * and the progress of the worker is shown in the toolbar along with a button to cancel it.
+     * Chunks of the file are then added with {@link #appendLoadedText(String)}
+     *
+     * @param worker the worker that will load the file
+     */
+    public void beginLoading(@NotNull Task<?> worker) {
+        cancelLoading();
+        exitLargeFileMode();
+        fileLoadWorker = worker;
+        // the chunks being appended are not edits and should not dirty the window
+        changeBus.unsubscribe(dirtyTracker);
+        undoManager.setEnabled(false);
+        textArea.clear();
+        textArea.setEditable(false);
+        loadProgressBar.progressProperty().bind(worker.progressProperty());
+        setLoadControlsVisible(true);
+    }
+
+    /**
+     * Appends the next chunk of the file being loaded to the end of the text
+     *
+     * @param text the chunk of the file
+     */
+    public void appendLoadedText(@NotNull String text) {
+        documentFilter.appendLoadedText(text);
+    }
+
+    /**
+     * Ends loading if the worker is the one currently loading into the window, making the text editable again
+     *
+     * @param worker the worker that has finished, failed, or been cancelled
+     * @return true if the worker was the one loading into this window, false if it had already been replaced
+     */
+    public boolean endLoading(@NotNull Task<?> worker) {
+        if (fileLoadWorker != worker) {
+            return false;
+        }
+        fileLoadWorker = null;
+        loadProgressBar.progressProperty().unbind();
+        setLoadControlsVisible(false);
+        textArea.setEditable(true);
+        changeBus.subscribe(dirtyTracker);
+        undoManager.setEnabled(true);
+        return true;
+    }
+
+    /**
+     * Cancels loading the file being loaded into the window, if there is one
+     */
+    public void cancelLoading() {
+        Task<?> worker = fileLoadWorker;
+        if (worker != null) {
+            worker.cancel(true);
+        }
+    }
+
+    /**
+     * @return true if a file is still being loaded into this window
+     */
+    public boolean isLoading() {
+        return fileLoadWorker != null;
+    }
+
+    private void setLoadControlsVisible(boolean visible) {
+        loadProgressBar.setVisible(visible);
+        loadProgressBar.setManaged(visible);
+        cancelLoadButton.setVisible(visible);
+        cancelLoadButton.setManaged(visible);
+    }
+
+    /**
+     * Shows a memory mapped file in this window one page at a time instead of loading it into the TextArea.
+     * <p>
+     * While in large file mode the TextArea is read-only, a scroll bar beside it moves through the file,
+     * and the window is neither autosaved nor saved. The mode ends when another file is opened,
+     * a new file is created or the window is closed.
+     *
+     * @param file the mapped file to show. It is closed when large file mode ends
+     */
+    public void enterLargeFileMode(@NotNull MappedTextFile file) {
+        exitLargeFileMode();
+        largeFileViewport = new LargeFileViewport(this, file);
+        int index = root.getChildren().indexOf(textArea);
+        root.getChildren().add(index, largeFileViewport.getContainer());
+        textArea.setEditable(false);
+        undoManager.setEnabled(false);
+        largeFileViewport.showPage(0);
+        JPLogger.getAppLog()
+                .info("Window " + id + " entered large file mode for " + file.getFile() + " (" + file.lineCount() + " lines)");
+    }
+
+    /**
+     * Leaves large file mode if the window is in it, unmapping the file and making the TextArea editable again
+     */
+    public void exitLargeFileMode() {
+        if (largeFileViewport == null) {
+            return;
+        }
+        int index = root.getChildren().indexOf(largeFileViewport.getContainer());
+        largeFileViewport.close();
+        root.getChildren().set(index, textArea);
+        textArea.setEditable(true);
+        undoManager.setEnabled(true);
+        largeFileViewport = null;
+        JPLogger.getAppLog().info("Window " + id + " left large file mode");
+    }
+
+    /**
+     * Moves the caret to the start of the line, which scrolls it into view. In large file mode the page starting
+     * at the line of the file is shown instead, with the caret at its start
+     *
+     * @param line the line to go to, counting from 0. Clamped to the lines there are
+     */
+    public void goToLine(int line) {
+        if (largeFileViewport != null) {
+            largeFileViewport.showPage(line);
+            textArea.positionCaret(0);
+        } else {
+            textArea.positionCaret(lineIndex.offsetOfLine(Math.clamp(line, 0, lineIndex.lineCount() - 1)));
+        }
+        textArea.requestFocus();
+    }
+
+    /**
+     * Shows the line and column of the caret in the toolbar, counting from 1 as editors do. In large file mode the
+     * line is the line of the file rather than of the page
+     */
+    private void updateCaretPosition() {
+        // the caret can be past the end of the document for a moment while the TextArea is being changed
+        int caret = Math.min(textArea.getCaretPosition(), document.length());
+        int line = lineIndex.lineOfOffset(caret);
+        int column = caret - lineIndex.offsetOfLine(line);
+        if (largeFileViewport != null) {
+            line += largeFileViewport.getFirstLine();
+        }
+        caretPositionLabel.setText(Strings.Content.UILABEL_CARET_LINE.text + " " + (line + 1) + ", "
+                                   + Strings.Content.UILABEL_CARET_COLUMN.text + " " + (column + 1));
+    }
+
+    /**
+     * Shows the page starting at the line of the file when in large file mode. Does nothing otherwise
+     *
+     * @param line the line of the file to show, counting from 0
+     */
+    public void showLargeFileLine(int line) {
+        if (largeFileViewport != null) {
+            largeFileViewport.showPage(line);
+        }
+    }
+
+    /**
+     * @return the viewport onto the mapped file when in large file mode and null otherwise
+     */
+    public @Nullable LargeFileViewport getLargeFileViewport() {
+        return largeFileViewport;
+    }
+
+    /**
+     * @return true if the window is showing a memory mapped file a page at a time
+     * @see #enterLargeFileMode(MappedTextFile)
+     */
+    public boolean isLargeFileMode() {
+        return largeFileViewport != null;
+    }
+
+    /**
+     * Marks the text as it is now as saved, so the window is clean until the text differs from it
+     */
     public void wasCleaned() {
-        dirtyPropertyInternal().set(false);
+        dirtyTracker.markSaved();
     }
 
     /**
@@ -378,12 +680,22 @@ public class JPEditWindow extends DependableStage {
      * until the window is dirtied again and updates the save label
      */
     public void saveUpdated() {
-        saveUpdated(Date.from(Instant.now()));
+        saveUpdated(document.snapshot());
+    }
+
+    /**
+     * Same as {@link #saveUpdated()} for a save of the snapshot, which the document may have been edited past
+     * while it was being written. The window is then only clean if its text is still that of the snapshot
+     *
+     * @param saved the version of the document that was saved
+     */
+    public void saveUpdated(@NotNull DocumentSnapshot saved) {
+        saveUpdated(Date.from(Instant.now()), saved);
     }
 
-    private void saveUpdated(@NotNull Date when) {
+    private void saveUpdated(@NotNull Date when, @NotNull DocumentSnapshot saved) {
         lastSaveLabel.setText(DateFormat.getDateTimeInstance().format(when));
-        wasCleaned();
+        dirtyTracker.markSaved(saved);
         if (getSaveFile() != null) {
             if (isFullPathInTitle()) {
                 setTitle(getSaveFile().getAbsolutePath());
@@ -488,6 +800,62 @@ public class JPEditWindow extends DependableStage {
         return textArea;
     }
 
+    /**
+     * Returns the document holding the text of this window. It always has the same content as
+     * the {@link TextArea} and can be read without copying the text.
+     * <p>
+     * The document must not be modified directly. All edits go through the TextArea, which
+     * forwards them to the document.
+     *
+     * @return the document of this window
+     */
+    public PieceTable getDocument() {
+        return document;
+    }
+
+    /**
+     * Returns the latest immutable snapshot of the document. This is the only view of the text
+     * that may be read off the JavaFX Application Thread. A new snapshot is published once per pulse
+     * after the document changes, so it may not yet include the edits of the current pulse; code on the
+     * FX thread that needs the exact current text should call {@link PieceTable#snapshot()} instead.
+     *
+     * @return the latest published snapshot of the document
+     */
+    public @NotNull DocumentSnapshot getSnapshot() {
+        return snapshotPublisher.getSnapshot();
+    }
+
+    /**
+     * Returns the bus that hands out the changes made to the document once per pulse. Each change is a delta
+     * of an offset, a removed length and the inserted text, so a subscriber does work in proportion to the
+     * edit rather than to the document. Subscribers are called on the JavaFX Application Thread
+     *
+     * @return the change bus of the document of this window
+     */
+    public @NotNull DocumentChangeBus getChangeBus() {
+        return changeBus;
+    }
+
+    /**
+     * Returns the index of the lines of the document, which turns an offset into a line and column, and a line
+     * into an offset, in time logarithmic in the number of lines. It is kept up to date as the document is edited
+     *
+     * @return the line index of the document of this window
+     */
+    public @NotNull LineIndex getLineIndex() {
+        return lineIndex;
+    }
+
+    /**
+     * Returns the undo history of the document. Undo and redo from the menus, the keyboard and the context menu
+     * of the TextArea all go through it
+     *
+     * @return the undo manager of this window
+     */
+    public @NotNull UndoManager getUndoManager() {
+        return undoManager;
+    }
+
     public HBox getToolbar() {
         return buttonBox;
     }
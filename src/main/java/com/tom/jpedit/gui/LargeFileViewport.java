@@ -0,0 +1,95 @@
+package com.tom.jpedit.gui;
+
+import com.tom.jpedit.document.MappedTextFile;
+import javafx.geometry.Orientation;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.control.TextArea;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Shows a window onto a {@link MappedTextFile} in a {@link JPEditWindow}'s TextArea.
+ * <p>
+ * Only {@link #PAGE_LINES} lines of the file are decoded and put into the TextArea at any time.
+ * A scroll bar beside the TextArea moves that page through the file. The TextArea is read-only
+ * while it is showing a page.
+ */
+public class LargeFileViewport {
+    /**
+     * Number of lines decoded and shown in the TextArea at once
+     */
+    public static final int PAGE_LINES = 1000;
+
+    private final JPEditWindow owner;
+    private final MappedTextFile file;
+    private final ScrollBar scrollBar = new ScrollBar();
+    private final HBox container = new HBox();
+    private int firstLine = -1;
+
+    public LargeFileViewport(@NotNull JPEditWindow owner, @NotNull MappedTextFile file) {
+        this.owner = owner;
+        this.file = file;
+        scrollBar.setOrientation(Orientation.VERTICAL);
+        scrollBar.setMin(0);
+        scrollBar.setMax(Math.max(0, file.lineCount() - PAGE_LINES / 2));
+        scrollBar.setUnitIncrement(PAGE_LINES / 4.0);
+        scrollBar.setBlockIncrement(PAGE_LINES / 2.0);
+        scrollBar.setVisibleAmount(Math.max(1, Math.min(PAGE_LINES, file.lineCount())));
+        scrollBar.valueProperty().addListener((obs, old, value) -> showPage(value.intValue()));
+        HBox.setHgrow(owner.getTextArea(), Priority.ALWAYS);
+    }
+
+    public @NotNull MappedTextFile getFile() {
+        return file;
+    }
+
+    public @NotNull ScrollBar getScrollBar() {
+        return scrollBar;
+    }
+
+    /**
+     * @return a node containing the TextArea and the scroll bar to put in the window where the TextArea was
+     */
+    public @NotNull HBox getContainer() {
+        if (container.getChildren().isEmpty()) {
+            container.getChildren().addAll(owner.getTextArea(), scrollBar);
+            container.prefHeightProperty().bind(owner.heightProperty());
+        }
+        return container;
+    }
+
+    /**
+     * @return the line of the file shown at the top of the TextArea
+     */
+    public int getFirstLine() {
+        return firstLine;
+    }
+
+    /**
+     * Decodes and shows the page starting at the line
+     *
+     * @param line the first line of the file to show
+     */
+    public void showPage(int line) {
+        int first = Math.clamp(line, 0, file.lineCount() - 1);
+        if (first == firstLine) {
+            return;
+        }
+        firstLine = first;
+        TextArea textArea = owner.getTextArea();
+        textArea.setText(file.decodeLines(first, PAGE_LINES));
+        textArea.setScrollTop(0);
+        // replacing the page is not an edit
+        owner.wasCleaned();
+    }
+
+    /**
+     * Unmaps the file. The viewport cannot be used afterward
+     */
+    public void close() {
+        container.getChildren().clear();
+        container.prefHeightProperty().unbind();
+        file.close();
+    }
+}
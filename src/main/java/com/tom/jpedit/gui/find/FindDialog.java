@@ -4,19 +4,51 @@ import com.tom.jpedit.gui.JPEditWindow;
 import com.tom.jpedit.gui.i18n.Strings;
 import com.tom.jpedit.handlers.edit.FindDialogNextActionHandler;
 import com.tom.jpedit.handlers.edit.FindDialogPreviousActionHandler;
+import com.tom.jpedit.logging.JPLogger;
+import com.tom.jpedit.search.MatchIndex;
+import com.tom.jpedit.search.SearchMatch;
 import com.tom.jpedit.util.FindCache;
+import com.tom.jpedit.workers.IncrementalSearchWorker;
 import javafx.geometry.Insets;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.CheckBox;
+import javafx.scene.control.IndexRange;
 import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
 import javafx.scene.layout.GridPane;
+import javafx.stage.WindowEvent;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import tom.javafx.JavaFXUtilsKt;
 
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.function.Consumer;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * The Find dialog of a window.
+ * <p>
+ * Besides Find Next and Find Previous, the dialog searches as the user types: every change to the query or
+ * the options starts an {@link IncrementalSearchWorker} on the latest snapshot of the document and cancels the
+ * one before it. The match nearest the current selection is selected as soon as it is found and the number of
+ * matches is counted in the background, so typing a query never waits on the size of the document.
+ * <p>
+ * The matches the search finds are kept as a {@link MatchIndex} in the {@link FindCache}. While it is up to date,
+ * Find Next and Find Previous jump straight to the next entry and the dialog shows which match of how many is
+ * selected. Edits to a fixed string's matches are followed in place; when the index goes stale instead, because
+ * the query is a regular expression or list of terms or the document was replaced, it is built again in the
+ * background. For a list of terms the dialog also shows which term the selected match is and how many matches
+ * each term has.
+ */
 public class FindDialog extends FindReplaceBase {
+    private final JPEditWindow window;
+    private final Label matchCountLabel = new Label();
+    private IncrementalSearchWorker incrementalSearch;
 
     public FindDialog(@NotNull JPEditWindow owner) {
+        this.window = owner;
         super.owner = owner;
         super.setTitle(Strings.Content.FIND_DIALOG_FIND_TITLE.text);
         GridPane root = new GridPane();
@@ -26,7 +58,10 @@ public class FindDialog extends FindReplaceBase {
         Label findTextLabel = new Label(Strings.Content.FIND_DIALOG_FIND_LABEL.text);
         findTextText = new TextField();
         caseInsensitiveBox = new CheckBox(Strings.Content.FIND_DIALOG_IGNORE_CASE.text);
+        createModeBoxes();
         GridPane.setColumnSpan(caseInsensitiveBox, 2);
+        GridPane.setColumnSpan(regexBox, 2);
+        GridPane.setColumnSpan(anyTermBox, 2);
         GridPane.setColumnSpan(findTextText, 2);
         Button nextButton = new Button(Strings.Content.FIND_DIALOG_FIND_NEXT_BUTTON.text);
         Button previousButton = new Button(Strings.Content.FIND_DIALOG_FIND_PREVIOUS_BUTTON.text);
@@ -37,8 +72,22 @@ public class FindDialog extends FindReplaceBase {
         root.add(findTextLabel, 0, 0);
         root.add(findTextText, 1, 0);
         root.add(caseInsensitiveBox, 1, 1);
-        root.add(nextButton, 1, 2);
-        root.add(previousButton, 2, 2);
+        root.add(regexBox, 1, 2);
+        root.add(anyTermBox, 1, 3);
+        root.add(nextButton, 1, 4);
+        root.add(previousButton, 2, 4);
+        root.add(matchCountLabel, 1, 5);
+        GridPane.setColumnSpan(matchCountLabel, 2);
+
+        findTextText.textProperty().addListener((observable, oldValue, newValue) -> searchAsYouType());
+        caseInsensitiveBox.selectedProperty().addListener((observable, oldValue, newValue) -> searchAsYouType());
+        regexBox.selectedProperty().addListener((observable, oldValue, newValue) -> searchAsYouType());
+        anyTermBox.selectedProperty().addListener((observable, oldValue, newValue) -> searchAsYouType());
+        addEventHandler(WindowEvent.WINDOW_SHOWN, event -> rebuildMatchIndex());
+        addEventHandler(WindowEvent.WINDOW_HIDING, event -> {
+            cancelIncrementalSearch();
+            cache.setMatchIndex(null);
+        });
 
         setScene(new Scene(root));
         owner.registerDependent(this);
@@ -46,6 +95,133 @@ public class FindDialog extends FindReplaceBase {
 
     }
 
+    private void cancelIncrementalSearch() {
+        if (incrementalSearch != null) {
+            incrementalSearch.cancel();
+            incrementalSearch = null;
+        }
+    }
+
+    private void searchAsYouType() {
+        startSearch(match -> {
+            window.getTextArea().selectRange(match.start(), match.end());
+            cache.setLastStop(match.end());
+            updateMatchLabel();
+        });
+    }
+
+    private void rebuildMatchIndex() {
+        startSearch(null);
+    }
+
+    /**
+     * Searches the latest snapshot of the document for the query in the background and indexes every match
+     *
+     * @param onNearest called with the match nearest the selection, or null to leave the selection alone
+     */
+    private void startSearch(@Nullable Consumer<SearchMatch> onNearest) {
+        cancelIncrementalSearch();
+        cache.setMatchIndex(null);
+        String query = findTextText.getText();
+        if (query.isEmpty()) {
+            matchCountLabel.setText("");
+            return;
+        }
+        IncrementalSearchWorker worker = new IncrementalSearchWorker(
+                window.getSnapshot(),
+                query,
+                caseInsensitiveBox.isSelected(),
+                getSearchMode(),
+                window.getTextArea().getSelection().getStart(),
+                onNearest
+        );
+        worker.messageProperty().addListener((observable, oldValue, newValue) -> {
+            if (worker == incrementalSearch) {
+                matchCountLabel.setText(newValue);
+            }
+        });
+        worker.setOnSucceeded(event -> {
+            incrementalSearch = null;
+            if (window.getDocument().revision() != worker.getSnapshot().revision()) {
+                // edited while searching, so the offsets may be wrong by now
+                rebuildMatchIndex();
+                return;
+            }
+            cache.setMatchIndex(worker.getValue().build(window.getDocument(), this::matchIndexChanged));
+            updateMatchLabel();
+        });
+        worker.setOnFailed(event -> {
+            if (worker.getException() instanceof PatternSyntaxException) {
+                matchCountLabel.setText(Strings.Content.FIND_DIALOG_INVALID_REGEX.text);
+            } else {
+                matchCountLabel.setText("");
+                JPLogger.getErrLog().warning("Incremental search failed: "
+                                                     + JavaFXUtilsKt.stackTraceToString(worker.getException().getStackTrace()));
+            }
+        });
+        incrementalSearch = worker;
+        worker.start();
+    }
+
+    private void matchIndexChanged() {
+        MatchIndex index = currentMatchIndex();
+        if (index == null) {
+            // stale, and it has already stopped following the document
+            rebuildMatchIndex();
+        } else {
+            updateMatchLabel();
+        }
+    }
+
+    private @Nullable MatchIndex currentMatchIndex() {
+        return getMatchIndex(findTextText.getText());
+    }
+
+    private void updateMatchLabel() {
+        MatchIndex index = currentMatchIndex();
+        if (index == null) {
+            return;
+        }
+        if (index.size() == 0) {
+            matchCountLabel.setText(Strings.Content.FIND_DIALOG_NOT_FOUND.text);
+            return;
+        }
+        IndexRange selection = window.getTextArea().getSelection();
+        int selected = index.indexOf(selection.getStart(), selection.getEnd());
+        if (selected < 0) {
+            matchCountLabel.setText(index.size() + " " + Strings.Content.FIND_DIALOG_MATCHES.text + countPerTerm(index));
+            return;
+        }
+        String text = Strings.Content.FIND_DIALOG_MATCH.text + " " + (selected + 1) + " "
+                + Strings.Content.FIND_DIALOG_OF.text + " " + index.size();
+        List<String> terms = index.getTerms();
+        if (terms != null) {
+            text += ": " + terms.get(index.get(selected).term());
+        }
+        matchCountLabel.setText(text);
+    }
+
+    /**
+     * @return a line with the number of matches of each term, or nothing if the query is not a list of terms
+     */
+    private static String countPerTerm(MatchIndex index) {
+        List<String> terms = index.getTerms();
+        int[] counts = index.countPerTerm();
+        if (terms == null || counts == null) {
+            return "";
+        }
+        StringJoiner joiner = new StringJoiner(", ", "\n", "");
+        for (int t = 0; t < terms.size(); t++) {
+            joiner.add(terms.get(t) + ": " + counts[t]);
+        }
+        return joiner.toString();
+    }
+
+    @Override
+    public void matchSelected(int start, int end) {
+        updateMatchLabel();
+    }
+
     public FindCache getCache() {
         return cache;
     }
@@ -57,4 +233,8 @@ public class FindDialog extends FindReplaceBase {
     public CheckBox getCaseInsensitiveBox() {
         return caseInsensitiveBox;
     }
+
+    public CheckBox getRegexBox() {
+        return regexBox;
+    }
 }
@@ -0,0 +1,400 @@
+package com.tom.jpedit.gui.find;
+
+import com.tom.jpedit.ApplicationContext;
+import com.tom.jpedit.gui.DependantStage;
+import com.tom.jpedit.gui.JPEditWindow;
+import com.tom.jpedit.gui.i18n.Strings;
+import com.tom.jpedit.handlers.file.OpenActionHandler;
+import com.tom.jpedit.logging.JPLogger;
+import com.tom.jpedit.search.FileMatch;
+import com.tom.jpedit.search.SearchMode;
+import com.tom.jpedit.workers.FileTreeTask;
+import com.tom.jpedit.workers.FindInFilesWorker;
+import com.tom.jpedit.workers.ReplaceInFilesWorker;
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
+import javafx.scene.input.KeyCode;
+import javafx.scene.layout.GridPane;
+import javafx.stage.DirectoryChooser;
+import javafx.stage.WindowEvent;
+import org.jetbrains.annotations.NotNull;
+import tom.javafx.JavaFXUtilsKt;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * The Find in Files dialog, which searches every file under a folder for a fixed string, and the Replace in Files
+ * dialog, which replaces a query in every file under a folder.
+ * <p>
+ * The search runs as a {@link FindInFilesWorker} and matches are added to the list as they are found. Opening a
+ * match, by double clicking it or pressing Enter, selects it in the window that already has its file open, or
+ * opens the file in a new window with {@link OpenActionHandler#openFileAt(FileMatch)}.
+ * <p>
+ * Replacing takes two steps. Preview runs a {@link ReplaceInFilesWorker} that lists every match without writing
+ * anything, and Replace All then rewrites the files the preview found matches in. Changing the query, the
+ * replacement or any option discards the preview. A file that is open in a window with unsaved changes is
+ * skipped, since saving the window would undo the replacement, and a window that has a replaced file open
+ * without changes reloads it.
+ */
+public class FindInFilesDialog extends DependantStage {
+    private final TextField folderText = new TextField();
+    private final TextField findTextText = new TextField();
+    private final CheckBox caseInsensitiveBox = new CheckBox(Strings.Content.FIND_DIALOG_IGNORE_CASE.text);
+    private final ListView<FileMatch> results = new ListView<>();
+    private final Label statusLabel = new Label();
+    private final Button searchButton = new Button(Strings.Content.FIND_IN_FILES_SEARCH_BUTTON.text);
+    private final Button stopButton = new Button(Strings.Content.FIND_IN_FILES_STOP_BUTTON.text);
+    private final boolean replacing;
+    private final TextField replaceTextText = new TextField();
+    private final CheckBox regexBox = new CheckBox(Strings.Content.FIND_DIALOG_REGEX.text);
+    private final CheckBox anyTermBox = new CheckBox(Strings.Content.FIND_DIALOG_ANY_TERM.text);
+    private final Button replaceAllButton = new Button(Strings.Content.FIND_DIALOG_REPLACE_ALL_BUTTON.text);
+    private FileTreeTask<Integer> search;
+    private Path searchedFolder;
+    // the last preview that succeeded, which Replace All writes; null once anything has changed since
+    private ReplaceInFilesWorker preview;
+
+    public FindInFilesDialog(@NotNull JPEditWindow owner) {
+        this(owner, false);
+    }
+
+    /**
+     * @param owner     the window the dialog belongs to
+     * @param replacing true for Replace in Files and false for Find in Files
+     */
+    public FindInFilesDialog(@NotNull JPEditWindow owner, boolean replacing) {
+        super(owner);
+        this.replacing = replacing;
+        setTitle(replacing ? Strings.Content.FIND_IN_FILES_REPLACE_TITLE.text : Strings.Content.FIND_IN_FILES_TITLE.text);
+        GridPane root = new GridPane();
+        root.setHgap(5);
+        root.setVgap(5);
+        root.setPadding(new Insets(5));
+
+        File start = owner.getSaveFile() != null ? owner.getSaveFile().getAbsoluteFile().getParentFile() : null;
+        folderText.setText(start != null ? start.getPath() : System.getProperty("user.dir"));
+        Button browseButton = new Button(Strings.Content.FIND_IN_FILES_BROWSE_BUTTON.text);
+        browseButton.setOnAction(event -> chooseFolder());
+
+        stopButton.setDisable(true);
+        searchButton.setDefaultButton(true);
+        searchButton.setOnAction(event -> search());
+        stopButton.setOnAction(event -> stop());
+
+        results.setPrefSize(600, 300);
+        results.setCellFactory(list -> new MatchCell());
+        results.setOnMouseClicked(event -> {
+            if (event.getClickCount() == 2) {
+                openSelected();
+            }
+        });
+        results.setOnKeyPressed(event -> {
+            if (event.getCode() == KeyCode.ENTER) {
+                openSelected();
+            }
+        });
+
+        root.add(new Label(Strings.Content.FIND_IN_FILES_FOLDER_LABEL.text), 0, 0);
+        root.add(folderText, 1, 0);
+        root.add(browseButton, 2, 0);
+        root.add(new Label(Strings.Content.FIND_DIALOG_FIND_LABEL.text), 0, 1);
+        root.add(findTextText, 1, 1);
+        GridPane.setColumnSpan(findTextText, 2);
+        int row = 2;
+        if (replacing) {
+            root.add(new Label(Strings.Content.FIND_DIALOG_REPLACE_LABEL.text), 0, row);
+            root.add(replaceTextText, 1, row++);
+            GridPane.setColumnSpan(replaceTextText, 2);
+        }
+        root.add(caseInsensitiveBox, 1, row++);
+        if (replacing) {
+            createModeBoxes();
+            root.add(regexBox, 1, row++);
+            root.add(anyTermBox, 1, row++);
+            searchButton.setText(Strings.Content.FIND_IN_FILES_PREVIEW_BUTTON.text);
+            replaceAllButton.setDisable(true);
+            replaceAllButton.setOnAction(event -> replaceAll());
+        }
+        root.add(searchButton, 1, row);
+        root.add(stopButton, 2, row++);
+        if (replacing) {
+            root.add(replaceAllButton, 1, row++);
+        }
+        root.add(results, 0, row++);
+        GridPane.setColumnSpan(results, 3);
+        root.add(statusLabel, 0, row);
+        GridPane.setColumnSpan(statusLabel, 3);
+
+        addEventHandler(WindowEvent.WINDOW_HIDING, event -> stop());
+        setScene(new Scene(root));
+    }
+
+    /**
+     * Ticks the regular expression and any term boxes one at a time, and discards the preview when any of the
+     * options it was made with change
+     */
+    private void createModeBoxes() {
+        regexBox.selectedProperty().addListener((observable, oldValue, newValue) -> {
+            if (newValue) {
+                anyTermBox.setSelected(false);
+            }
+        });
+        anyTermBox.selectedProperty().addListener((observable, oldValue, newValue) -> {
+            if (newValue) {
+                regexBox.setSelected(false);
+            }
+        });
+        folderText.textProperty().addListener((observable, oldValue, newValue) -> discardPreview());
+        findTextText.textProperty().addListener((observable, oldValue, newValue) -> discardPreview());
+        replaceTextText.textProperty().addListener((observable, oldValue, newValue) -> discardPreview());
+        caseInsensitiveBox.selectedProperty().addListener((observable, oldValue, newValue) -> discardPreview());
+        regexBox.selectedProperty().addListener((observable, oldValue, newValue) -> discardPreview());
+        anyTermBox.selectedProperty().addListener((observable, oldValue, newValue) -> discardPreview());
+    }
+
+    private @NotNull SearchMode getSearchMode() {
+        if (regexBox.isSelected()) {
+            return SearchMode.REGEX;
+        }
+        return anyTermBox.isSelected() ? SearchMode.ANY_TERM : SearchMode.TEXT;
+    }
+
+    private void discardPreview() {
+        preview = null;
+        replaceAllButton.setDisable(true);
+    }
+
+    private void chooseFolder() {
+        DirectoryChooser chooser = new DirectoryChooser();
+        File current = new File(folderText.getText());
+        if (current.isDirectory()) {
+            chooser.setInitialDirectory(current);
+        }
+        File chosen = chooser.showDialog(this);
+        if (chosen != null) {
+            folderText.setText(chosen.getPath());
+        }
+    }
+
+    private void search() {
+        stop();
+        discardPreview();
+        String query = findTextText.getText();
+        Path folder = Path.of(folderText.getText()).toAbsolutePath();
+        if (query.isEmpty()) {
+            return;
+        }
+        if (!Files.isDirectory(folder)) {
+            JavaFXUtilsKt.popupAlert("'" + folder + "' is not a folder", "Not a folder");
+            return;
+        }
+        FileTreeTask<Integer> worker;
+        try {
+            worker = newSearch(folder, query);
+        } catch (PatternSyntaxException e) {
+            JavaFXUtilsKt.popupAlert("'" + query + "' is not a valid regular expression:\n" + e.getDescription(), "Invalid expression");
+            return;
+        }
+        results.getItems().clear();
+        searchedFolder = folder;
+        worker.messageProperty().addListener((observable, oldValue, newValue) -> {
+            if (worker == search) {
+                statusLabel.setText(newValue + " " + Strings.Content.FIND_IN_FILES_FILES_SEARCHED.text);
+            }
+        });
+        worker.setOnSucceeded(event -> {
+            searchEnded();
+            int count = worker.getValue();
+            String status = count == 0
+                            ? Strings.Content.FIND_DIALOG_NOT_FOUND.text
+                            : count + " " + Strings.Content.FIND_DIALOG_MATCHES.text;
+            if (!replacing && count >= FindInFilesWorker.MAX_MATCHES) {
+                status += " " + Strings.Content.FIND_IN_FILES_LIMIT_REACHED.text;
+            }
+            statusLabel.setText(status);
+            if (worker instanceof ReplaceInFilesWorker replace && count > 0) {
+                preview = replace;
+                replaceAllButton.setDisable(false);
+            }
+        });
+        worker.setOnFailed(event -> {
+            searchEnded();
+            statusLabel.setText("");
+            if (worker.getException() instanceof IllegalArgumentException) {
+                JavaFXUtilsKt.popupAlert("The replacement is not valid:\n" + worker.getException().getMessage(), "Invalid replacement");
+                return;
+            }
+            JavaFXUtilsKt.popupAlert("Could not search " + folder + ":\n" + worker.getException().getMessage(), "Search failed");
+            JPLogger.getErrLog().warning("Find in Files failed: "
+                                                 + JavaFXUtilsKt.stackTraceToString(worker.getException().getStackTrace()));
+        });
+        search = worker;
+        searchButton.setDisable(true);
+        stopButton.setDisable(false);
+        worker.start();
+    }
+
+    /**
+     * @return a task that finds the query in the folder, or previews replacing it
+     * @throws PatternSyntaxException if regular expressions are ticked and the query is not a valid one
+     */
+    private FileTreeTask<Integer> newSearch(Path folder, String query) {
+        if (!replacing) {
+            return new FindInFilesWorker(
+                    folder,
+                    query,
+                    caseInsensitiveBox.isSelected(),
+                    matches -> results.getItems().addAll(matches)
+            );
+        }
+        return new ReplaceInFilesWorker(
+                folder,
+                null,
+                query,
+                caseInsensitiveBox.isSelected(),
+                getSearchMode(),
+                replaceTextText.getText(),
+                matches -> results.getItems().addAll(matches)
+        );
+    }
+
+    /**
+     * Rewrites the files the preview found matches in, apart from any open in a window with unsaved changes
+     */
+    private void replaceAll() {
+        ReplaceInFilesWorker done = preview;
+        if (done == null) {
+            return;
+        }
+        stop();
+        discardPreview();
+        Set<Path> files = new HashSet<>(done.getMatchedFiles());
+        List<JPEditWindow> toReload = new ArrayList<>();
+        int skipped = 0;
+        for (JPEditWindow window : ApplicationContext.getContext().getWindowsUnmodifiable()) {
+            File saved = window.getSaveFile();
+            if (saved == null || !files.contains(saved.toPath().toAbsolutePath())) {
+                continue;
+            }
+            if (window.isDirty() || window.isLoading()) {
+                files.remove(saved.toPath().toAbsolutePath());
+                skipped++;
+            } else {
+                toReload.add(window);
+            }
+        }
+        ReplaceInFilesWorker worker = new ReplaceInFilesWorker(
+                done.getRoot(),
+                files,
+                findTextText.getText(),
+                caseInsensitiveBox.isSelected(),
+                getSearchMode(),
+                replaceTextText.getText(),
+                matches -> {}
+        );
+        int skippedFiles = skipped;
+        worker.messageProperty().addListener((observable, oldValue, newValue) -> {
+            if (worker == search) {
+                statusLabel.setText(newValue + " / " + files.size());
+            }
+        });
+        worker.setOnSucceeded(event -> {
+            searchEnded();
+            results.getItems().clear();
+            String status = worker.getValue() + " " + Strings.Content.FIND_IN_FILES_REPLACED.text + " "
+                            + worker.getMatchedFiles().size() + " " + Strings.Content.FIND_IN_FILES_FILES.text;
+            if (skippedFiles > 0) {
+                status += " (" + skippedFiles + " " + Strings.Content.FIND_IN_FILES_SKIPPED_UNSAVED.text + ")";
+            }
+            statusLabel.setText(status);
+            for (JPEditWindow window : toReload) {
+                if (worker.getMatchedFiles().contains(window.getSaveFile().toPath().toAbsolutePath())) {
+                    new OpenActionHandler(window).openFile(window.getSaveFile());
+                }
+            }
+            JPLogger.getAppLog().info("Replaced " + worker.getValue() + " matches of '" + findTextText.getText()
+                                      + "' in " + worker.getMatchedFiles().size() + " files under " + done.getRoot());
+        });
+        worker.setOnFailed(event -> {
+            searchEnded();
+            statusLabel.setText("");
+            JavaFXUtilsKt.popupAlert("Could not replace in " + done.getRoot() + ":\n" + worker.getException().getMessage(), "Replace failed");
+            JPLogger.getErrLog().warning("Replace in Files failed: "
+                                                 + JavaFXUtilsKt.stackTraceToString(worker.getException().getStackTrace()));
+        });
+        search = worker;
+        searchButton.setDisable(true);
+        stopButton.setDisable(false);
+        worker.start();
+    }
+
+    private void stop() {
+        if (search != null) {
+            search.cancel(true);
+            searchEnded();
+        }
+    }
+
+    private void searchEnded() {
+        search = null;
+        searchButton.setDisable(false);
+        stopButton.setDisable(true);
+    }
+
+    private void openSelected() {
+        FileMatch match = results.getSelectionModel().getSelectedItem();
+        if (match == null) {
+            return;
+        }
+        for (JPEditWindow window : ApplicationContext.getContext().getWindowsUnmodifiable()) {
+            File saved = window.getSaveFile();
+            if (saved != null && !window.isLoading() && saved.toPath().toAbsolutePath().equals(match.file())) {
+                showIn(window, match);
+                return;
+            }
+        }
+        JPEditWindow window = ApplicationContext.getContext().createNewWindow();
+        new OpenActionHandler(window).openFileAt(match);
+    }
+
+    private static void showIn(JPEditWindow window, FileMatch match) {
+        if (window.isLargeFileMode()) {
+            window.showLargeFileLine(match.line());
+        } else {
+            // the text may have been edited since the file was searched
+            int length = window.getTextArea().getLength();
+            int start = (int) Math.min(match.charOffset(), length);
+            window.getTextArea().selectRange(start, Math.min(start + match.charLength(), length));
+        }
+        window.requestFocus();
+    }
+
+    /**
+     * Shows a match as its path relative to the folder searched, its line number and the line itself
+     */
+    private class MatchCell extends ListCell<FileMatch> {
+        @Override
+        protected void updateItem(FileMatch match, boolean empty) {
+            super.updateItem(match, empty);
+            if (empty || match == null) {
+                setText(null);
+                return;
+            }
+            Path shown = match.file().startsWith(searchedFolder) ? searchedFolder.relativize(match.file()) : match.file();
+            setText(shown + ":" + (match.line() + 1) + ": " + match.preview());
+        }
+    }
+}
@@ -2,14 +2,24 @@ package com.tom.jpedit.gui.find;
 
 import com.tom.jpedit.gui.DependableStage;
 import com.tom.jpedit.gui.DependantStage;
+import com.tom.jpedit.gui.i18n.Strings;
+import com.tom.jpedit.search.MatchIndex;
+import com.tom.jpedit.search.SearchMode;
+import com.tom.jpedit.search.TextSearcher;
 import com.tom.jpedit.util.FindCache;
 import javafx.scene.control.CheckBox;
 import javafx.scene.control.TextField;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.regex.PatternSyntaxException;
 
 public abstract class FindReplaceBase extends DependantStage {
     protected TextField findTextText;
     protected FindCache cache;
     protected CheckBox caseInsensitiveBox;
+    protected CheckBox regexBox;
+    protected CheckBox anyTermBox;
     protected DependableStage owner;
 
     public FindReplaceBase() {
@@ -26,4 +36,69 @@ public abstract class FindReplaceBase extends DependantStage {
     public CheckBox getCaseInsensitiveBox() {
         return caseInsensitiveBox;
     }
+
+    public CheckBox getRegexBox() {
+        return regexBox;
+    }
+
+    public CheckBox getAnyTermBox() {
+        return anyTermBox;
+    }
+
+    /**
+     * Makes the regular expression and any term boxes, which are ticked one at a time
+     */
+    protected void createModeBoxes() {
+        regexBox = new CheckBox(Strings.Content.FIND_DIALOG_REGEX.text);
+        anyTermBox = new CheckBox(Strings.Content.FIND_DIALOG_ANY_TERM.text);
+        regexBox.selectedProperty().addListener((observable, oldValue, newValue) -> {
+            if (newValue) {
+                anyTermBox.setSelected(false);
+            }
+        });
+        anyTermBox.selectedProperty().addListener((observable, oldValue, newValue) -> {
+            if (newValue) {
+                regexBox.setSelected(false);
+            }
+        });
+    }
+
+    /**
+     * @return how the query is read, given which boxes are ticked
+     */
+    public @NotNull SearchMode getSearchMode() {
+        if (getRegexBox().isSelected()) {
+            return SearchMode.REGEX;
+        }
+        return getAnyTermBox().isSelected() ? SearchMode.ANY_TERM : SearchMode.TEXT;
+    }
+
+    /**
+     * Returns the searcher for the query with the options currently ticked in the dialog
+     *
+     * @param query the text to search for, which must not be empty
+     * @return a searcher for the query, reused from the cache while nothing changes
+     * @throws PatternSyntaxException if regular expressions are ticked and the query is not a valid one
+     */
+    public @NotNull TextSearcher getSearcher(@NotNull String query) {
+        return getCache().getSearcher(query, getCaseInsensitiveBox().isSelected(), getSearchMode());
+    }
+
+    /**
+     * @param query the text to search for
+     * @return the index of every match of the query with the options currently ticked, or null if there is no
+     * index for them that is up to date
+     */
+    public @Nullable MatchIndex getMatchIndex(@NotNull String query) {
+        return getCache().getMatchIndex(query, getCaseInsensitiveBox().isSelected(), getSearchMode());
+    }
+
+    /**
+     * Called after Find Next or Find Previous selects a match. Does nothing unless a dialog shows where it is
+     *
+     * @param start the offset the match starts at
+     * @param end   the offset the match ends at
+     */
+    public void matchSelected(int start, int end) {
+    }
 }
@@ -32,7 +32,10 @@ public class ReplaceDialog extends FindReplaceBase {
         findTextText = new TextField();
         replaceTextText = new TextField();
         caseInsensitiveBox = new CheckBox(Strings.Content.FIND_DIALOG_IGNORE_CASE.text);
+        createModeBoxes();
         GridPane.setColumnSpan(caseInsensitiveBox, 2);
+        GridPane.setColumnSpan(regexBox, 2);
+        GridPane.setColumnSpan(anyTermBox, 2);
         GridPane.setColumnSpan(findTextText, 2);
         GridPane.setColumnSpan(replaceTextText, 2);
         nextButton = new Button(Strings.Content.FIND_DIALOG_FIND_NEXT_BUTTON.text);
@@ -56,10 +59,12 @@ public class ReplaceDialog extends FindReplaceBase {
         root.add(replaceTextLabel, 0, 1);
         root.add(replaceTextText, 1, 1);
         root.add(caseInsensitiveBox, 1, 2);
-        root.add(nextButton, 1, 3);
-        root.add(previousButton, 2, 3);
-        root.add(replaceButton, 1, 4);
-        root.add(replaceAllButton, 1, 5);
+        root.add(regexBox, 1, 3);
+        root.add(anyTermBox, 1, 4);
+        root.add(nextButton, 1, 5);
+        root.add(previousButton, 2, 5);
+        root.add(replaceButton, 1, 6);
+        root.add(replaceAllButton, 1, 7);
 
         setScene(new Scene(root));
         cache = new FindCache(0);
@@ -79,6 +84,10 @@ public class ReplaceDialog extends FindReplaceBase {
         return caseInsensitiveBox;
     }
 
+    public CheckBox getRegexBox() {
+        return regexBox;
+    }
+
     public TextField getReplaceTextText() {
         return replaceTextText;
     }
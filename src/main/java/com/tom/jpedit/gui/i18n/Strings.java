@@ -35,6 +35,8 @@ public final class Strings {
         // UI LABELS AND TEXT
         UILABEL_LAST_SAVE_LABEL,
         UILABEL_LAST_SAVE_TIME,
+        UILABEL_CARET_LINE,
+        UILABEL_CARET_COLUMN,
 
         CHANGE_LOCAL_PROMPT_TITLE,
         CHANGE_LOCAL_PROMPT_CHOOSE_LABEL,
@@ -63,11 +65,32 @@ public final class Strings {
         FIND_DIALOG_FIND_LABEL,
         FIND_DIALOG_REPLACE_LABEL,
         FIND_DIALOG_IGNORE_CASE,
+        FIND_DIALOG_REGEX,
+        FIND_DIALOG_ANY_TERM,
+        FIND_DIALOG_MATCHES,
+        FIND_DIALOG_MATCH,
+        FIND_DIALOG_OF,
+        FIND_DIALOG_MATCHES_SO_FAR,
+        FIND_DIALOG_NOT_FOUND,
+        FIND_DIALOG_INVALID_REGEX,
         FIND_DIALOG_FIND_NEXT_BUTTON,
         FIND_DIALOG_FIND_PREVIOUS_BUTTON,
         FIND_DIALOG_REPLACE_BUTTON,
         FIND_DIALOG_REPLACE_ALL_BUTTON,
 
+        FIND_IN_FILES_TITLE,
+        FIND_IN_FILES_FOLDER_LABEL,
+        FIND_IN_FILES_BROWSE_BUTTON,
+        FIND_IN_FILES_SEARCH_BUTTON,
+        FIND_IN_FILES_STOP_BUTTON,
+        FIND_IN_FILES_FILES_SEARCHED,
+        FIND_IN_FILES_LIMIT_REACHED,
+        FIND_IN_FILES_REPLACE_TITLE,
+        FIND_IN_FILES_PREVIEW_BUTTON,
+        FIND_IN_FILES_REPLACED,
+        FIND_IN_FILES_FILES,
+        FIND_IN_FILES_SKIPPED_UNSAVED,
+
         WINDOW_TITLE_DEFAULT,
 
         MENU_TITLE_ADVANCED,
@@ -93,6 +116,21 @@ public final class Strings {
         FILE_MENU_ITEM_NEW,
         FILE_MENU_ITEM_NEW_WINDOW,
 
+        EDIT_MENU_UNDO,
+        EDIT_MENU_REDO,
+        EDIT_MENU_CUT,
+        EDIT_MENU_COPY,
+        EDIT_MENU_PASTE,
+        EDIT_MENU_SELECT_ALL,
+        EDIT_MENU_GO_TO_LINE,
+
+        GO_TO_LINE_TITLE,
+        GO_TO_LINE_HEADER,
+        GO_TO_LINE_PROMPT,
+        GO_TO_LINE_INVALID_TITLE,
+        GO_TO_LINE_INVALID_LINE,
+        GO_TO_LINE_INVALID_RANGE,
+
         ADVANCED_MENU_AUTOSAVE_ITEM,
         ADVANCED_MENU_AUTOSAVE_ON_ITEM,
         ADVANCED_MENU_AUTOSAVE_OFF_ITEM,
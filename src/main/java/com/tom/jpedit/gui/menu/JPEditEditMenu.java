@@ -2,6 +2,7 @@ package com.tom.jpedit.gui.menu;
 
 import com.tom.jpedit.Action;
 import com.tom.jpedit.gui.JPEditWindow;
+import com.tom.jpedit.gui.i18n.Strings;
 import com.tom.jpedit.handlers.edit.*;
 import javafx.scene.control.MenuItem;
 import javafx.scene.control.SeparatorMenuItem;
@@ -9,10 +10,15 @@ import javafx.scene.control.SeparatorMenuItem;
 public class JPEditEditMenu extends JPEditMenu {
     public JPEditEditMenu(JPEditWindow owner, String s) {
         super(owner, s);
-        final MenuItem cutItem = new MenuItem("Cut");
-        final MenuItem copyItem = new MenuItem("Copy");
-        final MenuItem pasteItem = new MenuItem("Paste");
-        final MenuItem selectAllItem = new MenuItem("Select All");
+        final MenuItem undoItem = new MenuItem(Strings.Content.EDIT_MENU_UNDO.text);
+        final MenuItem redoItem = new MenuItem(Strings.Content.EDIT_MENU_REDO.text);
+        undoItem.setOnAction(new UndoActionHandler(owner));
+        redoItem.setOnAction(new RedoActionHandler(owner));
+
+        final MenuItem cutItem = new MenuItem(Strings.Content.EDIT_MENU_CUT.text);
+        final MenuItem copyItem = new MenuItem(Strings.Content.EDIT_MENU_COPY.text);
+        final MenuItem pasteItem = new MenuItem(Strings.Content.EDIT_MENU_PASTE.text);
+        final MenuItem selectAllItem = new MenuItem(Strings.Content.EDIT_MENU_SELECT_ALL.text);
         cutItem.setOnAction(e -> owner.getTextArea().cut());
         copyItem.setOnAction(e -> owner.getTextArea().copy());
         pasteItem.setOnAction(new PasteActionHandler(owner));
@@ -20,13 +26,22 @@ public class JPEditEditMenu extends JPEditMenu {
 
         final MenuItem findItem = new MenuItem("Find");
         final MenuItem replaceItem = new MenuItem("Replace");
+        final MenuItem findInFilesItem = new MenuItem("Find in Files...");
+        final MenuItem replaceInFilesItem = new MenuItem("Replace in Files...");
+        final MenuItem goToLineItem = new MenuItem(Strings.Content.EDIT_MENU_GO_TO_LINE.text);
         findItem.setOnAction(new FindActionHandler(owner));
         replaceItem.setOnAction(new ReplaceActionHandler(owner));
+        findInFilesItem.setOnAction(new FindInFilesActionHandler(owner));
+        replaceInFilesItem.setOnAction(new ReplaceInFilesActionHandler(owner));
+        goToLineItem.setOnAction(new GoToLineActionHandler(owner));
 
         final MenuItem timeDateItem = new MenuItem("Insert Time & Date");
         timeDateItem.setOnAction(new TimeDateActionHandler(owner));
 
         getItems().addAll(
+                undoItem,
+                redoItem,
+                new SeparatorMenuItem(),
                 cutItem,
                 copyItem,
                 pasteItem,
@@ -34,12 +49,18 @@ public class JPEditEditMenu extends JPEditMenu {
                 new SeparatorMenuItem(),
                 findItem,
                 replaceItem,
+                findInFilesItem,
+                replaceInFilesItem,
+                goToLineItem,
                 new SeparatorMenuItem(),
                 timeDateItem
         );
 
+        JPEditWindow.actionControlMap().put(Action.UNDO_ACTION, undoItem);
+        JPEditWindow.actionControlMap().put(Action.REDO_ACTION, redoItem);
         JPEditWindow.actionControlMap().put(Action.FIND_ACTION, findItem);
         JPEditWindow.actionControlMap().put(Action.REPLACE_ACTION, replaceItem);
+        JPEditWindow.actionControlMap().put(Action.GO_TO_LINE_ACTION, goToLineItem);
         JPEditWindow.actionControlMap().put(Action.INSERT_TIME_DATE_ACTION, timeDateItem);
 
     }
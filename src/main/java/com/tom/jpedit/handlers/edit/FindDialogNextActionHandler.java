@@ -1,15 +1,28 @@
 package com.tom.jpedit.handlers.edit;
 
+import com.tom.jpedit.document.MappedTextFile;
 import com.tom.jpedit.gui.JPEditWindow;
+import com.tom.jpedit.gui.LargeFileViewport;
 import com.tom.jpedit.gui.find.FindReplaceBase;
 import com.tom.jpedit.handlers.ActionHandler;
+import com.tom.jpedit.listeners.TextAreaDocumentFilter;
 import com.tom.jpedit.logging.JPLogger;
+import com.tom.jpedit.search.ByteSearcher;
+import com.tom.jpedit.search.MatchIndex;
+import com.tom.jpedit.search.SearchMatch;
+import com.tom.jpedit.search.SearchMode;
+import com.tom.jpedit.search.TextSearcher;
 import javafx.event.ActionEvent;
 import javafx.scene.control.IndexRange;
+import javafx.scene.control.TextArea;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 import tom.javafx.JavaFXUtilsKt;
 
+import java.nio.charset.StandardCharsets;
+import java.util.function.IntPredicate;
+import java.util.regex.PatternSyntaxException;
+
 public class FindDialogNextActionHandler extends ActionHandler {
     private final FindReplaceBase findDialog;
 
@@ -26,7 +39,19 @@ public class FindDialogNextActionHandler extends ActionHandler {
     @Override
     public void handle(ActionEvent event) {
         String query = findDialog.getFindTextText().getText();
-        IndexRange range = getRangeOfQuery(query);
+        LargeFileViewport viewport = owner.getLargeFileViewport();
+        if (viewport != null && !query.isEmpty() && findDialog.getSearchMode() == SearchMode.TEXT
+            && viewport.getFile().getCharset().equals(StandardCharsets.UTF_8)) {
+            findInLargeFile(viewport, query);
+            return;
+        }
+        IndexRange range;
+        try {
+            range = getRangeOfQuery(query);
+        } catch (PatternSyntaxException e) {
+            JavaFXUtilsKt.popupAlert("'" + query + "' is not a valid regular expression:\n" + e.getDescription(), "Invalid expression");
+            return;
+        }
         if (range == null) {
             if (!query.isEmpty() && findDialog.getCache().getLastStop() != 0) {
                 findDialog.getCache().setLastStop(0);
@@ -41,22 +66,71 @@ public class FindDialogNextActionHandler extends ActionHandler {
         JPLogger.debug(JPLogger.getAppLog(), "Start of find text: " + start);
         owner.getTextArea().selectRange(start, end);
         findDialog.getCache().setLastStop(end);
+        findDialog.matchSelected(start, end);
+    }
+
+    /**
+     * Finds the next match in the whole of a file shown in large file mode rather than in the page in the TextArea.
+     * <p>
+     * The mapped bytes are searched in place from just after the selection, wrapping around to the start of the
+     * file, and the page is moved to the match if it is not already showing it. Only ASCII letters are matched
+     * regardless of case, as in Find in Files.
+     * <p>
+     * Offsets in the TextArea and in the file are converted by walking the bytes of the page, since the TextArea
+     * holds UTF-16 and drops characters such as the {@code \r} of {@code \r\n} line endings.
+     */
+    private void findInLargeFile(LargeFileViewport viewport, String query) {
+        MappedTextFile file = viewport.getFile();
+        ByteSearcher searcher = new ByteSearcher(query, findDialog.getCaseInsensitiveBox().isSelected());
+        TextArea textArea = owner.getTextArea();
+        IntPredicate dropped = c -> TextAreaDocumentFilter.isDropped((char) c);
+        long pageStart = file.lineStart(viewport.getFirstLine());
+        long from = file.offsetAfterChars(pageStart, textArea.getSelection().getEnd(), dropped);
+        long found = file.indexOf(searcher, from);
+        if (found < 0 && from > 0) {
+            found = file.indexOf(searcher, 0);
+        }
+        if (found < 0) {
+            JavaFXUtilsKt.popupAlert("String '" + query + "' not found!", "Not found!");
+            return;
+        }
+        int line = file.lineOf(found);
+        if (line < viewport.getFirstLine() || line >= viewport.getFirstLine() + LargeFileViewport.PAGE_LINES) {
+            viewport.showPage(line);
+        }
+        int start = (int) file.charsBetween(file.lineStart(viewport.getFirstLine()), found, dropped);
+        JPLogger.debug(JPLogger.getAppLog(), "Start of find text in large file: byte " + found);
+        textArea.selectRange(start, start + query.length());
     }
 
+    /**
+     * Finds the next non-empty match of the query after the last one found, straight from the index of matches
+     * when the dialog has one
+     *
+     * @throws PatternSyntaxException if the query is meant as a regular expression and is not valid
+     */
     public IndexRange getRangeOfQuery(String query) {
         if (query == null || query.isEmpty()) {
             return null;
         }
-        String text = owner.getTextArea().getText();
-        if (findDialog.getCaseInsensitiveBox().isSelected()) {
-            text = text.toLowerCase();
-            query = query.toLowerCase();
+        MatchIndex index = findDialog.getMatchIndex(query);
+        if (index != null) {
+            int i = index.next(findDialog.getCache().getLastStop());
+            if (i < 0) {
+                return null;
+            }
+            SearchMatch match = index.get(i);
+            return new IndexRange(match.start(), match.end());
+        }
+        TextSearcher searcher = findDialog.getSearcher(query);
+        SearchMatch match = searcher.findNext(owner.getDocument(), findDialog.getCache().getLastStop());
+        while (match != null && match.isEmpty()) {
+            // a pattern such as "a*" matches nothing everywhere; selecting nothing is no use
+            match = searcher.findNext(owner.getDocument(), match.end() + 1);
         }
-        int start = text.indexOf(query, findDialog.getCache().getLastStop());
-        int end = start + query.length();
-        if (start < 0) {
+        if (match == null) {
             return null;
         }
-        return new IndexRange(start, end);
+        return new IndexRange(match.start(), match.end());
     }
 }
@@ -1,14 +1,25 @@
 package com.tom.jpedit.handlers.edit;
 
+import com.tom.jpedit.ApplicationContext;
+import com.tom.jpedit.document.DocumentSnapshot;
 import com.tom.jpedit.gui.JPEditWindow;
 import com.tom.jpedit.gui.find.FindReplaceBase;
 import com.tom.jpedit.handlers.ActionHandler;
 import com.tom.jpedit.logging.JPLogger;
+import com.tom.jpedit.search.HorspoolSearcher;
+import com.tom.jpedit.search.MatchIndex;
+import com.tom.jpedit.search.ParallelSearch;
+import com.tom.jpedit.search.SearchMatch;
+import com.tom.jpedit.search.TextSearcher;
+import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.scene.control.IndexRange;
 import org.jetbrains.annotations.Nullable;
 import tom.javafx.JavaFXUtilsKt;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.PatternSyntaxException;
+
 public class FindDialogPreviousActionHandler extends ActionHandler {
 
     private final FindReplaceBase findDialog;
@@ -21,7 +32,25 @@ public class FindDialogPreviousActionHandler extends ActionHandler {
     @Override
     public void handle(ActionEvent event) {
         String query = findDialog.getFindTextText().getText();
-        IndexRange range = getRangeOfQuery(query);
+        IndexRange range;
+        try {
+            HorspoolSearcher horspool = parallelSearcher(query);
+            if (horspool != null) {
+                findInBackground(horspool, query, event);
+                return;
+            }
+            range = getRangeOfQuery(query);
+        } catch (PatternSyntaxException e) {
+            JavaFXUtilsKt.popupAlert("'" + query + "' is not a valid regular expression:\n" + e.getDescription(), "Invalid expression");
+            return;
+        }
+        select(range, query, event);
+    }
+
+    /**
+     * Selects the match found, or wraps around or tells the user there is none
+     */
+    private void select(@Nullable IndexRange range, String query, ActionEvent event) {
         if (range == null) {
             if (!query.isEmpty() && findDialog.getCache().getLastStop() != 0) {
                 findDialog.getCache().setLastStop(0);
@@ -36,24 +65,76 @@ public class FindDialogPreviousActionHandler extends ActionHandler {
         JPLogger.debug(JPLogger.getAppLog(), "Start of find text: " + start);
         owner.getTextArea().selectRange(start, end);
         findDialog.getCache().setLastStop(start);
+        findDialog.matchSelected(start, end);
+    }
 
+    /**
+     * @return the searcher to look for the query with on several threads, or null if the query is not a fixed
+     * string, the dialog has an index of its matches or the last match found is not far enough into the document
+     * for it to be worth it
+     * @throws PatternSyntaxException if the query is meant as a regular expression and is not valid
+     */
+    private @Nullable HorspoolSearcher parallelSearcher(String query) {
+        if (query == null || query.isEmpty() || findDialog.getMatchIndex(query) != null
+            || findDialog.getCache().getLastStop() < ParallelSearch.SEQUENTIAL_THRESHOLD) {
+            return null;
+        }
+        return findDialog.getSearcher(query) instanceof HorspoolSearcher horspool ? horspool : null;
+    }
+
+    /**
+     * Searches a snapshot of the document for the previous match on the search pool, so the FX thread is free while
+     * it does, and selects it when it is found. The result is dropped if the document was edited or another match
+     * was selected in the meantime
+     */
+    private void findInBackground(HorspoolSearcher horspool, String query, ActionEvent event) {
+        ApplicationContext context = ApplicationContext.getContext();
+        // other threads may only read a snapshot, never the live document
+        DocumentSnapshot snapshot = owner.getDocument().snapshot();
+        int lastStop = findDialog.getCache().getLastStop();
+        CompletableFuture.supplyAsync(
+                () -> ParallelSearch.lastIndexOf(horspool, snapshot, lastStop, context.getSearchPool()),
+                context.getExecutor()
+        ).whenCompleteAsync((start, e) -> {
+            if (e != null) {
+                JPLogger.getErrLog().warning("Could not search for '" + query + "': " + e.getMessage());
+                return;
+            }
+            boolean stale = owner.getDocument().revision() != snapshot.revision()
+                            || findDialog.getCache().getLastStop() != lastStop;
+            if (stale) {
+                return;
+            }
+            select(start < 0 ? null : new IndexRange(start, start + horspool.length()), query, event);
+        }, Platform::runLater);
     }
 
+    /**
+     * Finds the last non-empty match of the query before the last one found, straight from the index of matches
+     * when the dialog has one. This searches on the calling thread; {@link #handle(ActionEvent)} searches for a
+     * fixed string far into a large document in parallel in the background instead
+     *
+     * @throws PatternSyntaxException if the query is meant as a regular expression and is not valid
+     */
     @Nullable
     public IndexRange getRangeOfQuery(String query) {
         if (query == null || query.isEmpty()) {
             return null;
         }
-        String text = owner.getTextArea().getText(0, findDialog.getCache().getLastStop());
-        if (findDialog.getCaseInsensitiveBox().isSelected()) {
-            text = text.toLowerCase();
-            query = query.toLowerCase();
+        MatchIndex index = findDialog.getMatchIndex(query);
+        if (index != null) {
+            int i = index.previous(findDialog.getCache().getLastStop());
+            if (i < 0) {
+                return null;
+            }
+            SearchMatch match = index.get(i);
+            return new IndexRange(match.start(), match.end());
         }
-        int start = text.lastIndexOf(query);
-        int end = start + query.length();
-        if (start < 0) {
+        TextSearcher searcher = findDialog.getSearcher(query);
+        SearchMatch match = searcher.findPrevious(owner.getDocument(), findDialog.getCache().getLastStop());
+        if (match == null) {
             return null;
         }
-        return new IndexRange(start, end);
+        return new IndexRange(match.start(), match.end());
     }
 }
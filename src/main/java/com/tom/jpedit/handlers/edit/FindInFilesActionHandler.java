@@ -0,0 +1,18 @@
+package com.tom.jpedit.handlers.edit;
+
+import com.tom.jpedit.gui.JPEditWindow;
+import com.tom.jpedit.gui.find.FindInFilesDialog;
+import com.tom.jpedit.handlers.ActionHandler;
+import javafx.event.ActionEvent;
+
+public class FindInFilesActionHandler extends ActionHandler {
+    public FindInFilesActionHandler(JPEditWindow jpEditWindow) {
+        super(jpEditWindow);
+    }
+
+    @Override
+    public void handle(ActionEvent event) {
+        FindInFilesDialog dialog = new FindInFilesDialog(owner);
+        dialog.show();
+    }
+}
@@ -0,0 +1,46 @@
+package com.tom.jpedit.handlers.edit;
+
+import com.tom.jpedit.gui.JPEditWindow;
+import com.tom.jpedit.gui.LargeFileViewport;
+import com.tom.jpedit.gui.i18n.Strings;
+import com.tom.jpedit.handlers.ActionHandler;
+import javafx.event.ActionEvent;
+import tom.javafx.JavaFXUtilsKt;
+
+import java.util.Optional;
+
+import static tom.javafx.JavaFXUtilsKt.popupAlert;
+
+public class GoToLineActionHandler extends ActionHandler {
+    public GoToLineActionHandler(JPEditWindow owner) {
+        super(owner);
+    }
+
+    @Override
+    public void handle(ActionEvent event) {
+        LargeFileViewport viewport = owner.getLargeFileViewport();
+        int lineCount = viewport != null ? viewport.getFile().lineCount() : owner.getLineIndex().lineCount();
+        Optional<String> lineIn = JavaFXUtilsKt.promptForInputOptional(
+                Strings.Content.GO_TO_LINE_TITLE.text,
+                Strings.Content.GO_TO_LINE_HEADER.text,
+                Strings.Content.GO_TO_LINE_PROMPT.text + " " + lineCount
+        );
+        if (lineIn.isEmpty()) {
+            return;
+        }
+        try {
+            int line = Integer.parseInt(lineIn.get().trim());
+            if (line < 1 || line > lineCount) {
+                throw new NumberFormatException("Invalid Range");
+            }
+            owner.goToLine(line - 1);
+        } catch (NumberFormatException e) {
+            popupAlert(
+                    Strings.Content.GO_TO_LINE_INVALID_LINE.text + " " + lineIn.get() + " "
+                    + Strings.Content.GO_TO_LINE_INVALID_RANGE.text + " " + lineCount,
+                    Strings.Content.GO_TO_LINE_INVALID_TITLE.text,
+                    true
+            );
+        }
+    }
+}
@@ -1,12 +1,27 @@
 package com.tom.jpedit.handlers.edit;
 
+import com.tom.jpedit.document.PieceTable;
 import com.tom.jpedit.gui.JPEditWindow;
 import com.tom.jpedit.gui.find.ReplaceDialog;
 import com.tom.jpedit.handlers.ActionHandler;
+import com.tom.jpedit.logging.JPLogger;
+import com.tom.jpedit.search.SearchMatch;
+import com.tom.jpedit.search.TextSearcher;
 import javafx.event.ActionEvent;
-import javafx.scene.control.IndexRange;
 import org.jetbrains.annotations.NotNull;
+import tom.javafx.JavaFXUtilsKt;
 
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Replaces every occurrence of the query in one pass. In regex mode the replacement may refer to groups of
+ * each match, such as {@code $1}.
+ * <p>
+ * The matches are found in a single scan of the document, and the text from the first match to the end of
+ * the last, with every match replaced, is built in one buffer. That span is then replaced in one edit, so
+ * Replace All is one undo step and one change to the document however many occurrences there are.
+ * Matches do not overlap and the replacement text is never searched again.
+ */
 public class ReplaceAllItemHandler extends ActionHandler {
     private final ReplaceDialog replaceDialog;
 
@@ -17,17 +32,44 @@ public class ReplaceAllItemHandler extends ActionHandler {
 
     @Override
     public void handle(ActionEvent event) {
-        // Move cursor to beginning to ensure replacement of ALL instances
-        owner.getTextArea().deselect();
-        owner.getTextArea().positionCaret(0);
+        String query = replaceDialog.getFindTextText().getText();
         replaceDialog.clearCache();
+        if (query == null || query.isEmpty()) {
+            return;
+        }
+        String replacement = replaceDialog.getReplaceTextText().getText();
+        PieceTable document = owner.getDocument();
+        TextSearcher searcher;
+        try {
+            searcher = replaceDialog.getSearcher(query);
+        } catch (PatternSyntaxException e) {
+            JavaFXUtilsKt.popupAlert("'" + query + "' is not a valid regular expression:\n" + e.getDescription(), "Invalid expression");
+            return;
+        }
 
-        // find from the beginning each instance of the query and replace it
-        FindDialogNextActionHandler delegate = new FindDialogNextActionHandler(owner, replaceDialog);
-        IndexRange nextReplacement = delegate.getRangeOfQuery(replaceDialog.getFindTextText().getText());
-        while (nextReplacement != null) {
-            owner.getTextArea().replaceText(nextReplacement, replaceDialog.getReplaceTextText().getText());
-            nextReplacement = delegate.getRangeOfQuery(replaceDialog.getFindTextText().getText());
+        SearchMatch match = searcher.findNext(document, 0);
+        if (match == null) {
+            return;
+        }
+        int first = match.start();
+        StringBuilder replaced = new StringBuilder();
+        int copied = first;
+        int count = 0;
+        try {
+            while (match != null) {
+                document.appendRange(replaced, copied, match.start());
+                replaced.append(searcher.replacementFor(document, match, replacement));
+                copied = match.end();
+                count++;
+                // after an empty match the next one starts at the next character at the earliest
+                match = searcher.findNext(document, match.isEmpty() ? match.end() + 1 : match.end());
+            }
+        } catch (IllegalArgumentException e) {
+            JavaFXUtilsKt.popupAlert("The replacement is not valid:\n" + e.getMessage(), "Invalid replacement");
+            return;
         }
+        owner.getTextArea().replaceText(first, copied, replaced.toString());
+        owner.getTextArea().positionCaret(first);
+        JPLogger.debug(JPLogger.getAppLog(), "Replaced " + count + " occurrences of '" + query + "'");
     }
 }
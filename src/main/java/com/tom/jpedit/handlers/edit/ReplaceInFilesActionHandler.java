@@ -0,0 +1,18 @@
+package com.tom.jpedit.handlers.edit;
+
+import com.tom.jpedit.gui.JPEditWindow;
+import com.tom.jpedit.gui.find.FindInFilesDialog;
+import com.tom.jpedit.handlers.ActionHandler;
+import javafx.event.ActionEvent;
+
+public class ReplaceInFilesActionHandler extends ActionHandler {
+    public ReplaceInFilesActionHandler(JPEditWindow jpEditWindow) {
+        super(jpEditWindow);
+    }
+
+    @Override
+    public void handle(ActionEvent event) {
+        FindInFilesDialog dialog = new FindInFilesDialog(owner, true);
+        dialog.show();
+    }
+}
@@ -3,9 +3,13 @@ package com.tom.jpedit.handlers.edit;
 import com.tom.jpedit.gui.JPEditWindow;
 import com.tom.jpedit.gui.find.ReplaceDialog;
 import com.tom.jpedit.handlers.ActionHandler;
+import com.tom.jpedit.search.SearchMatch;
 import javafx.event.ActionEvent;
 import javafx.scene.control.IndexRange;
 import org.jetbrains.annotations.NotNull;
+import tom.javafx.JavaFXUtilsKt;
+
+import java.util.regex.PatternSyntaxException;
 
 public class ReplaceItemHandler extends ActionHandler {
     private final ReplaceDialog replaceDialog;
@@ -18,9 +22,25 @@ public class ReplaceItemHandler extends ActionHandler {
     @Override
     public void handle(ActionEvent event) {
         IndexRange selection = owner.getTextArea().getSelection();
-        String replacement = replaceDialog.getReplaceTextText().getText();
-        if (selection != null && selection.getLength() != 0) {
-            owner.getTextArea().replaceText(selection, replacement);
+        String query = replaceDialog.getFindTextText().getText();
+        if (selection != null && selection.getLength() != 0 && !query.isEmpty()) {
+            try {
+                // in regex mode the replacement may refer to groups of the selected match
+                String replacement = replaceDialog.getSearcher(query).replacementFor(
+                        owner.getDocument(),
+                        new SearchMatch(selection.getStart(), selection.getEnd()),
+                        replaceDialog.getReplaceTextText().getText()
+                );
+                if (replacement != null) {
+                    owner.getTextArea().replaceText(selection, replacement);
+                }
+            } catch (PatternSyntaxException e) {
+                JavaFXUtilsKt.popupAlert("'" + query + "' is not a valid regular expression:\n" + e.getDescription(), "Invalid expression");
+                return;
+            } catch (IllegalArgumentException e) {
+                JavaFXUtilsKt.popupAlert("The replacement is not valid:\n" + e.getMessage(), "Invalid replacement");
+                return;
+            }
         }
         replaceDialog.getNextButton().fire();
     }
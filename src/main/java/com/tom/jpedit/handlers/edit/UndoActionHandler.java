@@ -0,0 +1,25 @@
+package com.tom.jpedit.handlers.edit;
+
+import com.tom.jpedit.gui.JPEditWindow;
+import com.tom.jpedit.handlers.ActionHandler;
+import com.tom.jpedit.logging.JPLogger;
+import javafx.event.ActionEvent;
+import tom.javafx.JavaFXUtilsKt;
+
+import java.io.IOException;
+
+public class UndoActionHandler extends ActionHandler {
+    public UndoActionHandler(JPEditWindow owner) {
+        super(owner);
+    }
+
+    @Override
+    public void handle(ActionEvent event) {
+        try {
+            owner.getUndoManager().undo();
+        } catch (IOException e) {
+            JPLogger.getErrLog().severe("Could not read back undo history: " + e.getMessage());
+            JavaFXUtilsKt.popupAlert("The undo history could not be read back and has been cleared:\n" + e.getMessage(), "Could not undo");
+        }
+    }
+}
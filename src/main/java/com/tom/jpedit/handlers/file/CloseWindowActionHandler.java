@@ -9,7 +9,7 @@ import javafx.event.ActionEvent;
 import tom.utils.annotations.Blocking;
 import tom.utils.annotations.TimeoutPolicy;
 
-import java.util.concurrent.ExecutionException;
+import java.io.IOException;
 
 public class CloseWindowActionHandler extends ActionHandler {
     public CloseWindowActionHandler(JPEditWindow owner) {
@@ -20,14 +20,16 @@ public class CloseWindowActionHandler extends ActionHandler {
     @Blocking(TimeoutPolicy.NO_TIMEOUT)
     public void handle(ActionEvent event) {
         DirtyCheckHandler handler = new DirtyCheckHandler(owner, () -> {
+            // stop auto-save first because if this is the last window, teardown shuts the autosave thread down,
+            // which lets the worker close and its files be deleted but takes nothing new
+            owner.terminateAutoSaveWorker();
+            owner.cancelLoading();
+            owner.exitLargeFileMode();
             try {
-                owner.terminateAutoSaveWorker();
-            } catch (InterruptedException e) {
-                JPLogger.getErrLog().severe("Interrupted while waiting for autosave to stop");
-            } catch (ExecutionException e) {
-                JPLogger.getErrLog().severe("Execution exception while waiting for autosave thread termination");
+                owner.getUndoManager().close();
+            } catch (IOException e) {
+                JPLogger.getErrLog().warning("Could not delete undo history of window: " + e.getMessage());
             }
-            // stop auto-save first because if this is the last window, teardown destroyes the pool
             ApplicationContext.getContext().unregisterWindow(owner);
             owner.close();
         });
@@ -1,17 +1,19 @@
 package com.tom.jpedit.handlers.file;
 
 import com.tom.jpedit.ApplicationContext;
+import com.tom.jpedit.document.MappedTextFile;
 import com.tom.jpedit.gui.JPEditWindow;
 import com.tom.jpedit.handlers.ActionHandler;
 import com.tom.jpedit.handlers.misc.DirtyCheckHandler;
 import com.tom.jpedit.logging.JPLogger;
+import com.tom.jpedit.search.FileMatch;
+import com.tom.jpedit.workers.FileLoadWorker;
+import com.tom.jpedit.workers.LargeFileOpenWorker;
 import javafx.event.ActionEvent;
 import javafx.stage.FileChooser;
-import tom.javafx.JavaFXUtilsKt;
-import tom.utils.file.FileUtilsKt;
+import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
-import java.io.IOException;
 import java.util.logging.Level;
 
 /**
@@ -41,25 +43,54 @@ public class OpenActionHandler extends ActionHandler {
         handler.handle(event);
     }
 
+    /**
+     * Opens the file in the window. Files at or over the large file threshold are memory mapped, anything
+     * smaller is read in the background by a {@link FileLoadWorker} and shows up in the window as it is read
+     *
+     * @param f the file to open
+     */
     public void openFile(File f) {
-        try {
-            String s = FileUtilsKt.getText(f);
-            owner.setSaveFile(f);
-            owner.getTextArea().setText(s);
-            owner.saveUpdated();
-            ApplicationContext.getContext().newRecentFile(f);
-            JPLogger.debug(JPLogger.getAppLog(), Level.FINE, () -> "Opened file of length " + owner.getTextArea()
-                                                                                                   .getText()
-                                                                                                   .length() + " chars.");
-        } catch (IOException e) {
-            JavaFXUtilsKt.popupAlert("The file " + f.getAbsolutePath() + " was not found!", "File Not Found!");
-            JPLogger.debug(
-                    JPLogger.getErrLog(),
-                    Level.WARNING,
-                    () -> "File to open not found: " + f.getAbsolutePath() + "\n" + JavaFXUtilsKt
-                            .stackTraceToString(e.getStackTrace())
-            );
+        if (f.length() >= ApplicationContext.getContext().getUserPreferences().getLargeFileThresholdBytes()) {
+            openLargeFile(f);
+            return;
         }
+        new FileLoadWorker(owner, f).start();
+        JPLogger.debug(JPLogger.getAppLog(), Level.FINE, () -> "Loading file of " + f.length() + " bytes in the background.");
+    }
+
+    /**
+     * Opens the file of a Find in Files match in the window and selects the match once the file is in. A file
+     * opened in large file mode cannot be selected in, so the page starting at the line of the match is shown
+     *
+     * @param match the match to open the file at
+     */
+    public void openFileAt(@NotNull FileMatch match) {
+        File f = match.file().toFile();
+        if (f.length() >= ApplicationContext.getContext().getUserPreferences().getLargeFileThresholdBytes()) {
+            LargeFileOpenWorker worker = new LargeFileOpenWorker(owner, f);
+            worker.setOnOpened(() -> owner.showLargeFileLine(match.line()));
+            worker.start();
+            return;
+        }
+        FileLoadWorker worker = new FileLoadWorker(owner, f);
+        int start = (int) match.charOffset();
+        worker.setOnLoaded(() -> {
+            // the file may have changed since it was searched
+            int length = owner.getTextArea().getLength();
+            owner.getTextArea().selectRange(Math.min(start, length), Math.min(start + match.charLength(), length));
+        });
+        worker.start();
+    }
 
+    /**
+     * Opens the file in large file mode. The file is memory mapped and never read onto the heap as a whole. Its
+     * lines are indexed in the background by a {@link LargeFileOpenWorker}, while the window shows it is loading
+     *
+     * @param f the file to open
+     * @see JPEditWindow#enterLargeFileMode(MappedTextFile)
+     */
+    public void openLargeFile(File f) {
+        new LargeFileOpenWorker(owner, f).start();
+        JPLogger.debug(JPLogger.getAppLog(), Level.FINE, () -> "Mapping large file of " + f.length() + " bytes in the background.");
     }
 }
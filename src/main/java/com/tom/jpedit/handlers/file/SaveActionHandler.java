@@ -2,7 +2,9 @@ package com.tom.jpedit.handlers.file;
 
 import com.tom.jpedit.gui.JPEditWindow;
 import com.tom.jpedit.handlers.ActionHandler;
+import com.tom.jpedit.workers.FileSaveWorker;
 import javafx.event.ActionEvent;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 
@@ -19,17 +21,25 @@ public class SaveActionHandler extends ActionHandler {
 
     @Override
     public void handle(ActionEvent event) {
+        save(event);
+    }
+
+    /**
+     * Starts saving the window to its save file, asking the user for one if it has none
+     *
+     * @return the save that was started, which runs in the background, or null if no save was started because
+     * the user chose no file or the window cannot be saved now
+     */
+    public @Nullable FileSaveWorker save(ActionEvent event) {
         SaveAsActionHandler handler = new SaveAsActionHandler(owner);
         if (owner.hasSaveFile()) {
-            System.out.println(owner.getSaveFile());
-            handler.saveAs(owner.getSaveFile());
-        } else {
-            File file = handler.getFileFromUser(event);
-            if (file == null) {
-                return;
-            }
-            handler.saveAs(file);
+            return handler.saveAs(owner.getSaveFile());
+        }
+        File file = handler.getFileFromUser(event);
+        if (file == null) {
+            return null;
         }
+        return handler.saveAs(file);
     }
 
 }
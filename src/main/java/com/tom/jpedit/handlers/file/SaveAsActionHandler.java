@@ -2,15 +2,14 @@ package com.tom.jpedit.handlers.file;
 
 import com.tom.jpedit.gui.JPEditWindow;
 import com.tom.jpedit.handlers.ActionHandler;
+import com.tom.jpedit.workers.FileSaveWorker;
 import javafx.event.ActionEvent;
 import javafx.stage.FileChooser;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import tom.javafx.JavaFXUtilsKt;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
 
 /**
  * @author Thomas Povinelli
@@ -40,16 +39,24 @@ public class SaveAsActionHandler extends ActionHandler {
         saveAs(saveFile);
     }
 
-    boolean saveAs(@NotNull File saveFile) {
-        String text = owner.getTextArea().getText();
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(saveFile))) {
-            writer.write(text);
-            owner.setSaveFile(saveFile);
-            owner.updateTitleForSave();
-            owner.saveUpdated();
-            return true;
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    /**
+     * Starts saving the window to the file. The document is snapshotted now and written in the background
+     * by a {@link FileSaveWorker}, which marks the window as saved once the file has been replaced
+     *
+     * @param saveFile the file to save to
+     * @return the save that was started, or null if the window cannot be saved now
+     */
+    @Nullable FileSaveWorker saveAs(@NotNull File saveFile) {
+        if (owner.isLargeFileMode()) {
+            JavaFXUtilsKt.popupAlert("Large files are opened read-only and cannot be saved", "NOT SAVED");
+            return null;
         }
+        if (owner.isLoading()) {
+            JavaFXUtilsKt.popupAlert("The file is still loading and cannot be saved yet", "NOT SAVED");
+            return null;
+        }
+        FileSaveWorker worker = new FileSaveWorker(owner, saveFile);
+        worker.start();
+        return worker;
     }
 }
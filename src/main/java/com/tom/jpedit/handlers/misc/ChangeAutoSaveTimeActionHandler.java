@@ -8,7 +8,6 @@ import javafx.event.ActionEvent;
 import tom.javafx.JavaFXUtilsKt;
 
 import java.util.Optional;
-import java.util.concurrent.TimeUnit;
 
 import static tom.javafx.JavaFXUtilsKt.popupAlert;
 
@@ -24,7 +23,8 @@ public class ChangeAutoSaveTimeActionHandler extends ActionHandler {
             Optional<String> timeIn = JavaFXUtilsKt.promptForInputOptional(
                     "Enter Seconds",
                     "Enter new autosave interval",
-                    "Enter the number of SECONDS to wait in between autosaves.\nThis will apply to all windows present and future"
+                    "Enter the longest number of SECONDS an edit may wait to be autosaved while you keep typing.\n"
+                            + "Windows are also autosaved whenever you pause.\nThis will apply to all windows present and future"
             );
             if (timeIn.isEmpty()) {
                 break;
@@ -35,13 +35,10 @@ public class ChangeAutoSaveTimeActionHandler extends ActionHandler {
                     throw new NumberFormatException("Invalid Range");
                 }
                 ApplicationContext.getContext().getUserPreferences().setAutosavePeriodMillis(newTime * 1000);
-                ApplicationContext.getContext()
-                                  .getWindowsUnmodifiable()
-                                  .forEach(window -> window.getAutoSaveWorker()
-                                                           .scheduleTask(newTime, TimeUnit.SECONDS));
+                ApplicationContext.getContext().getAutoSaveCoordinator().reschedule();
                 invalid = false;
                 JPLogger.getAppLog()
-                        .info("Autosave delay changed to: " + ApplicationContext.getContext()
+                        .info("Autosave maximum delay changed to: " + ApplicationContext.getContext()
                                                                                 .getUserPreferences()
                                                                                 .getAutosavePeriodMillis() + "ms");
             } catch (NumberFormatException e) {
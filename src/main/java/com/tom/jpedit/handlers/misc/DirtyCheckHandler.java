@@ -6,6 +6,7 @@ import com.tom.jpedit.gui.confirmation.ConfirmationType;
 import com.tom.jpedit.handlers.ActionHandler;
 import com.tom.jpedit.handlers.file.SaveActionHandler;
 import com.tom.jpedit.logging.JPLogger;
+import com.tom.jpedit.workers.FileSaveWorker;
 import javafx.event.ActionEvent;
 
 public class DirtyCheckHandler extends ActionHandler {
@@ -40,8 +41,18 @@ public class DirtyCheckHandler extends ActionHandler {
         }
 
         if (choice == ConfirmationType.YES) {
-            SaveActionHandler handler = new SaveActionHandler(owner);
-            handler.handle(event);
+            FileSaveWorker save = new SaveActionHandler(owner).save(event);
+            if (save == null) {
+                // nothing was saved, so going on would lose the changes
+                event.consume();
+                return;
+            }
+            // the save runs in the background, so only go on once it has succeeded. If it fails the window stays
+            // as it is, autosave included, and the failure is reported by the save. Checking again rather than
+            // going straight on catches edits made while the save was running
+            save.setOnSaved(() -> handle(event));
+            event.consume();
+            return;
         }
 
         // continue closing the window
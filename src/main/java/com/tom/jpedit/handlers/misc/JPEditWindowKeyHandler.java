@@ -48,6 +48,9 @@ public class JPEditWindowKeyHandler implements EventHandler<KeyEvent> {
                 case F:
                     jpEditWindow.fire(Action.FIND_ACTION);
                     break;
+                case G:
+                    jpEditWindow.fire(Action.GO_TO_LINE_ACTION);
+                    break;
                 case R:
                     jpEditWindow.fire(Action.REPLACE_ACTION);
                     break;
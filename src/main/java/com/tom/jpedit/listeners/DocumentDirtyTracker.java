@@ -0,0 +1,80 @@
+package com.tom.jpedit.listeners;
+
+import com.tom.jpedit.document.DocumentChangeBus;
+import com.tom.jpedit.document.DocumentChangeListener;
+import com.tom.jpedit.document.DocumentChanges;
+import com.tom.jpedit.document.DocumentSnapshot;
+import com.tom.jpedit.document.PieceTable;
+import javafx.beans.property.BooleanProperty;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Keeps a window's dirty property in step with whether its document differs from the version last saved.
+ * <p>
+ * The version saved is kept as a {@link DocumentSnapshot}, which only costs a copy of the piece list. After the
+ * changes of each pulse, as delivered by the window's {@link DocumentChangeBus}, the document is compared with it
+ * by revision, length and {@link PieceTable#contentHash()}, which takes the same time however large the document
+ * is. Only when the length and hash both match, as they do once the user has typed and then deleted back to what
+ * was saved, are the two compared with {@link PieceTable#contentEquals(DocumentSnapshot)}, which reads no more
+ * than the text edited since the save. So an edit that is undone by hand leaves the window clean again, and the
+ * document is never turned into a String.
+ */
+public class DocumentDirtyTracker implements DocumentChangeListener {
+    private final PieceTable document;
+    private final BooleanProperty dirty;
+    // null when no version of the document is known to be saved
+    private @Nullable DocumentSnapshot saved;
+
+    /**
+     * Takes the document as it is now to be saved and subscribes to its changes. Must be created on the FX thread
+     *
+     * @param bus   the change bus of the document to track
+     * @param dirty the property to set to true when the document differs from the version saved
+     */
+    public DocumentDirtyTracker(@NotNull DocumentChangeBus bus, @NotNull BooleanProperty dirty) {
+        this.document = bus.getDocument();
+        this.dirty = dirty;
+        this.saved = document.snapshot();
+        bus.subscribe(this);
+        update();
+    }
+
+    /**
+     * Records the document as it is now as the version saved, so it is clean
+     */
+    public void markSaved() {
+        markSaved(document.snapshot());
+    }
+
+    /**
+     * Records a snapshot as the version saved. The document is clean if it still has the text of the snapshot,
+     * which it may not if it was edited while the snapshot was being written
+     *
+     * @param snapshot the version of the document that was saved
+     */
+    public void markSaved(@NotNull DocumentSnapshot snapshot) {
+        saved = snapshot;
+        update();
+    }
+
+    /**
+     * Forgets the version saved, so the document is dirty until it is next saved, whatever it is changed to
+     */
+    public void markUnsaved() {
+        saved = null;
+        update();
+    }
+
+    @Override
+    public void documentChanged(@NotNull DocumentChanges changes) {
+        update();
+    }
+
+    private void update() {
+        DocumentSnapshot version = saved;
+        boolean clean = version != null
+                        && (version.revision() == document.revision() || document.contentEquals(version));
+        dirty.set(!clean);
+    }
+}
@@ -0,0 +1,44 @@
+package com.tom.jpedit.listeners;
+
+import com.tom.jpedit.document.DocumentChangeBus;
+import com.tom.jpedit.document.DocumentChangeListener;
+import com.tom.jpedit.document.DocumentChanges;
+import com.tom.jpedit.document.DocumentSnapshot;
+import com.tom.jpedit.document.PieceTable;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Publishes an immutable {@link DocumentSnapshot} of a window's document for background threads.
+ * <p>
+ * The document itself may only be touched on the JavaFX Application Thread. This subscribes to its
+ * {@link DocumentChangeBus} and, after the edits of each pulse, takes a new snapshot on the FX thread and
+ * publishes it through a volatile field. Snapshots are cheap (a copy of the piece list) and the bus delivers
+ * once a pulse, so a burst of edits in one pulse publishes only one. Background workers read {@link #getSnapshot()} and never the document or the control.
+ */
+public class DocumentSnapshotPublisher implements DocumentChangeListener {
+    private final PieceTable document;
+    private volatile DocumentSnapshot snapshot;
+
+    /**
+     * Publishes the document's current content and subscribes to its changes. Must be created on the FX thread
+     *
+     * @param bus the change bus of the document to publish snapshots of
+     */
+    public DocumentSnapshotPublisher(@NotNull DocumentChangeBus bus) {
+        this.document = bus.getDocument();
+        this.snapshot = document.snapshot();
+        bus.subscribe(this);
+    }
+
+    /**
+     * @return the most recently published snapshot. It may lag the document by the edits of the current pulse
+     */
+    public @NotNull DocumentSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public void documentChanged(@NotNull DocumentChanges changes) {
+        snapshot = document.snapshot();
+    }
+}
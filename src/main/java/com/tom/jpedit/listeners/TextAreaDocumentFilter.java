@@ -0,0 +1,137 @@
+package com.tom.jpedit.listeners;
+
+import com.tom.jpedit.document.PieceTable;
+import com.tom.jpedit.logging.JPLogger;
+import javafx.beans.InvalidationListener;
+import javafx.beans.Observable;
+import javafx.scene.control.TextArea;
+import javafx.scene.control.TextFormatter;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * Keeps the {@link PieceTable} of a window in step with its {@link TextArea}.
+ * <p>
+ * Installed as the filter of the TextArea's {@link TextFormatter}, every change made through the
+ * control (typing, paste, {@code replaceText}, {@code setText}...) is applied to the document as a
+ * delta: the range that was replaced and the text that replaced it. No copy of the whole text is
+ * ever made. Replacing the entire text (as {@code setText} does) starts the document over with the
+ * new text as its original buffer.
+ * <p>
+ * JavaFX applies undo and redo directly to the control content, bypassing the formatter. This is
+ * also registered as an {@link InvalidationListener} on the text property, and any change that did
+ * not come through the filter causes the document to be rebuilt from the control.
+ */
+public class TextAreaDocumentFilter implements UnaryOperator<TextFormatter.Change>, InvalidationListener {
+    private final TextArea textArea;
+    private final PieceTable document;
+    private boolean expectingChange = false;
+    private boolean appendingLoadedText = false;
+
+    public TextAreaDocumentFilter(@NotNull TextArea textArea, @NotNull PieceTable document) {
+        this.textArea = textArea;
+        this.document = document;
+    }
+
+    /**
+     * Installs the filter on the text area. The text area must not have another TextFormatter
+     */
+    public void install() {
+        textArea.setTextFormatter(new TextFormatter<>(this));
+        textArea.textProperty().addListener(this);
+    }
+
+    /**
+     * Appends a chunk of a file being loaded to the end of the TextArea and to the original buffer of
+     * the document, rather than to the document's add buffer like an ordinary edit. If the document has
+     * been edited in the meantime the text is appended like any other edit instead
+     *
+     * @param text the next chunk of the file
+     * @see PieceTable#appendOriginal(CharSequence)
+     */
+    public void appendLoadedText(@NotNull String text) {
+        if (!document.isUnedited()) {
+            textArea.appendText(text);
+            return;
+        }
+        String filtered = filterInput(text);
+        document.appendOriginal(filtered);
+        appendingLoadedText = true;
+        try {
+            textArea.appendText(filtered);
+        } finally {
+            appendingLoadedText = false;
+        }
+    }
+
+    @Override
+    public TextFormatter.Change apply(@NotNull TextFormatter.Change change) {
+        if (!change.isContentChange()) {
+            return change;
+        }
+        if (appendingLoadedText) {
+            expectingChange = true;
+            return change;
+        }
+        int start = change.getRangeStart();
+        int end = change.getRangeEnd();
+        String inserted = filterInput(change.getText());
+        if (start == end && inserted.isEmpty()) {
+            return change;
+        }
+        if (start == 0 && end == document.length()) {
+            document.reset(inserted);
+        } else {
+            document.replace(start, end - start, inserted);
+        }
+        expectingChange = true;
+        return change;
+    }
+
+    @Override
+    public void invalidated(Observable observable) {
+        if (expectingChange) {
+            expectingChange = false;
+            return;
+        }
+        // undo/redo or some other change the filter never saw
+        JPLogger.debug(JPLogger.getAppLog(), "Text changed outside of the document filter. Resynchronizing document");
+        document.reset(textArea.getText());
+    }
+
+    /**
+     * The TextArea drops control characters other than newline and tab from anything inserted into it
+     * (most notably the {@code \r} of {@code \r\n} line endings). The same has to be done here or the
+     * offsets of the document and the control would drift apart.
+     *
+     * @param text text being inserted into the TextArea
+     * @return the text as the TextArea will actually store it
+     */
+    public static @NotNull String filterInput(@NotNull String text) {
+        int i = 0;
+        int n = text.length();
+        while (i < n && !isDropped(text.charAt(i))) {
+            i++;
+        }
+        if (i == n) {
+            return text;
+        }
+        StringBuilder sb = new StringBuilder(n);
+        sb.append(text, 0, i);
+        for (; i < n; i++) {
+            char c = text.charAt(i);
+            if (!isDropped(c)) {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return true if the TextArea drops the character from text inserted into it, see {@link #filterInput(String)}
+     */
+    public static boolean isDropped(char c) {
+        return c == 0x7F || (c < 0x20 && c != '\n' && c != '\t');
+    }
+}
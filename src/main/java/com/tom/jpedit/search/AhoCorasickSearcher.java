@@ -0,0 +1,250 @@
+package com.tom.jpedit.search;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Finds any of several fixed strings in a {@link CharSequence} in a single pass with an Aho-Corasick automaton.
+ * <p>
+ * The query is a list of terms separated by whitespace, such as a handful of identifiers or error codes. The
+ * automaton is built once from all of them, and then each character of the text is read once however many
+ * terms there are, so searching for k terms costs one scan rather than k. Like {@link HorspoolSearcher} the text
+ * is read in place through {@link CharSequence#charAt(int)} and case insensitive searches fold each character
+ * as it is read.
+ * <p>
+ * Matches do not overlap: the match found is the one that starts first and, of the terms that start there,
+ * the longest, and the next match is looked for after its end. Every match says which of the terms it is, see
+ * {@link SearchMatch#term()}.
+ * <p>
+ * The transitions of the start state, where the automaton spends most of its time in ordinary text, are a
+ * table indexed by character. Every other state keeps its transitions as a sorted array of characters.
+ * <p>
+ * Searchers are immutable and may be shared between threads.
+ */
+public final class AhoCorasickSearcher implements TextSearcher {
+    private static final int ROOT = 0;
+
+    private final String query;
+    private final boolean ignoreCase;
+    private final List<String> terms;
+    private final int[] termLengths;
+    // the start state's transitions for every char, ROOT where there is none
+    private final int[] rootNext = new int[Character.MAX_VALUE + 1];
+    // the transitions of state s are on keys[s][i] to targets[s][i], with keys sorted
+    private final char[][] keys;
+    private final int[][] targets;
+    private final int[] fail;
+    private final int[] depth;
+    // the longest term that the text read so far ends with in state s, or -1 if it ends with none
+    private final int[] output;
+
+    /**
+     * @param query      the terms to look for, separated by whitespace. Repeated terms are only searched once,
+     *                   and a query with no terms at all matches nothing
+     * @param ignoreCase true to match characters regardless of case
+     */
+    public AhoCorasickSearcher(@NotNull String query, boolean ignoreCase) {
+        this.query = query;
+        this.ignoreCase = ignoreCase;
+        this.terms = splitTerms(query);
+        this.termLengths = new int[terms.size()];
+
+        List<StringBuilder> stateKeys = new ArrayList<>();
+        List<List<Integer>> stateTargets = new ArrayList<>();
+        List<Integer> depths = new ArrayList<>();
+        List<Integer> terminal = new ArrayList<>();
+        stateKeys.add(new StringBuilder());
+        stateTargets.add(new ArrayList<>());
+        depths.add(0);
+        terminal.add(-1);
+        for (int t = 0; t < terms.size(); t++) {
+            String term = terms.get(t);
+            termLengths[t] = term.length();
+            int state = ROOT;
+            for (int i = 0; i < term.length(); i++) {
+                char c = fold(term.charAt(i));
+                int at = stateKeys.get(state).indexOf(String.valueOf(c));
+                if (at >= 0) {
+                    state = stateTargets.get(state).get(at);
+                    continue;
+                }
+                int next = stateKeys.size();
+                stateKeys.get(state).append(c);
+                stateTargets.get(state).add(next);
+                stateKeys.add(new StringBuilder());
+                stateTargets.add(new ArrayList<>());
+                depths.add(i + 1);
+                terminal.add(-1);
+                state = next;
+            }
+            // terms that fold to the same text were made distinct by splitTerms, so this is never overwritten
+            terminal.set(state, t);
+        }
+
+        int states = stateKeys.size();
+        keys = new char[states][];
+        targets = new int[states][];
+        depth = new int[states];
+        for (int s = 0; s < states; s++) {
+            sortTransitions(s, stateKeys.get(s), stateTargets.get(s));
+            depth[s] = depths.get(s);
+        }
+        for (int i = 0; i < keys[ROOT].length; i++) {
+            rootNext[keys[ROOT][i]] = targets[ROOT][i];
+        }
+
+        // breadth first, so the failure of every shallower state is known before it is needed
+        fail = new int[states];
+        output = new int[states];
+        output[ROOT] = -1;
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        for (int child : targets[ROOT]) {
+            fail[child] = ROOT;
+            output[child] = terminal.get(child);
+            queue[tail++] = child;
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            for (int i = 0; i < keys[state].length; i++) {
+                int child = targets[state][i];
+                fail[child] = step(fail[state], keys[state][i]);
+                // a term ending here is longer than any term that a proper suffix ends with
+                output[child] = terminal.get(child) >= 0 ? terminal.get(child) : output[fail[child]];
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    private void sortTransitions(int state, StringBuilder stateKeys, List<Integer> stateTargets) {
+        int n = stateKeys.length();
+        long[] packed = new long[n];
+        for (int i = 0; i < n; i++) {
+            packed[i] = ((long) stateKeys.charAt(i) << 32) | stateTargets.get(i);
+        }
+        Arrays.sort(packed);
+        keys[state] = new char[n];
+        targets[state] = new int[n];
+        for (int i = 0; i < n; i++) {
+            keys[state][i] = (char) (packed[i] >>> 32);
+            targets[state][i] = (int) packed[i];
+        }
+    }
+
+    private List<String> splitTerms(String query) {
+        Set<String> folded = new LinkedHashSet<>();
+        List<String> distinct = new ArrayList<>();
+        for (String term : query.trim().split("\\s+")) {
+            if (!term.isEmpty() && folded.add(foldAll(term))) {
+                distinct.add(term);
+            }
+        }
+        return List.copyOf(distinct);
+    }
+
+    /**
+     * @return the terms searched for, in the order they were first given. {@link SearchMatch#term()} is an
+     * index into this list
+     */
+    public @NotNull List<String> getTerms() {
+        return terms;
+    }
+
+    public boolean isIgnoreCase() {
+        return ignoreCase;
+    }
+
+    @Override
+    public boolean isFor(@NotNull String query, boolean ignoreCase, @NotNull SearchMode mode) {
+        return mode == SearchMode.ANY_TERM && this.ignoreCase == ignoreCase && this.query.equals(query);
+    }
+
+    private int step(int state, char c) {
+        while (state != ROOT) {
+            char[] k = keys[state];
+            int i = k.length == 1 ? (k[0] == c ? 0 : -1) : Arrays.binarySearch(k, c);
+            if (i >= 0) {
+                return targets[state][i];
+            }
+            state = fail[state];
+        }
+        return rootNext[c];
+    }
+
+    @Override
+    public @Nullable SearchMatch findNext(@NotNull CharSequence text, int fromIndex) {
+        int n = text.length();
+        int state = ROOT;
+        int bestStart = -1;
+        int bestTerm = -1;
+        for (int i = Math.max(fromIndex, 0); i < n; i++) {
+            // whatever is matched from here on starts no earlier than the text the state stands for
+            if (bestTerm >= 0 && i - depth[state] > bestStart) {
+                break;
+            }
+            state = step(state, fold(text.charAt(i)));
+            int term = output[state];
+            if (term >= 0) {
+                int start = i + 1 - termLengths[term];
+                // a term found later that starts at the same place is longer
+                if (bestTerm < 0 || start <= bestStart) {
+                    bestStart = start;
+                    bestTerm = term;
+                }
+            }
+        }
+        return bestTerm < 0 ? null : new SearchMatch(bestStart, bestStart + termLengths[bestTerm], bestTerm);
+    }
+
+    /**
+     * Which terms match depends on where the last match ended, so this finds every match before
+     * {@code endIndex} and keeps the last one, like a regular expression has to
+     */
+    @Override
+    public @Nullable SearchMatch findPrevious(@NotNull CharSequence text, int endIndex) {
+        SearchMatch last = null;
+        SearchMatch match = findNext(text, 0);
+        while (match != null && match.end() <= endIndex) {
+            last = match;
+            match = findNext(text, match.end());
+        }
+        return last;
+    }
+
+    @Override
+    public int maxMatchLength() {
+        int longest = 0;
+        for (int length : termLengths) {
+            longest = Math.max(longest, length);
+        }
+        return longest;
+    }
+
+    /**
+     * @return the replacement as it is, since every term is replaced with the same text
+     */
+    @Override
+    public @NotNull String replacementFor(@NotNull CharSequence text, @NotNull SearchMatch match, @NotNull String replacement) {
+        return replacement;
+    }
+
+    private String foldAll(String term) {
+        StringBuilder sb = new StringBuilder(term.length());
+        for (int i = 0; i < term.length(); i++) {
+            sb.append(fold(term.charAt(i)));
+        }
+        return sb.toString();
+    }
+
+    // folded like HorspoolSearcher, so a term matches exactly where it would on its own
+    private char fold(char c) {
+        return ignoreCase ? Character.toLowerCase(Character.toUpperCase(c)) : c;
+    }
+}
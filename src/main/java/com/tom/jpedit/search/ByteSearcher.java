@@ -0,0 +1,176 @@
+package com.tom.jpedit.search;
+
+import com.tom.jpedit.logging.JPLogger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Finds a fixed string in the raw UTF-8 bytes of a file, such as a memory mapped {@link MemorySegment}, with the
+ * Boyer-Moore-Horspool algorithm, so a file can be searched without decoding it or copying it onto the heap.
+ * <p>
+ * The query is encoded as UTF-8 once and compared byte for byte. Ignoring case only folds the ASCII letters,
+ * since any other letter may change its encoded length when its case changes; other characters must match
+ * exactly. Bytes of a multi-byte character never look like ASCII in UTF-8, so folding cannot make a match
+ * start part way through a character.
+ * <p>
+ * When JPEdit is built with the {@code vector} profile, the JVM is started with
+ * {@code --add-modules jdk.incubator.vector} and the platform has SIMD registers, longer ranges are searched with
+ * {@code VectorByteKernel}, which tests a whole vector of offsets for the first and last bytes of the pattern at
+ * once. The kernel is looked up by name, since it is only compiled by that profile. Otherwise, and for the few
+ * bytes left at the end of a range, the search falls back to Horspool, which finds the same matches.
+ * <p>
+ * Searchers are immutable and may be shared between threads.
+ */
+public final class ByteSearcher {
+    /**
+     * Ranges shorter than this are searched without vectors, which would barely be filled
+     */
+    private static final int VECTOR_MIN_BYTES = 256;
+    private static final String VECTOR_KERNEL = "com.tom.jpedit.search.VectorByteKernel";
+    // VectorByteKernel.indexOf, or null if the search cannot use vectors
+    private static final MethodHandle VECTOR_INDEX_OF = findVectorKernel();
+    private static final boolean VECTORIZED = VECTOR_INDEX_OF != null;
+
+    private final byte[] pattern;
+    private final boolean ignoreCase;
+    private final int[] skip = new int[256];
+
+    /**
+     * @param query      the text to look for, which must not be empty
+     * @param ignoreCase true to match ASCII letters regardless of case
+     */
+    public ByteSearcher(@NotNull String query, boolean ignoreCase) {
+        if (query.isEmpty()) {
+            throw new IllegalArgumentException("Cannot search for the empty string");
+        }
+        this.ignoreCase = ignoreCase;
+        this.pattern = query.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < pattern.length; i++) {
+            pattern[i] = fold(pattern[i]);
+        }
+        int m = pattern.length;
+        Arrays.fill(skip, m);
+        for (int j = 0; j < m - 1; j++) {
+            skip[pattern[j] & 0xFF] = m - 1 - j;
+            if (ignoreCase && pattern[j] >= 'a' && pattern[j] <= 'z') {
+                skip[pattern[j] - 'a' + 'A'] = m - 1 - j;
+            }
+        }
+    }
+
+    /**
+     * @return the number of bytes a match covers
+     */
+    public int length() {
+        return pattern.length;
+    }
+
+    public boolean isIgnoreCase() {
+        return ignoreCase;
+    }
+
+    /**
+     * Finds the first match that starts at or after {@code fromIndex} and ends at or before {@code toIndex}
+     *
+     * @param bytes     the bytes to search
+     * @param fromIndex the first offset at which a match may start
+     * @param toIndex   the offset the match must end at or before
+     * @return the offset of the match or -1 if there is none
+     */
+    public long indexOf(@NotNull MemorySegment bytes, long fromIndex, long toIndex) {
+        if (VECTORIZED && toIndex - fromIndex >= VECTOR_MIN_BYTES) {
+            try {
+                return (long) VECTOR_INDEX_OF.invokeExact(this, bytes, fromIndex, toIndex);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return scalarIndexOf(bytes, fromIndex, toIndex);
+    }
+
+    private static @Nullable MethodHandle findVectorKernel() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return null;
+        }
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            Class<?> kernel = lookup.findClass(VECTOR_KERNEL);
+            if (!(boolean) lookup.findStatic(kernel, "isUsable", MethodType.methodType(boolean.class)).invoke()) {
+                return null;
+            }
+            return lookup.findStatic(kernel, "indexOf", MethodType.methodType(
+                    long.class, ByteSearcher.class, MemorySegment.class, long.class, long.class
+            ));
+        } catch (ClassNotFoundException e) {
+            // built without the vector profile
+            return null;
+        } catch (Throwable e) {
+            JPLogger.getErrLog().warning("Could not use the Vector API to search bytes: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the search uses SIMD instructions on this JVM
+     */
+    public static boolean isVectorized() {
+        return VECTORIZED;
+    }
+
+    /**
+     * {@link #indexOf(MemorySegment, long, long)} with Horspool, one byte at a time
+     */
+    long scalarIndexOf(MemorySegment bytes, long fromIndex, long toIndex) {
+        int last = pattern.length - 1;
+        long end = Math.min(toIndex, bytes.byteSize()) - pattern.length;
+        for (long i = Math.max(fromIndex, 0); i <= end; ) {
+            byte b = bytes.get(ValueLayout.JAVA_BYTE, i + last);
+            if (fold(b) == pattern[last] && matchesAt(bytes, i, last)) {
+                return i;
+            }
+            i += skip[b & 0xFF];
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if the first {@code to} bytes of the pattern match the bytes at the offset
+     */
+    boolean matchesAt(MemorySegment bytes, long offset, int to) {
+        for (int j = 0; j < to; j++) {
+            if (fold(bytes.get(ValueLayout.JAVA_BYTE, offset + j)) != pattern[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte fold(byte b) {
+        return ignoreCase && b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    /**
+     * @return the folded pattern, which must not be modified
+     */
+    byte[] pattern() {
+        return pattern;
+    }
+
+    /**
+     * @return the bits to or a byte of the text with before comparing it with the byte of the pattern, which lower
+     * case an ASCII letter when ignoring case
+     */
+    byte foldBits(byte patternByte) {
+        return ignoreCase && patternByte >= 'a' && patternByte <= 'z' ? (byte) 0x20 : 0;
+    }
+}
@@ -0,0 +1,54 @@
+package com.tom.jpedit.search;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A view of a text that stops whoever is reading it once a search has been cancelled.
+ * <p>
+ * Neither {@link java.util.regex.Matcher} nor a plain scan has a way to be stopped part way, but both read the
+ * text one character at a time. Every so many reads this view asks whether the search is still wanted and
+ * throws a {@link CancellationException} if it is not, so even a regular expression stuck in a large document
+ * gives up promptly. The check is cheap enough to leave on for every background search.
+ */
+public final class CancellableText implements CharSequence {
+    private static final int CHECK_MASK = 0xFFFF;
+
+    private final CharSequence text;
+    private final BooleanSupplier cancelled;
+    private int reads;
+
+    /**
+     * @param text      the text to read
+     * @param cancelled true once the search should stop
+     */
+    public CancellableText(@NotNull CharSequence text, @NotNull BooleanSupplier cancelled) {
+        this.text = text;
+        this.cancelled = cancelled;
+    }
+
+    @Override
+    public int length() {
+        return text.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        if ((++reads & CHECK_MASK) == 0 && cancelled.getAsBoolean()) {
+            throw new CancellationException("Search cancelled");
+        }
+        return text.charAt(index);
+    }
+
+    @Override
+    public @NotNull CharSequence subSequence(int start, int end) {
+        return text.subSequence(start, end);
+    }
+
+    @Override
+    public @NotNull String toString() {
+        return text.toString();
+    }
+}
@@ -0,0 +1,23 @@
+package com.tom.jpedit.search;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.file.Path;
+
+/**
+ * A match found by Find in Files
+ *
+ * @param file       the file the match is in
+ * @param line       the line of the file the match starts on, counting from 0
+ * @param charOffset where the match starts in the text of the file once it is decoded and shown in a TextArea,
+ *                   which drops the {@code \r} of {@code \r\n} line endings
+ * @param charLength the number of characters the match covers in the TextArea
+ * @param preview    the line the match is on, possibly shortened
+ */
+public record FileMatch(@NotNull Path file, int line, long charOffset, int charLength, @NotNull String preview) {
+
+    @Override
+    public @NotNull String toString() {
+        return file.getFileName() + ":" + (line + 1) + ": " + preview;
+    }
+}
@@ -0,0 +1,180 @@
+package com.tom.jpedit.search;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Finds a fixed string in any {@link CharSequence} with the Boyer-Moore-Horspool algorithm.
+ * <p>
+ * The text is only read through {@link CharSequence#charAt(int)}, so a document can be searched in place
+ * without copying it, and case insensitive searches fold each character as it is compared instead of
+ * lower casing the whole text first. Once built, a searcher allocates nothing while searching, so it is worth
+ * keeping one for as long as the query does not change.
+ * <p>
+ * The skip tables are indexed by the low byte of each character. Characters that share a low byte share an
+ * entry holding the smallest of their skips, which keeps the tables small at the cost of a shorter skip for
+ * text that mixes many scripts.
+ * <p>
+ * Searchers are immutable and may be shared between threads.
+ */
+public final class HorspoolSearcher implements TextSearcher {
+    private static final int TABLE_SIZE = 256;
+    private static final int TABLE_MASK = TABLE_SIZE - 1;
+
+    private final String query;
+    private final char[] pattern;
+    private final boolean ignoreCase;
+    // how far a window may move forward given the character under its last position
+    private final int[] forwardSkip = new int[TABLE_SIZE];
+    // how far a window may move backward given the character under its first position
+    private final int[] backwardSkip = new int[TABLE_SIZE];
+
+    /**
+     * @param query      the text to look for, which must not be empty
+     * @param ignoreCase true to match characters regardless of case
+     */
+    public HorspoolSearcher(@NotNull String query, boolean ignoreCase) {
+        if (query.isEmpty()) {
+            throw new IllegalArgumentException("Cannot search for the empty string");
+        }
+        this.query = query;
+        this.ignoreCase = ignoreCase;
+        this.pattern = new char[query.length()];
+        for (int i = 0; i < pattern.length; i++) {
+            pattern[i] = fold(query.charAt(i));
+        }
+        int m = pattern.length;
+        Arrays.fill(forwardSkip, m);
+        Arrays.fill(backwardSkip, m);
+        for (int j = 0; j < m - 1; j++) {
+            forwardSkip[pattern[j] & TABLE_MASK] = m - 1 - j;
+        }
+        for (int j = m - 1; j > 0; j--) {
+            backwardSkip[pattern[j] & TABLE_MASK] = j;
+        }
+    }
+
+    public @NotNull String getQuery() {
+        return query;
+    }
+
+    public boolean isIgnoreCase() {
+        return ignoreCase;
+    }
+
+    /**
+     * @return the number of characters a match covers
+     */
+    public int length() {
+        return pattern.length;
+    }
+
+    @Override
+    public int maxMatchLength() {
+        return pattern.length;
+    }
+
+    @Override
+    public boolean isFor(@NotNull String query, boolean ignoreCase, @NotNull SearchMode mode) {
+        return mode == SearchMode.TEXT && this.ignoreCase == ignoreCase && this.query.equals(query);
+    }
+
+    @Override
+    public @Nullable SearchMatch findNext(@NotNull CharSequence text, int fromIndex) {
+        int start = indexOf(text, fromIndex);
+        return start < 0 ? null : new SearchMatch(start, start + pattern.length);
+    }
+
+    @Override
+    public @Nullable SearchMatch findPrevious(@NotNull CharSequence text, int endIndex) {
+        int start = lastIndexOf(text, endIndex);
+        return start < 0 ? null : new SearchMatch(start, start + pattern.length);
+    }
+
+    /**
+     * @return the replacement as it is, since a fixed string has no groups to refer to
+     */
+    @Override
+    public @NotNull String replacementFor(@NotNull CharSequence text, @NotNull SearchMatch match, @NotNull String replacement) {
+        return replacement;
+    }
+
+    /**
+     * Finds the first match that starts at or after {@code fromIndex}
+     *
+     * @param text      the text to search
+     * @param fromIndex the first offset at which a match may start
+     * @return the offset of the match or -1 if there is none
+     */
+    public int indexOf(@NotNull CharSequence text, int fromIndex) {
+        return indexOf(text, fromIndex, text.length());
+    }
+
+    /**
+     * Finds the first match that starts at or after {@code fromIndex} and ends at or before {@code toIndex}
+     *
+     * @param text      the text to search
+     * @param fromIndex the first offset at which a match may start
+     * @param toIndex   the offset the match must end at or before
+     * @return the offset of the match or -1 if there is none
+     */
+    public int indexOf(@NotNull CharSequence text, int fromIndex, int toIndex) {
+        int last = pattern.length - 1;
+        int end = Math.min(toIndex, text.length()) - pattern.length;
+        for (int i = Math.max(fromIndex, 0); i <= end; ) {
+            char c = fold(text.charAt(i + last));
+            if (c == pattern[last] && matchesAt(text, i, 0, last)) {
+                return i;
+            }
+            i += forwardSkip[c & TABLE_MASK];
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the last match that ends at or before {@code endIndex}
+     *
+     * @param text     the text to search
+     * @param endIndex the offset the match must end at or before
+     * @return the offset of the match or -1 if there is none
+     */
+    public int lastIndexOf(@NotNull CharSequence text, int endIndex) {
+        return lastIndexOf(text, 0, endIndex);
+    }
+
+    /**
+     * Finds the last match that starts at or after {@code fromIndex} and ends at or before {@code endIndex}
+     *
+     * @param text      the text to search
+     * @param fromIndex the first offset at which a match may start
+     * @param endIndex  the offset the match must end at or before
+     * @return the offset of the match or -1 if there is none
+     */
+    public int lastIndexOf(@NotNull CharSequence text, int fromIndex, int endIndex) {
+        int first = Math.max(fromIndex, 0);
+        for (int i = Math.min(endIndex, text.length()) - pattern.length; i >= first; ) {
+            char c = fold(text.charAt(i));
+            if (c == pattern[0] && matchesAt(text, i, 1, pattern.length)) {
+                return i;
+            }
+            i -= backwardSkip[c & TABLE_MASK];
+        }
+        return -1;
+    }
+
+    private boolean matchesAt(CharSequence text, int offset, int from, int to) {
+        for (int j = from; j < to; j++) {
+            if (fold(text.charAt(offset + j)) != pattern[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // the same folding as String.equalsIgnoreCase, one char at a time
+    private char fold(char c) {
+        return ignoreCase ? Character.toLowerCase(Character.toUpperCase(c)) : c;
+    }
+}
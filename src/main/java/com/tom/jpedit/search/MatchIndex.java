@@ -0,0 +1,287 @@
+package com.tom.jpedit.search;
+
+import com.tom.jpedit.document.DocumentEdit;
+import com.tom.jpedit.document.DocumentListener;
+import com.tom.jpedit.document.PieceTable;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Every match of one query in a document, kept as sorted arrays of offsets so that the number of matches, the
+ * position of a match among them and the next or previous match are all found without searching.
+ * <p>
+ * The index is built in the background with a {@link Builder} from a snapshot and then kept up to date on the FX
+ * thread as the document is edited. For a fixed string a match only depends on the characters it covers, so an
+ * edit only re-scans the few characters either side of it and shifts the offsets after it. The index of a fixed
+ * string holds every occurrence, including ones that overlap. The matches of a regular expression or of a list
+ * of terms have no fixed length and each one depends on where the one before it ended, so an edit instead marks
+ * the index stale and it has to be built again. The index of a list of terms also records which term each
+ * match is, so the matches can be counted per term.
+ * <p>
+ * A MatchIndex must only be used on the JavaFX Application Thread once built.
+ */
+public final class MatchIndex implements DocumentListener {
+    private static final int[] NO_MATCHES = new int[0];
+
+    private final PieceTable document;
+    private final TextSearcher searcher;
+    // null when the searcher is not a fixed string, then every match has its own end
+    private final HorspoolSearcher literal;
+    private int[] starts;
+    private int[] ends;
+    // which term each match is, only for an AhoCorasickSearcher
+    private final int[] terms;
+    private int size;
+    private boolean stale = false;
+    private final Runnable onChange;
+
+    private MatchIndex(
+            PieceTable document,
+            TextSearcher searcher,
+            int[] starts,
+            int[] ends,
+            int[] terms,
+            int size,
+            Runnable onChange
+    ) {
+        this.document = document;
+        this.searcher = searcher;
+        this.literal = searcher instanceof HorspoolSearcher horspool ? horspool : null;
+        this.starts = starts;
+        this.ends = ends;
+        this.terms = terms;
+        this.size = size;
+        this.onChange = onChange;
+    }
+
+    /**
+     * Collects the matches of a search in order, on any thread
+     */
+    public static final class Builder {
+        private final TextSearcher searcher;
+        private int[] starts = new int[16];
+        private int[] ends;
+        private int[] terms;
+        private int size;
+
+        /**
+         * @param searcher the searcher the matches are found with. Its matches must be added in order
+         */
+        public Builder(@NotNull TextSearcher searcher) {
+            this.searcher = searcher;
+            this.ends = searcher instanceof HorspoolSearcher ? null : new int[16];
+            this.terms = searcher instanceof AhoCorasickSearcher ? new int[16] : null;
+        }
+
+        /**
+         * Adds the starts of matches of a fixed string that were found all at once, after any added so far
+         *
+         * @param matchStarts where each match starts, in order
+         */
+        public void addStarts(@NotNull int[] matchStarts) {
+            if (ends != null) {
+                throw new IllegalStateException("Only the matches of a fixed string are known by their starts alone");
+            }
+            if (size + matchStarts.length > starts.length) {
+                starts = Arrays.copyOf(starts, Math.max(size + matchStarts.length, starts.length * 2));
+            }
+            System.arraycopy(matchStarts, 0, starts, size, matchStarts.length);
+            size += matchStarts.length;
+        }
+
+        public void add(@NotNull SearchMatch match) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                if (ends != null) {
+                    ends = Arrays.copyOf(ends, size * 2);
+                }
+                if (terms != null) {
+                    terms = Arrays.copyOf(terms, size * 2);
+                }
+            }
+            starts[size] = match.start();
+            if (ends != null) {
+                ends[size] = match.end();
+            }
+            if (terms != null) {
+                terms[size] = match.term();
+            }
+            size++;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Makes the index and starts keeping it up to date. Must be called on the FX thread, and only if the
+         * document has not changed since the text the matches were found in was taken from it
+         *
+         * @param document the document that was searched
+         * @param onChange called on the FX thread after every edit the index has followed or become stale for
+         * @return the index
+         */
+        public @NotNull MatchIndex build(@NotNull PieceTable document, @NotNull Runnable onChange) {
+            MatchIndex index = new MatchIndex(document, searcher, starts, ends, terms, size, onChange);
+            document.addListener(index);
+            return index;
+        }
+    }
+
+    /**
+     * @return true if this index was built for the query with the same options
+     */
+    public boolean isFor(@NotNull String query, boolean ignoreCase, @NotNull SearchMode mode) {
+        return searcher.isFor(query, ignoreCase, mode);
+    }
+
+    /**
+     * @return true if the document was changed in a way the index could not follow, so it must be built again
+     */
+    public boolean isStale() {
+        return stale;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public @NotNull SearchMatch get(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("match " + i + " out of bounds for " + size + " matches");
+        }
+        return new SearchMatch(starts[i], end(i), terms != null ? terms[i] : SearchMatch.NO_TERM);
+    }
+
+    /**
+     * @return the terms of the query if it is a list of terms, which {@link SearchMatch#term()} indexes,
+     * or null if it is not
+     */
+    public @Nullable List<String> getTerms() {
+        return searcher instanceof AhoCorasickSearcher terms ? terms.getTerms() : null;
+    }
+
+    /**
+     * @return how many matches there are of each of {@link #getTerms()}, or null if the query is not a list of terms
+     */
+    public @Nullable int[] countPerTerm() {
+        List<String> names = getTerms();
+        if (names == null) {
+            return null;
+        }
+        int[] counts = new int[names.size()];
+        for (int i = 0; i < size; i++) {
+            counts[terms[i]]++;
+        }
+        return counts;
+    }
+
+    private int end(int i) {
+        return literal != null ? starts[i] + literal.length() : ends[i];
+    }
+
+    /**
+     * @return the position among the matches of the match covering exactly {@code [start, end)}, or -1
+     */
+    public int indexOf(int start, int end) {
+        int i = Arrays.binarySearch(starts, 0, size, start);
+        return i >= 0 && end(i) == end ? i : -1;
+    }
+
+    /**
+     * @return the position of the first match that starts at or after {@code fromIndex}, or -1 if there is none
+     */
+    public int next(int fromIndex) {
+        int i = firstAtLeast(fromIndex);
+        return i < size ? i : -1;
+    }
+
+    /**
+     * @return the position of the last match that ends at or before {@code endIndex}, or -1 if there is none
+     */
+    public int previous(int endIndex) {
+        // ends are sorted too: fixed length matches end in the order they start and other matches never overlap
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (end(mid) <= endIndex) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo - 1;
+    }
+
+    private int firstAtLeast(int offset) {
+        int i = Arrays.binarySearch(starts, 0, size, offset);
+        if (i < 0) {
+            return -i - 1;
+        }
+        // starts are unique, so this is the only match starting there
+        return i;
+    }
+
+    @Override
+    public void edited(@NotNull DocumentEdit edit) {
+        if (stale) {
+            return;
+        }
+        if (literal == null) {
+            markStale();
+            return;
+        }
+        int m = literal.length();
+        int offset = edit.offset();
+        // matches whose characters overlap the removed text, or that straddle the edit, are gone
+        int lo = firstAtLeast(offset - m + 1);
+        int hi = firstAtLeast(edit.removedEnd());
+        // and any match that overlaps the inserted text is new
+        int[] found = NO_MATCHES;
+        int foundCount = 0;
+        int to = Math.min(document.length(), edit.insertedEnd() + m - 1);
+        for (int s = literal.indexOf(document, Math.max(0, offset - m + 1), to); s >= 0; s = literal.indexOf(document, s + 1, to)) {
+            if (foundCount == found.length) {
+                found = Arrays.copyOf(found, Math.max(4, foundCount * 2));
+            }
+            found[foundCount++] = s;
+        }
+        int tail = size - hi;
+        int newSize = lo + foundCount + tail;
+        if (newSize > starts.length) {
+            starts = Arrays.copyOf(starts, Math.max(newSize, starts.length * 2));
+        }
+        System.arraycopy(starts, hi, starts, lo + foundCount, tail);
+        System.arraycopy(found, 0, starts, lo, foundCount);
+        int delta = edit.lengthDelta();
+        if (delta != 0) {
+            for (int i = lo + foundCount; i < newSize; i++) {
+                starts[i] += delta;
+            }
+        }
+        size = newSize;
+        onChange.run();
+    }
+
+    @Override
+    public void documentReset(@NotNull PieceTable document) {
+        markStale();
+    }
+
+    private void markStale() {
+        stale = true;
+        close();
+        onChange.run();
+    }
+
+    /**
+     * Stops following the document. Call when the index is no longer wanted
+     */
+    public void close() {
+        document.removeListener(this);
+    }
+}
@@ -0,0 +1,62 @@
+package com.tom.jpedit.search;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A least recently used cache of compiled regular expressions, keyed by the expression and its flags.
+ * <p>
+ * Compiling a {@link Pattern} is far more expensive than running it over a short text, and the same few
+ * expressions tend to be searched for again and again, so every regular expression search in the application
+ * compiles through {@link #getShared()}. The cache is thread safe.
+ */
+public final class PatternCache {
+    private static final int SHARED_CAPACITY = 64;
+    private static final PatternCache shared = new PatternCache(SHARED_CAPACITY);
+
+    private record Key(String regex, int flags) {
+    }
+
+    private final Map<Key, Pattern> patterns;
+
+    /**
+     * @param capacity the most patterns kept before the least recently used is dropped
+     */
+    public PatternCache(int capacity) {
+        this.patterns = new LinkedHashMap<>(capacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Pattern> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @return the cache shared by the whole application
+     */
+    public static @NotNull PatternCache getShared() {
+        return shared;
+    }
+
+    /**
+     * Returns the compiled pattern, compiling it only if it is not in the cache
+     *
+     * @param regex the regular expression
+     * @param flags the flags of {@link Pattern#compile(String, int)}
+     * @return the compiled pattern
+     * @throws PatternSyntaxException if the expression is not valid
+     */
+    public synchronized @NotNull Pattern get(@NotNull String regex, int flags) {
+        Key key = new Key(regex, flags);
+        Pattern pattern = patterns.get(key);
+        if (pattern == null) {
+            pattern = Pattern.compile(regex, flags);
+            patterns.put(key, pattern);
+        }
+        return pattern;
+    }
+}
@@ -0,0 +1,182 @@
+package com.tom.jpedit.search;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Finds matches of a regular expression in a text, which is read in place through
+ * {@link CharSequence#charAt(int)}, so a document can be searched without being copied.
+ * <p>
+ * The pattern comes from the {@link PatternCache} and the searcher keeps one {@link Matcher} for as long as it
+ * searches the same text, so repeated searches neither compile the expression again nor make a new matcher.
+ * Replacements may refer to groups of the match as {@code $1} or {@code ${name}}, as in
+ * {@link Matcher#appendReplacement(StringBuilder, String)}.
+ * <p>
+ * A RegexSearcher is not thread safe.
+ */
+public final class RegexSearcher implements TextSearcher {
+    private final String query;
+    private final boolean ignoreCase;
+    private final Pattern pattern;
+    private Matcher matcher;
+    private CharSequence matcherText;
+    // the match the matcher currently holds, if any
+    private SearchMatch current;
+
+    /**
+     * @param query      the regular expression
+     * @param ignoreCase true to match regardless of case
+     * @throws PatternSyntaxException if the expression is not valid
+     */
+    public RegexSearcher(@NotNull String query, boolean ignoreCase) {
+        this.query = query;
+        this.ignoreCase = ignoreCase;
+        int flags = ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0;
+        this.pattern = PatternCache.getShared().get(query, flags);
+    }
+
+    @Override
+    public boolean isFor(@NotNull String query, boolean ignoreCase, @NotNull SearchMode mode) {
+        return mode == SearchMode.REGEX && this.ignoreCase == ignoreCase && this.query.equals(query);
+    }
+
+    private Matcher matcher(CharSequence text, int start, int end) {
+        if (matcher == null || matcherText != text) {
+            matcher = pattern.matcher(text);
+            matcherText = text;
+        }
+        current = null;
+        // the text outside the region is still visible to lookaround and anchors, as if the region were not there
+        return matcher.region(start, end).useTransparentBounds(true).useAnchoringBounds(false);
+    }
+
+    @Override
+    public @Nullable SearchMatch findNext(@NotNull CharSequence text, int fromIndex) {
+        if (fromIndex > text.length()) {
+            return null;
+        }
+        Matcher m = matcher(text, Math.max(fromIndex, 0), text.length());
+        if (!m.find()) {
+            return null;
+        }
+        current = new SearchMatch(m.start(), m.end());
+        return current;
+    }
+
+    /**
+     * Regular expressions cannot be run backward, so this finds every match before {@code endIndex}
+     * and keeps the last one
+     */
+    @Override
+    public @Nullable SearchMatch findPrevious(@NotNull CharSequence text, int endIndex) {
+        Matcher m = matcher(text, 0, Math.min(Math.max(endIndex, 0), text.length()));
+        SearchMatch last = null;
+        while (m.find()) {
+            if (m.end() > m.start()) {
+                last = new SearchMatch(m.start(), m.end());
+            }
+        }
+        return last;
+    }
+
+    /**
+     * @return true if the last search read up to the end of the text, so that had the text gone on the search
+     * might have found something else. A search that did not is settled however much text follows
+     */
+    public boolean hitEnd() {
+        return matcher != null && matcher.hitEnd();
+    }
+
+    /**
+     * Tries the expression at each offset from {@code from} in turn, and so costs as much as the search that read
+     * to the end of the text did. An offset where it fails without reading to the end fails however the text goes
+     * on, and one where it reads to the end might match once more text follows
+     *
+     * @return the first offset in {@code [from, to)} at which a match could start if the text went on past its
+     * end, or {@code to} if there is none
+     */
+    public int firstOpenStart(@NotNull CharSequence text, int from, int to) {
+        for (int start = from; start < to; start++) {
+            Matcher m = matcher(text, start, text.length());
+            m.lookingAt();
+            if (m.hitEnd()) {
+                return start;
+            }
+        }
+        return to;
+    }
+
+    @Override
+    public @Nullable String replacementFor(@NotNull CharSequence text, @NotNull SearchMatch match, @NotNull String replacement) {
+        if (!match.equals(current) || matcherText != text) {
+            // a match found by find() is also the match of the same path when the region is exactly the match
+            Matcher m = matcher(text, match.start(), match.end());
+            if (!m.matches()) {
+                return null;
+            }
+            current = match;
+        }
+        StringBuilder sb = new StringBuilder(replacement.length());
+        expand(matcher, replacement, sb);
+        return sb.toString();
+    }
+
+    /**
+     * Appends the replacement with every group reference replaced by what the group matched
+     *
+     * @throws IllegalArgumentException if the replacement refers to a group the pattern does not have
+     */
+    private static void expand(Matcher matcher, String replacement, StringBuilder sb) {
+        for (int i = 0; i < replacement.length(); i++) {
+            char c = replacement.charAt(i);
+            if (c == '\\' && i + 1 < replacement.length()) {
+                sb.append(replacement.charAt(++i));
+            } else if (c != '$') {
+                sb.append(c);
+            } else if (i + 1 < replacement.length() && replacement.charAt(i + 1) == '{') {
+                int close = replacement.indexOf('}', i + 2);
+                if (close < 0) {
+                    throw new IllegalArgumentException("Group name in replacement is missing its closing '}'");
+                }
+                appendGroup(sb, matcher, replacement.substring(i + 2, close));
+                i = close;
+            } else if (i + 1 < replacement.length() && Character.isDigit(replacement.charAt(i + 1))) {
+                int group = replacement.charAt(++i) - '0';
+                // take more digits while they still name a group, like Matcher does
+                while (i + 1 < replacement.length() && Character.isDigit(replacement.charAt(i + 1))) {
+                    int longer = group * 10 + (replacement.charAt(i + 1) - '0');
+                    if (longer > matcher.groupCount()) {
+                        break;
+                    }
+                    group = longer;
+                    i++;
+                }
+                if (group > matcher.groupCount()) {
+                    throw new IllegalArgumentException("The pattern has no group " + group);
+                }
+                appendGroup(sb, matcher.group(group));
+            } else {
+                throw new IllegalArgumentException("'$' in a replacement must be followed by a group number or {name}");
+            }
+        }
+    }
+
+    private static void appendGroup(StringBuilder sb, Matcher matcher, String name) {
+        try {
+            appendGroup(sb, matcher.group(name));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("The pattern has no group named " + name, e);
+        }
+    }
+
+    private static void appendGroup(StringBuilder sb, String group) {
+        // a group that took no part in the match adds nothing
+        if (group != null) {
+            sb.append(group);
+        }
+    }
+}
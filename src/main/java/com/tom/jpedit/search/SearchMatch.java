@@ -0,0 +1,23 @@
+package com.tom.jpedit.search;
+
+/**
+ * The characters {@code [start, end)} of a text matched a search
+ *
+ * @param term which of the terms of an {@link AhoCorasickSearcher} matched, or {@link #NO_TERM} for a search
+ *             with a single query
+ */
+public record SearchMatch(int start, int end, int term) {
+    public static final int NO_TERM = -1;
+
+    public SearchMatch(int start, int end) {
+        this(start, end, NO_TERM);
+    }
+
+    public int length() {
+        return end - start;
+    }
+
+    public boolean isEmpty() {
+        return start == end;
+    }
+}
@@ -0,0 +1,35 @@
+package com.tom.jpedit.search;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * How the query typed into a find or replace dialog is read
+ */
+public enum SearchMode {
+    /**
+     * The query is the exact text to find
+     */
+    TEXT,
+    /**
+     * The query is a regular expression
+     */
+    REGEX,
+    /**
+     * The query is a list of terms separated by whitespace, and any of them is a match
+     */
+    ANY_TERM;
+
+    /**
+     * @param query      the query as typed, which must not be empty
+     * @param ignoreCase true to search case insensitively
+     * @return a searcher for the query read in this mode
+     * @throws java.util.regex.PatternSyntaxException if this is {@link #REGEX} and the query is not valid
+     */
+    public @NotNull TextSearcher newSearcher(@NotNull String query, boolean ignoreCase) {
+        return switch (this) {
+            case TEXT -> new HorspoolSearcher(query, ignoreCase);
+            case REGEX -> new RegexSearcher(query, ignoreCase);
+            case ANY_TERM -> new AhoCorasickSearcher(query, ignoreCase);
+        };
+    }
+}
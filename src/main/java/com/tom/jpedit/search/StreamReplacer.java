@@ -0,0 +1,264 @@
+package com.tom.jpedit.search;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntPredicate;
+
+/**
+ * Replaces every match of a {@link TextSearcher} in a stream of text as it is copied from a reader to a writer,
+ * with the same matches and replacements as Replace All makes in a document.
+ * <p>
+ * The text is read into a window {@link #READ_CHARS} at a time and searched there. A match is only taken once no
+ * more text could change it: for a fixed string, or any of several, that is when the window holds
+ * {@link TextSearcher#maxMatchLength()} characters from where it starts, and for a regular expression it is when
+ * the search did not read up to the end of the window, see {@link RegexSearcher#hitEnd()}. Text before the first
+ * place a match could still start is written out and dropped from the window, apart from
+ * {@link #CONTEXT_CHARS} characters kept for lookbehind, so however long the stream is the window stays a few
+ * reads long. A regular expression that reads to the end of the window is asked where the first match that the
+ * rest of the text could still complete starts, see {@link RegexSearcher#firstOpenStart}, and the text before that
+ * is settled, so a match is found however long it is. Only a match that is still open, such as one of
+ * {@code BEGIN[\s\S]*?END} whose END has not been read yet, grows the window, and the copy fails rather than
+ * leave the match out once the window would pass {@link #MAX_WINDOW_CHARS}.
+ * <p>
+ * The offsets and lengths of the matches reported to a {@link MatchListener} can leave out characters that will not
+ * be shown, such as those a TextArea drops, so they can be used to select the match once the file is opened.
+ * <p>
+ * Like Replace All, matches do not overlap, the replacement text is never searched again, and an empty match
+ * is followed by a search from the next character. A regular expression sees the start of the stream as the
+ * start of input but cannot look further back than the characters kept.
+ * <p>
+ * A StreamReplacer is as thread safe as its searcher.
+ */
+public final class StreamReplacer {
+    /**
+     * The number of characters read into the window at a time
+     */
+    public static final int READ_CHARS = 64 * 1024;
+    /**
+     * The most characters a window may hold past the text already written
+     */
+    public static final int MAX_WINDOW_CHARS = 4 * 1024 * 1024;
+    /**
+     * The number of characters kept before the text still to be written, for lookbehind to see
+     */
+    public static final int CONTEXT_CHARS = 1024;
+    private static final int PREVIEW_CHARS = 160;
+
+    private final TextSearcher searcher;
+    private final String replacement;
+    private final IntPredicate uncounted;
+
+    /**
+     * @param searcher    finds the matches to replace. It must either have a {@link TextSearcher#maxMatchLength()}
+     *                    or be a {@link RegexSearcher}
+     * @param replacement the replacement as the user typed it, which may refer to groups of a regular expression
+     */
+    public StreamReplacer(@NotNull TextSearcher searcher, @NotNull String replacement) {
+        this(searcher, replacement, null);
+    }
+
+    /**
+     * @param searcher    finds the matches to replace. It must either have a {@link TextSearcher#maxMatchLength()}
+     *                    or be a {@link RegexSearcher}
+     * @param replacement the replacement as the user typed it, which may refer to groups of a regular expression
+     * @param uncounted   the characters left out of the offsets and lengths told to a {@link MatchListener}, or
+     *                    null to count every character. They are still searched and replaced
+     */
+    public StreamReplacer(
+            @NotNull TextSearcher searcher,
+            @NotNull String replacement,
+            @Nullable IntPredicate uncounted
+    ) {
+        if (searcher.maxMatchLength() < 0 && !(searcher instanceof RegexSearcher)) {
+            throw new IllegalArgumentException("Cannot tell when a match of " + searcher + " is complete");
+        }
+        this.searcher = searcher;
+        this.replacement = replacement;
+        this.uncounted = uncounted;
+    }
+
+    /**
+     * Called with each match as it is replaced
+     */
+    @FunctionalInterface
+    public interface MatchListener {
+        /**
+         * @param offset  where the match starts in the text read, in characters, leaving out uncounted ones
+         * @param line    the line the match starts on, counting from 0
+         * @param length  the number of characters the match covers, leaving out uncounted ones
+         * @param preview the line the match is on, possibly shortened
+         */
+        void matched(long offset, int line, int length, @NotNull String preview);
+    }
+
+    /**
+     * Copies the text of the reader to the writer with every match replaced. Neither is closed
+     *
+     * @param in        the text to read
+     * @param out       where the text with matches replaced is written. {@link Writer#nullWriter()} counts the
+     *                  matches without writing anything
+     * @param onMatch   told about each match, or null
+     * @param cancelled checked before each read; once true the copy throws a {@link CancellationException}
+     * @return the number of matches replaced
+     * @throws IOException              if the text cannot be read or written, or a match of a regular expression
+     *                                  would need a window larger than {@link #MAX_WINDOW_CHARS}
+     * @throws IllegalArgumentException if the replacement refers to a group the expression does not have
+     */
+    public int replace(
+            @NotNull Reader in,
+            @NotNull Writer out,
+            @Nullable MatchListener onMatch,
+            @NotNull BooleanSupplier cancelled
+    ) throws IOException {
+        StringBuilder window = new StringBuilder();
+        char[] chunk = new char[READ_CHARS];
+        // where window starts in the text read
+        long base = 0;
+        // the window is written up to here
+        int copied = 0;
+        // the next match may start here; one past copied after an empty match
+        int from = 0;
+        // lines and uncounted characters are counted up to here
+        int counted = 0;
+        int line = 0;
+        long skipped = 0;
+        int count = 0;
+        boolean eof = fill(in, window, chunk, cancelled);
+        while (true) {
+            int length = window.length();
+            SearchMatch match = from <= length ? searcher.findNext(window, from) : null;
+            if (match != null && (eof || isSettled(match, length))) {
+                out.append(window, copied, match.start());
+                String replaced = searcher.replacementFor(window, match, replacement);
+                line += countLines(window, counted, match.start());
+                skipped += countUncounted(window, counted, match.start());
+                counted = match.start();
+                if (onMatch != null) {
+                    int counts = match.length() - countUncounted(window, match.start(), match.end());
+                    onMatch.matched(base + match.start() - skipped, line, counts, preview(window, match.start()));
+                }
+                out.write(replaced);
+                count++;
+                copied = match.end();
+                // after an empty match the next one starts at the next character at the earliest
+                from = match.isEmpty() ? match.end() + 1 : match.end();
+                continue;
+            }
+            if (eof) {
+                out.append(window, copied, length);
+                return count;
+            }
+            int settled = from > length ? length : unmatchedBefore(window, match, from, copied);
+            if (settled > copied) {
+                out.append(window, copied, settled);
+                copied = settled;
+                from = Math.max(from, settled);
+            }
+            int drop = copied - CONTEXT_CHARS;
+            if (drop > 0) {
+                if (counted < drop) {
+                    line += countLines(window, counted, drop);
+                    skipped += countUncounted(window, counted, drop);
+                    counted = drop;
+                }
+                window.delete(0, drop);
+                base += drop;
+                copied -= drop;
+                from -= drop;
+                counted -= drop;
+            }
+            if (window.length() - copied >= MAX_WINDOW_CHARS) {
+                throw new IOException("A match of the expression would cover more than " + MAX_WINDOW_CHARS
+                                      + " characters at character " + (base + copied));
+            }
+            eof = fill(in, window, chunk, cancelled);
+        }
+    }
+
+    /**
+     * @return true if the match found in a window of {@code length} characters is the same whatever follows it
+     */
+    private boolean isSettled(SearchMatch match, int length) {
+        int max = searcher.maxMatchLength();
+        if (max >= 0) {
+            return match.start() + max <= length;
+        }
+        return !((RegexSearcher) searcher).hitEnd();
+    }
+
+    /**
+     * @param match the match that was found but is not settled, or null if the search found none
+     * @return the offset before which no match can start however the text goes on, after a search from
+     * {@code from} that found no settled match
+     */
+    private int unmatchedBefore(StringBuilder window, @Nullable SearchMatch match, int from, int copied) {
+        int length = window.length();
+        int max = searcher.maxMatchLength();
+        if (max >= 0) {
+            return Math.max(copied, Math.min(length, length - max + 1));
+        }
+        RegexSearcher regex = (RegexSearcher) searcher;
+        if (!regex.hitEnd()) {
+            return length;
+        }
+        // a match that was found starts after every place that failed, but one of those may have failed only
+        // because the window ended
+        return Math.max(copied, regex.firstOpenStart(window, from, match == null ? length : match.start()));
+    }
+
+    /**
+     * Appends the next read to the window
+     *
+     * @return true if the reader is at its end
+     */
+    private static boolean fill(Reader in, StringBuilder window, char[] chunk, BooleanSupplier cancelled) throws IOException {
+        if (cancelled.getAsBoolean()) {
+            throw new CancellationException("Replace cancelled");
+        }
+        int read;
+        do {
+            read = in.read(chunk);
+        } while (read == 0);
+        if (read < 0) {
+            return true;
+        }
+        window.append(chunk, 0, read);
+        return false;
+    }
+
+    private static int countLines(CharSequence text, int from, int to) {
+        int lines = 0;
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    private int countUncounted(CharSequence text, int from, int to) {
+        if (uncounted == null) {
+            return 0;
+        }
+        int chars = 0;
+        for (int i = from; i < to; i++) {
+            if (uncounted.test(text.charAt(i))) {
+                chars++;
+            }
+        }
+        return chars;
+    }
+
+    private static String preview(StringBuilder window, int at) {
+        int start = Math.max(window.lastIndexOf("\n", at - 1) + 1, at - PREVIEW_CHARS / 2);
+        int end = window.indexOf("\n", at);
+        end = Math.min(end < 0 ? window.length() : end, start + PREVIEW_CHARS);
+        return window.substring(start, Math.max(start, end)).strip();
+    }
+}
@@ -0,0 +1,56 @@
+package com.tom.jpedit.search;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Something that finds matches of one query in a text, forward or backward, reading the text in place.
+ * <p>
+ * A searcher is built once for a query and kept while the query does not change, see
+ * {@link com.tom.jpedit.util.FindCache#getSearcher(String, boolean, SearchMode)}.
+ */
+public interface TextSearcher {
+
+    /**
+     * @return true if this searcher was built for the query with the same options
+     */
+    boolean isFor(@NotNull String query, boolean ignoreCase, @NotNull SearchMode mode);
+
+    /**
+     * Finds the first match that starts at or after {@code fromIndex}. The match may be empty
+     *
+     * @param text      the text to search
+     * @param fromIndex the first offset at which a match may start
+     * @return the match or null if there is none
+     */
+    @Nullable SearchMatch findNext(@NotNull CharSequence text, int fromIndex);
+
+    /**
+     * Finds the last match that ends at or before {@code endIndex}. Empty matches are skipped, since there is no
+     * use in going back to one
+     *
+     * @param text     the text to search
+     * @param endIndex the offset the match must end at or before
+     * @return the match or null if there is none
+     */
+    @Nullable SearchMatch findPrevious(@NotNull CharSequence text, int endIndex);
+
+    /**
+     * @return the most characters a match can cover, or -1 if there is no such limit, as for a regular expression.
+     * A text read a window at a time can only be cut off in the middle of a match that starts fewer than this
+     * many characters from the end of the window
+     */
+    default int maxMatchLength() {
+        return -1;
+    }
+
+    /**
+     * Works out what a match should be replaced with
+     *
+     * @param text        the text the match is in
+     * @param match       a match of this searcher in {@code text}
+     * @param replacement the replacement the user typed
+     * @return the text to put in place of the match, or null if {@code match} is not a match of this searcher
+     */
+    @Nullable String replacementFor(@NotNull CharSequence text, @NotNull SearchMatch match, @NotNull String replacement);
+}
@@ -1,7 +1,17 @@
 package com.tom.jpedit.util;
 
+import com.tom.jpedit.search.MatchIndex;
+import com.tom.jpedit.search.SearchMode;
+import com.tom.jpedit.search.TextSearcher;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.regex.PatternSyntaxException;
+
 public class FindCache {
     private int current;
+    private TextSearcher searcher;
+    private MatchIndex matchIndex;
 
     public FindCache(int current) {
         this.current = current;
@@ -14,4 +24,43 @@ public class FindCache {
     public void setLastStop(int lastStop) {
         this.current = lastStop;
     }
+
+    /**
+     * Returns a searcher for the query, reusing the last one if the query and options have not changed
+     *
+     * @param query      the query to search for, which must not be empty
+     * @param ignoreCase true to search case insensitively
+     * @param mode       how the query is read
+     * @return a searcher for the query
+     * @throws PatternSyntaxException if the mode is {@link SearchMode#REGEX} and the query is not a valid regular expression
+     */
+    public @NotNull TextSearcher getSearcher(@NotNull String query, boolean ignoreCase, @NotNull SearchMode mode) {
+        if (searcher == null || !searcher.isFor(query, ignoreCase, mode)) {
+            searcher = mode.newSearcher(query, ignoreCase);
+        }
+        return searcher;
+    }
+
+    /**
+     * @return the index of every match of the query, or null if there is none that is up to date for the query
+     * and options
+     */
+    public @Nullable MatchIndex getMatchIndex(@NotNull String query, boolean ignoreCase, @NotNull SearchMode mode) {
+        if (matchIndex == null || matchIndex.isStale() || !matchIndex.isFor(query, ignoreCase, mode)) {
+            return null;
+        }
+        return matchIndex;
+    }
+
+    /**
+     * Replaces the index of matches, closing the one it replaces
+     *
+     * @param matchIndex the new index, or null to drop the current one
+     */
+    public void setMatchIndex(@Nullable MatchIndex matchIndex) {
+        if (this.matchIndex != null && this.matchIndex != matchIndex) {
+            this.matchIndex.close();
+        }
+        this.matchIndex = matchIndex;
+    }
 }
@@ -29,7 +29,17 @@ public class UserPreferences extends Properties {
     public static final String DEFAULT_SIZE = "17.0";
     public static final String AUTOSAVE_PERIOD_MILLIS = "autosave-period-millis";
     public static final String PREFERED_LOCALE = "preferred-locale";
-    public static final long DEFAULT_AUTOSAVE_PERIOD_MILLIS = Duration.ofMinutes(5).toMillis();
+    public static final String LARGE_FILE_THRESHOLD_BYTES = "large-file-threshold-bytes";
+    public static final String FORCE_ON_SAVE = "force-on-save";
+    public static final String AUTOSAVE_FORCE = "autosave-force";
+    public static final String AUTOSAVE_IDLE_MILLIS = "autosave-idle-millis";
+    public static final String AUTOSAVE_MIN_SPACING_MILLIS = "autosave-min-spacing-millis";
+    public static final String UNDO_MEMORY_BUDGET_BYTES = "undo-memory-budget-bytes";
+    public static final long DEFAULT_AUTOSAVE_PERIOD_MILLIS = Duration.ofMinutes(1).toMillis();
+    public static final long DEFAULT_AUTOSAVE_IDLE_MILLIS = Duration.ofSeconds(2).toMillis();
+    public static final long DEFAULT_AUTOSAVE_MIN_SPACING_MILLIS = Duration.ofSeconds(5).toMillis();
+    public static final long DEFAULT_LARGE_FILE_THRESHOLD_BYTES = 32L * 1024 * 1024;
+    public static final long DEFAULT_UNDO_MEMORY_BUDGET_BYTES = 16L * 1024 * 1024;
 
     public Locale getPreferredLocale() {
         return Locale.of(getProperty(PREFERED_LOCALE, Locale.getDefault().getLanguage()));
@@ -44,6 +54,11 @@ public class UserPreferences extends Properties {
         setPreferredLocale(locale.getLanguage());
     }
 
+    /**
+     * The longest an edit may go without being autosaved while the user keeps typing without a pause
+     *
+     * @return the maximum age in milliseconds of an edit that has not been autosaved
+     */
     public long getAutosavePeriodMillis() {
         return JPUtil.parseLongOr(getProperty(AUTOSAVE_PERIOD_MILLIS), DEFAULT_AUTOSAVE_PERIOD_MILLIS);
     }
@@ -53,6 +68,90 @@ public class UserPreferences extends Properties {
         attemptSavePreferences();
     }
 
+    /**
+     * A window is autosaved once its document has not been edited for this long
+     *
+     * @return the time in milliseconds without an edit after which a window is autosaved
+     */
+    public long getAutosaveIdleMillis() {
+        return JPUtil.parseLongOr(getProperty(AUTOSAVE_IDLE_MILLIS), DEFAULT_AUTOSAVE_IDLE_MILLIS);
+    }
+
+    public void setAutosaveIdleMillis(long millis) {
+        setProperty(AUTOSAVE_IDLE_MILLIS, String.valueOf(millis));
+        attemptSavePreferences();
+    }
+
+    /**
+     * A window is never autosaved twice within this time, however often it is edited
+     *
+     * @return the shortest time in milliseconds between two autosaves of a window
+     */
+    public long getAutosaveMinSpacingMillis() {
+        return JPUtil.parseLongOr(getProperty(AUTOSAVE_MIN_SPACING_MILLIS), DEFAULT_AUTOSAVE_MIN_SPACING_MILLIS);
+    }
+
+    public void setAutosaveMinSpacingMillis(long millis) {
+        setProperty(AUTOSAVE_MIN_SPACING_MILLIS, String.valueOf(millis));
+        attemptSavePreferences();
+    }
+
+    /**
+     * Files at least this large are opened in large file mode: memory mapped, read-only and shown a page at a time
+     *
+     * @return the size in bytes at which files are opened in large file mode
+     */
+    public long getLargeFileThresholdBytes() {
+        return JPUtil.parseLongOr(getProperty(LARGE_FILE_THRESHOLD_BYTES), DEFAULT_LARGE_FILE_THRESHOLD_BYTES);
+    }
+
+    public void setLargeFileThresholdBytes(long bytes) {
+        setProperty(LARGE_FILE_THRESHOLD_BYTES, String.valueOf(bytes));
+        attemptSavePreferences();
+    }
+
+    /**
+     * About how much memory the undo history of each window may use before its oldest steps are written to disk
+     *
+     * @return the memory budget in bytes of the undo history of a window
+     */
+    public long getUndoMemoryBudgetBytes() {
+        return JPUtil.parseLongOr(getProperty(UNDO_MEMORY_BUDGET_BYTES), DEFAULT_UNDO_MEMORY_BUDGET_BYTES);
+    }
+
+    public void setUndoMemoryBudgetBytes(long bytes) {
+        setProperty(UNDO_MEMORY_BUDGET_BYTES, String.valueOf(bytes));
+        attemptSavePreferences();
+    }
+
+    /**
+     * When true, a save does not complete until the file has been forced to the storage device
+     *
+     * @return true if saved files are forced to disk before they replace the previous file
+     */
+    public boolean isForceOnSave() {
+        return getProperty(FORCE_ON_SAVE, TRUE).equalsIgnoreCase(TRUE);
+    }
+
+    public void setForceOnSave(boolean force) {
+        setProperty(FORCE_ON_SAVE, Boolean.toString(force));
+        attemptSavePreferences();
+    }
+
+    /**
+     * When true, each batch of autosaves is forced to the storage device once all of it has been written
+     *
+     * @return true if autosaves are forced to disk
+     */
+    public boolean isAutosaveForce() {
+        return getProperty(AUTOSAVE_FORCE, FALSE).equalsIgnoreCase(TRUE);
+    }
+
+    public void setAutosaveForce(boolean force) {
+        setProperty(AUTOSAVE_FORCE, Boolean.toString(force));
+        attemptSavePreferences();
+    }
+
     public Font getPreferredFont() {
         JPLogger.getAppLog().info("Font family " + getProperty(FONT_FAMILY, SYSTEM_FAMILY_NAME));
         return Font.font(
@@ -0,0 +1,289 @@
+package com.tom.jpedit.workers;
+
+import com.tom.jpedit.ApplicationContext;
+import com.tom.jpedit.logging.JPLogger;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the autosave of every window as batches on a single dedicated I/O thread.
+ * <p>
+ * Autosaves are not run at a fixed rate. Each edit tells the coordinator, and a window is autosaved when
+ * its {@link AutoSavePolicy} says it is due: after a pause in typing, when its oldest unsaved edit gets too old,
+ * and never too soon after its last autosave. The I/O thread sleeps until the earliest window is due, runs
+ * every window that is due by then one after another so autosaves from different windows never contend for
+ * the disk, and goes back to sleep. With no unsaved edits anywhere it does not wake at all.
+ * <p>
+ * If the {@link com.tom.jpedit.util.UserPreferences#isAutosaveForce()} preference is set, the journals written
+ * in a batch are forced to disk together once the whole batch has been written.
+ * <p>
+ * After every batch that wrote anything, the {@link AutoSaveManifest} in the temporary saves directory is
+ * rewritten so a later recovery knows which windows were autosaved and what they held. The entries of autosaves
+ * left by an earlier run stay in it while they are being recovered, see {@link #keepRecovering}.
+ * <p>
+ * If the disk is slower than the edit rate, batches simply get further apart and each one writes more edits,
+ * rather than piling up: edits only ever move the single pending wake up, so a window waiting for a batch is never
+ * queued twice. A batch stops taking windows once it has run for longer than the autosave spacing, and the windows
+ * it left are the first the next batch writes, so one slow batch does not hold the I/O thread for every window.
+ * Meanwhile the edits waiting in each journal are bounded because a journal that outgrows its document is
+ * compacted into a single base.
+ * <p>
+ * A closing window is {@link #retire retired} on the I/O thread after any batch in progress, so closing a window
+ * never waits for the disk on the FX thread.
+ */
+public class AutoSaveCoordinator {
+    private final Set<AutoSaveWorker> workers = ConcurrentHashMap.newKeySet();
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    private final ScheduledThreadPoolExecutor ioThread;
+    private volatile AutoSavePolicy policy;
+    private volatile AutoSaveManifest manifest;
+    // guarded by this
+    private ScheduledFuture<?> wake;
+    private long wakeAtNanos;
+
+    public AutoSaveCoordinator(@NotNull ThreadGroup threadGroup) {
+        ioThread = new ScheduledThreadPoolExecutor(1, r -> new Thread(threadGroup, r, "Autosave I/O"));
+        // a batch that is waiting to run is dropped on shutdown, but workers waiting to be retired still close
+        ioThread.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * Adds a window's worker to the batches. Its first autosave is due as if it had just been edited
+     *
+     * @param worker the worker to run when it is due
+     */
+    public void register(@NotNull AutoSaveWorker worker) {
+        workers.add(worker);
+        if (policy == null) {
+            policy = AutoSavePolicy.fromPreferences(ApplicationContext.getContext().getUserPreferences());
+        }
+        manifest();
+        edited(worker);
+    }
+
+    private @NotNull AutoSaveManifest manifest() {
+        if (manifest == null) {
+            manifest = new AutoSaveManifest(Path.of(ApplicationContext.getContext().getProperty("tempsaves_dir")));
+        }
+        return manifest;
+    }
+
+    /**
+     * Keeps the entries of autosaves left by an earlier run in the manifest while they are recovered, so that the
+     * windows which autosave in the meantime do not write them out of it and a crash during recovery loses nothing.
+     * Call on the FX thread
+     *
+     * @param entries the entries read from the manifest of the earlier run
+     */
+    public void keepRecovering(@NotNull List<AutoSaveManifest.Entry> entries) {
+        AutoSaveManifest current = manifest();
+        synchronized (current) {
+            entries.forEach(current::put);
+        }
+    }
+
+    /**
+     * Takes autosaves that have been recovered out of the manifest and writes it, which deletes it if no window is
+     * autosaving. Call on the FX thread
+     *
+     * @param windowIds the window ids of the recovered autosaves
+     */
+    public void forgetRecovered(@NotNull Collection<Integer> windowIds) {
+        AutoSaveManifest current = manifest();
+        synchronized (current) {
+            windowIds.forEach(current::remove);
+            writeManifest(current);
+        }
+    }
+
+    /**
+     * Removes a worker from the batches and its window from the manifest. A batch that is already running may
+     * still run it once
+     *
+     * @param worker the worker to remove
+     */
+    public void unregister(@NotNull AutoSaveWorker worker) {
+        AutoSaveManifest current = manifest;
+        if (current == null) {
+            workers.remove(worker);
+            return;
+        }
+        synchronized (current) {
+            workers.remove(worker);
+            current.remove(worker.getWindowId());
+            writeManifest(current);
+        }
+    }
+
+    /**
+     * Removes a worker from the batches at once and then, on the I/O thread once a batch that is running has
+     * finished, runs the close and takes its window out of the manifest. Nothing is waited for on the calling thread
+     *
+     * @param worker the worker to remove
+     * @param close  closes the worker's files, run on the I/O thread
+     * @return completes once the worker is closed and out of the manifest
+     */
+    @NotNull CompletableFuture<Void> retire(@NotNull AutoSaveWorker worker, @NotNull Runnable close) {
+        workers.remove(worker);
+        Runnable retire = () -> {
+            close.run();
+            unregister(worker);
+        };
+        try {
+            return CompletableFuture.runAsync(retire, ioThread);
+        } catch (RejectedExecutionException e) {
+            // the I/O thread has stopped, so no batch can be running
+            retire.run();
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    /**
+     * Called when the document of a registered worker changes. Makes sure the I/O thread wakes up by the time
+     * the worker is due. A run of edits only moves the wake up earlier, so typing does not reschedule anything
+     *
+     * @param worker the worker whose document changed
+     */
+    void edited(@NotNull AutoSaveWorker worker) {
+        AutoSavePolicy current = policy;
+        if (current != null) {
+            wakeBy(worker.dueNanos(current));
+        }
+    }
+
+    /**
+     * Re-reads the autosave policy from the user's preferences and works out again when each window is due
+     */
+    public void reschedule() {
+        policy = AutoSavePolicy.fromPreferences(ApplicationContext.getContext().getUserPreferences());
+        wakeBy(System.nanoTime());
+    }
+
+    private synchronized void wakeBy(long dueNanos) {
+        if (ioThread.isShutdown() || (wake != null && wakeAtNanos - dueNanos <= 0)) {
+            return;
+        }
+        if (wake != null) {
+            wake.cancel(false);
+        }
+        wakeAtNanos = dueNanos;
+        wake = ioThread.schedule(this::runBatch, Math.max(0, dueNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    private void runBatch() {
+        synchronized (this) {
+            wake = null;
+        }
+        AutoSavePolicy current = policy;
+        long start = System.nanoTime();
+        boolean force = ApplicationContext.getContext().getUserPreferences().isAutosaveForce();
+        List<Due> due = new ArrayList<>();
+        for (AutoSaveWorker worker : workers) {
+            long dueNanos = worker.dueNanos(current);
+            if (worker.hasUnsavedEdits() && dueNanos - start <= 0) {
+                due.add(new Due(worker, dueNanos));
+            }
+        }
+        // the longest waiting first, so windows left over by a batch that ran out of time go first in the next
+        due.sort((a, b) -> Long.compare(a.dueNanos() - start, b.dueNanos() - start));
+        List<AutoSaveWorker> written = new ArrayList<>();
+        for (Due next : due) {
+            if (!written.isEmpty() && System.nanoTime() - start > current.minSpacingNanos()) {
+                JPLogger.debug(JPLogger.getAppLog(), "Autosave batch out of time, leaving windows for the next batch");
+                break;
+            }
+            if (next.worker().autosave(force)) {
+                written.add(next.worker());
+            }
+        }
+        if (!written.isEmpty()) {
+            updateManifest(written);
+        }
+        if (force) {
+            for (AutoSaveWorker worker : written) {
+                try {
+                    worker.force();
+                } catch (IOException e) {
+                    JPLogger.getErrLog().warning("Could not force autosave to disk: " + e.getMessage());
+                }
+            }
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        if (elapsedNanos > current.minSpacingNanos()) {
+            JPLogger.getErrLog().warning("Autosave batch of " + written.size() + " windows took "
+                                                 + TimeUnit.NANOSECONDS.toMillis(elapsedNanos)
+                                                 + "ms, longer than the autosave spacing. The next batch will be later");
+        } else if (!written.isEmpty()) {
+            JPLogger.debug(
+                    JPLogger.getAppLog(),
+                    "Autosaved " + written.size() + " windows in " + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + "ms"
+            );
+        }
+        // windows that were not due, were edited during the batch or could not be saved yet
+        for (AutoSaveWorker worker : workers) {
+            if (worker.hasUnsavedEdits()) {
+                wakeBy(worker.dueNanos(current));
+            }
+        }
+    }
+
+    private void updateManifest(List<AutoSaveWorker> written) {
+        AutoSaveManifest current = manifest;
+        synchronized (current) {
+            for (AutoSaveWorker worker : written) {
+                // a window closed during the batch must not come back
+                if (workers.contains(worker)) {
+                    current.put(worker.manifestEntry());
+                }
+            }
+            writeManifest(current);
+        }
+    }
+
+    private static void writeManifest(AutoSaveManifest manifest) {
+        try {
+            manifest.write();
+        } catch (IOException e) {
+            JPLogger.getErrLog().warning("Could not write the autosave manifest: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stops the I/O thread once the workers already retired have closed, without running any more batches.
+     * Called when the application exits
+     */
+    public void shutdown() {
+        synchronized (this) {
+            if (wake != null) {
+                wake.cancel(false);
+                wake = null;
+            }
+            ioThread.shutdown();
+        }
+        try {
+            if (!ioThread.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                JPLogger.getErrLog().warning("Autosave did not finish closing in time");
+                ioThread.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            ioThread.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private record Due(AutoSaveWorker worker, long dueNanos) {
+    }
+}
@@ -0,0 +1,155 @@
+package com.tom.jpedit.workers;
+
+import com.tom.jpedit.JPUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * The list of autosaved windows kept in the temporary saves directory, so that after a crash the autosaves can
+ * be recovered knowing what they were without having to read them first.
+ * <p>
+ * For each window it records the window id, the autosave files, the file the window was saving to, the encoding
+ * of the autosave, its size on disk and the {@link com.tom.jpedit.document.PieceTable#revision()} it holds.
+ * The manifest is a properties file that is replaced atomically each time it is written, and it is deleted
+ * once no window is autosaving, so a clean exit leaves the directory empty.
+ */
+public class AutoSaveManifest {
+    public static final String FILE_NAME = "manifest.properties";
+    public static final int VERSION = 1;
+
+    private static final String VERSION_KEY = "version";
+    private static final String WINDOW_PREFIX = "window.";
+
+    /**
+     * One autosaved window
+     *
+     * @param windowId    the id of the window
+     * @param baseFile    the name of the journal's base file, in the temporary saves directory
+     * @param journalFile the name of the journal file, in the temporary saves directory
+     * @param savePath    the file the window was saving to, or null if it was never saved
+     * @param encoding    the charset of the base and journal
+     * @param size        the number of bytes in the base and journal when last autosaved
+     * @param revision    the revision of the document the autosave holds
+     */
+    public record Entry(
+            int windowId,
+            @NotNull String baseFile,
+            @NotNull String journalFile,
+            @Nullable String savePath,
+            @NotNull String encoding,
+            long size,
+            long revision
+    ) {
+    }
+
+    private final Path file;
+    private final TreeMap<Integer, Entry> entries = new TreeMap<>();
+
+    /**
+     * @param directory the temporary saves directory
+     */
+    public AutoSaveManifest(@NotNull Path directory) {
+        this.file = directory.resolve(FILE_NAME);
+    }
+
+    public synchronized void put(@NotNull Entry entry) {
+        entries.put(entry.windowId(), entry);
+    }
+
+    public synchronized void remove(int windowId) {
+        entries.remove(windowId);
+    }
+
+    /**
+     * Replaces the manifest on disk with the current entries, or deletes it if there are none
+     *
+     * @throws IOException if the manifest cannot be written
+     */
+    public synchronized void write() throws IOException {
+        if (entries.isEmpty()) {
+            Files.deleteIfExists(file);
+            return;
+        }
+        Properties properties = new Properties();
+        properties.setProperty(VERSION_KEY, String.valueOf(VERSION));
+        for (Entry entry : entries.values()) {
+            String prefix = WINDOW_PREFIX + entry.windowId() + ".";
+            properties.setProperty(prefix + "base", entry.baseFile());
+            properties.setProperty(prefix + "journal", entry.journalFile());
+            if (entry.savePath() != null) {
+                properties.setProperty(prefix + "save-path", entry.savePath());
+            }
+            properties.setProperty(prefix + "encoding", entry.encoding());
+            properties.setProperty(prefix + "size", String.valueOf(entry.size()));
+            properties.setProperty(prefix + "revision", String.valueOf(entry.revision()));
+        }
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), FILE_NAME + ".", ".part");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                properties.store(out, "JPEdit autosaves");
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Reads the manifest left in a temporary saves directory
+     *
+     * @param directory the temporary saves directory
+     * @return the entries in window id order, or null if there is no manifest or it is of another version
+     * @throws IOException if the manifest exists but cannot be read
+     */
+    public static @Nullable List<Entry> read(@NotNull Path directory) throws IOException {
+        Path file = directory.resolve(FILE_NAME);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        }
+        if (JPUtil.parseLongOr(properties.getProperty(VERSION_KEY), -1) != VERSION) {
+            return null;
+        }
+        TreeMap<Integer, Entry> entries = new TreeMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (!key.startsWith(WINDOW_PREFIX) || !key.endsWith(".base")) {
+                continue;
+            }
+            String prefix = key.substring(0, key.length() - "base".length());
+            int id = (int) JPUtil.parseLongOr(prefix.substring(WINDOW_PREFIX.length(), prefix.length() - 1), -1);
+            String journal = properties.getProperty(prefix + "journal");
+            if (id < 0 || journal == null) {
+                continue;
+            }
+            entries.put(id, new Entry(
+                    id,
+                    properties.getProperty(key),
+                    journal,
+                    properties.getProperty(prefix + "save-path"),
+                    properties.getProperty(prefix + "encoding", "UTF-8"),
+                    JPUtil.parseLongOr(properties.getProperty(prefix + "size"), 0),
+                    JPUtil.parseLongOr(properties.getProperty(prefix + "revision"), -1)
+            ));
+        }
+        return new ArrayList<>(entries.values());
+    }
+}
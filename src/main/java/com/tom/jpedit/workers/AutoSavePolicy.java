@@ -0,0 +1,48 @@
+package com.tom.jpedit.workers;
+
+import com.tom.jpedit.util.UserPreferences;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * When a window with unsaved edits should next be autosaved.
+ * <p>
+ * A window is autosaved once the user has stopped typing for {@code idle}, or once its oldest unsaved edit
+ * is {@code maxStale} old if the user never stops, but never sooner than {@code minSpacing} after its
+ * previous autosave. Pauses in typing get saved almost at once while a burst of typing is saved only
+ * a few times.
+ *
+ * @param idleNanos       how long the document must go unedited before it is saved
+ * @param maxStaleNanos   the longest an edit may wait to be saved while the user keeps typing
+ * @param minSpacingNanos the shortest time between two autosaves of the same window
+ */
+public record AutoSavePolicy(long idleNanos, long maxStaleNanos, long minSpacingNanos) {
+
+    /**
+     * @return the policy set in the user's preferences
+     */
+    public static @NotNull AutoSavePolicy fromPreferences(@NotNull UserPreferences preferences) {
+        return new AutoSavePolicy(
+                TimeUnit.MILLISECONDS.toNanos(preferences.getAutosaveIdleMillis()),
+                TimeUnit.MILLISECONDS.toNanos(preferences.getAutosavePeriodMillis()),
+                TimeUnit.MILLISECONDS.toNanos(preferences.getAutosaveMinSpacingMillis())
+        );
+    }
+
+    /**
+     * All times are {@link System#nanoTime()} values
+     *
+     * @param lastEditNanos      when the document was last edited
+     * @param oldestUnsavedNanos when the oldest edit not yet saved was made
+     * @param lastAutosaveNanos  when the window was last autosaved
+     * @return when the window should be autosaved next
+     */
+    public long dueNanos(long lastEditNanos, long oldestUnsavedNanos, long lastAutosaveNanos) {
+        long idleDue = lastEditNanos + idleNanos;
+        long staleDue = oldestUnsavedNanos + maxStaleNanos;
+        long due = idleDue - staleDue < 0 ? idleDue : staleDue;
+        long earliest = lastAutosaveNanos + minSpacingNanos;
+        return due - earliest < 0 ? earliest : due;
+    }
+}
@@ -1,87 +1,248 @@
 package com.tom.jpedit.workers;
 
 import com.tom.jpedit.ApplicationContext;
+import com.tom.jpedit.document.DocumentChangeListener;
+import com.tom.jpedit.document.DocumentChanges;
+import com.tom.jpedit.document.EditJournal;
 import com.tom.jpedit.gui.JPEditWindow;
 import com.tom.jpedit.logging.JPLogger;
 import org.jetbrains.annotations.NotNull;
 import tom.javafx.JavaFXUtilsKt;
 
-import java.io.FileWriter;
+import java.io.File;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.util.concurrent.CancellationException;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Class representing the repeating task of autosaving a document for a particular JPEdit Window
+ * Class representing the repeating task of autosaving a document for a particular JPEdit Window.
+ * The task is run for every window together by the {@link AutoSaveCoordinator}, whenever the
+ * {@link AutoSavePolicy} says this window is due. The worker subscribes to the window's
+ * {@link com.tom.jpedit.document.DocumentChangeBus} to time its edits.
+ * <p>
+ * The document is autosaved as an {@link EditJournal}: a base copy of the document in
+ * {@link JPEditWindow#getTempSaveFileName()} and the edits made since in
+ * {@link JPEditWindow#getTempJournalFileName()}. Each run only appends the edits made since the last one.
+ * <p>
+ * A run that finds the document at the revision it last persisted writes nothing at all. How many runs
+ * wrote and how many were skipped is counted per worker and across the application.
  */
-public class AutoSaveWorker {
+public class AutoSaveWorker implements DocumentChangeListener {
+
+    private static final AtomicLong totalWrites = new AtomicLong();
+    private static final AtomicLong totalSkipped = new AtomicLong();
 
     private final JPEditWindow owner;
-    private ScheduledFuture<?> scheduledFuture;
+    private final EditJournal journal;
+    private final Path baseFile;
+    private final Path journalFile;
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    // set on the FX thread, a run already past the check still finishes before the journal is closed
+    private volatile boolean terminated = false;
+    // when the document was edited, written on the FX thread
+    private volatile long lastEditNanos;
+    private volatile long oldestUnsavedEditNanos;
+    private volatile boolean editedSinceAutosave = true;
+    // when the last autosave ran, whether or not it wrote anything
+    private volatile long lastAutosaveNanos;
+    // the window's save file, which is an FX property, copied for the I/O thread
+    private volatile String savePath;
 
+    /**
+     * Creates the worker and starts journaling the edits of the window. Must be called on the FX thread
+     *
+     * @param owner the window to autosave
+     */
     public AutoSaveWorker(JPEditWindow owner) {
         this.owner = owner;
+        this.baseFile = Path.of(owner.getTempSaveFileName());
+        this.journalFile = Path.of(owner.getTempJournalFileName());
+        this.journal = new EditJournal(owner.getChangeBus(), baseFile, journalFile);
+        long now = System.nanoTime();
+        this.lastEditNanos = now;
+        this.oldestUnsavedEditNanos = now;
+        this.lastAutosaveNanos = now;
+        owner.getChangeBus().subscribe(this);
+        owner.saveFileProperty().addListener((observable, oldFile, newFile) -> savePath = pathOf(newFile));
+        this.savePath = pathOf(owner.getSaveFile());
+    }
+
+    private static String pathOf(File file) {
+        return file == null ? null : file.getAbsolutePath();
+    }
+
+    @Override
+    public void documentChanged(@NotNull DocumentChanges changes) {
+        long now = System.nanoTime();
+        if (!editedSinceAutosave) {
+            oldestUnsavedEditNanos = now;
+            editedSinceAutosave = true;
+        }
+        lastEditNanos = now;
+        ApplicationContext.getContext().getAutoSaveCoordinator().edited(this);
+    }
+
+    /**
+     * Asks for the window to be autosaved as soon as the {@link AutoSavePolicy} allows, for example because
+     * autosave was turned back on while there were unsaved edits
+     */
+    public void requestAutosave() {
+        ApplicationContext.getContext().getAutoSaveCoordinator().edited(this);
+    }
+
+    /**
+     * @return true if there are edits that have not been autosaved and autosave is on for the window
+     */
+    boolean hasUnsavedEdits() {
+        return !terminated && owner.isAutoSaveEnabled() && !journal.isUpToDate();
+    }
+
+    /**
+     * @return when this window is next due to be autosaved, as a {@link System#nanoTime()} value
+     */
+    long dueNanos(@NotNull AutoSavePolicy policy) {
+        // edits left over by a run that could not write them are as old as that run
+        long oldest = editedSinceAutosave ? oldestUnsavedEditNanos : lastAutosaveNanos;
+        return policy.dueNanos(lastEditNanos, oldest, lastAutosaveNanos);
     }
 
+    /**
+     * Adds this worker to the application's {@link AutoSaveCoordinator}, which runs it at every tick
+     */
     public void start() {
-        scheduledFuture = scheduleTask(
-                ApplicationContext.getContext().getUserPreferences().getAutosavePeriodMillis(),
-                TimeUnit.MILLISECONDS
-        );
+        ApplicationContext.getContext().getAutoSaveCoordinator().register(this);
+    }
+
+    /**
+     * Writes the edits made since the last run, if there are any. Called by the {@link AutoSaveCoordinator}
+     *
+     * @param forceBase true to force a new base file to disk before it replaces the old one
+     * @return true if anything was written
+     */
+    synchronized boolean autosave(boolean forceBase) {
+        lastAutosaveNanos = System.nanoTime();
+        // in large file mode the document is only the page on screen, and while loading it is only part of the file
+        if (terminated || !owner.isAutoSaveEnabled() || owner.isLargeFileMode() || owner.isLoading()) {
+            return false;
+        }
+        if (journal.isUpToDate()) {
+            skipped.incrementAndGet();
+            totalSkipped.incrementAndGet();
+            return false;
+        }
+        editedSinceAutosave = false;
+        try {
+            long written = journal.flush(forceBase);
+            writes.incrementAndGet();
+            totalWrites.incrementAndGet();
+            JPLogger.debug(JPLogger.getAppLog(), "Autosaved " + written + " bytes to " + owner.getTempSaveFileName());
+            return true;
+        } catch (IOException e) {
+            JPLogger.getErrLog().severe("Temporary save file cannot be accessed. Turning autosave off!");
+            JPLogger.getErrLog().severe(e.getMessage());
+            JPLogger.getErrLog().severe(JavaFXUtilsKt.stackTraceToString(e.getStackTrace()));
+            owner.setAutoSaveEnabled(false);
+            this.stop();
+            return false;
+        }
     }
 
-    @NotNull
-    public ScheduledFuture<?> scheduleTask(long delay, TimeUnit unit) {
-        if (scheduledFuture != null) {
-            scheduledFuture.cancel(true);
-            try {
-                scheduledFuture.get();
-                throw new IllegalStateException("Failed to cancel scheduled future during rescheduling");
-            } catch (CancellationException | ExecutionException | InterruptedException e) {
-                // ignore this is what we want from #get();
-            }
+    /**
+     * Describes what the last run wrote, for the {@link AutoSaveManifest}. Called on the I/O thread after a run wrote
+     *
+     * @return the manifest entry of the window
+     */
+    @NotNull AutoSaveManifest.Entry manifestEntry() {
+        long size = 0;
+        try {
+            size = Files.size(baseFile) + (Files.exists(journalFile) ? Files.size(journalFile) : 0);
+        } catch (IOException e) {
+            JPLogger.getErrLog().warning("Could not read the size of autosave " + baseFile + ": " + e.getMessage());
         }
-        return ApplicationContext.getContext().getExecutor().scheduleAtFixedRate(this::autosaveAction, 0, delay, unit);
-    }
-
-    private void autosaveAction() {
-        if (owner.isAutoSaveEnabled()) {
-            try (PrintWriter writer = new PrintWriter(new FileWriter(owner.getTempSaveFileName()))) {
-                // TODO: watch out for NPE, thread starts in constructor
-                JPLogger.getAppLog()
-                        .info("About to autosave " + owner.getTempSaveFileName() + " with " + owner.getTextArea()
-                                                                                                   .getText());
-                writer.print(owner.getTextArea().getText());
-                writer.flush();
-            } catch (IOException e) {
-                JPLogger.getErrLog().severe("Temporary save file cannot be accessed. Turning autosave off!");
-                JPLogger.getErrLog().severe(e.getMessage());
-                JPLogger.getErrLog().severe(JavaFXUtilsKt.stackTraceToString(e.getStackTrace()));
-                owner.setAutoSaveEnabled(false);
-                this.stop();
-            }
+        return new AutoSaveManifest.Entry(
+                owner.getId(),
+                baseFile.getFileName().toString(),
+                journalFile.getFileName().toString(),
+                savePath,
+                StandardCharsets.UTF_8.name(),
+                size,
+                journal.getPersistedRevision()
+        );
+    }
+
+    /**
+     * @return the id of the window this autosaves
+     */
+    int getWindowId() {
+        return owner.getId();
+    }
+
+    /**
+     * Forces what the last run wrote to disk
+     */
+    synchronized void force() throws IOException {
+        if (!terminated) {
+            journal.force();
         }
     }
 
+    /**
+     * @return the number of runs of this worker that found nothing changed and wrote nothing
+     */
+    public long getSkippedCount() {
+        return skipped.get();
+    }
+
+    /**
+     * @return the number of runs of this worker that wrote to the autosave files
+     */
+    public long getWriteCount() {
+        return writes.get();
+    }
+
+    /**
+     * @return the number of autosave runs of every window that wrote nothing
+     */
+    public static long getTotalSkippedCount() {
+        return totalSkipped.get();
+    }
+
+    /**
+     * @return the number of autosave runs of every window that wrote to the autosave files
+     */
+    public static long getTotalWriteCount() {
+        return totalWrites.get();
+    }
+
     protected void stop() {
-        JPLogger.getAppLog().info("Performing abnormal stop. Scheduled future will not be awaited");
-        scheduledFuture.cancel(true);
-        JPLogger.getAppLog().info("Future cancellation initiated");
+        JPLogger.getAppLog().info("Performing abnormal stop of autosave for " + owner.getTempSaveFileName());
+        ApplicationContext.getContext().getAutoSaveCoordinator().unregister(this);
+    }
+
+    /**
+     * Stops autosaving the window. Must be called on the FX thread, which it does not block: the worker leaves the
+     * coordinator at once, and the journal is closed on the I/O thread after a run that is in progress there
+     *
+     * @return completes once the journal is closed and the window is out of the manifest, on the I/O thread
+     */
+    public @NotNull CompletableFuture<Void> terminate() {
+        JPLogger.getAppLog().info("Terminating autosave for " + owner.getTitle());
+        terminated = true;
+        owner.getChangeBus().unsubscribe(this);
+        journal.detach();
+        return ApplicationContext.getContext().getAutoSaveCoordinator().retire(this, this::closeJournal);
     }
 
-    public void terminate() throws ExecutionException, InterruptedException {
-        JPLogger.getAppLog().info("Terminating scheduled task for " + owner.getTitle());
-        scheduledFuture.cancel(true);
+    private synchronized void closeJournal() {
         try {
-            JPLogger.getAppLog().info("Awaiting cancellation of future");
-            scheduledFuture.get();
-        } catch (CancellationException e) {
-            //ignore--we expect this
+            journal.close();
+        } catch (IOException e) {
+            JPLogger.getErrLog().warning("Could not close autosave journal: " + e.getMessage());
         }
-        JPLogger.getAppLog().info("Future cancelled");
+        JPLogger.getAppLog().info("Autosave wrote " + writes.get() + " times and skipped " + skipped.get() + " times");
     }
 }
-
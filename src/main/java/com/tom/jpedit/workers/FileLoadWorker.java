@@ -0,0 +1,206 @@
+package com.tom.jpedit.workers;
+
+import com.tom.jpedit.ApplicationContext;
+import com.tom.jpedit.gui.JPEditWindow;
+import com.tom.jpedit.logging.JPLogger;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import tom.javafx.JavaFXUtilsKt;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Background task that reads a file into a {@link JPEditWindow} a chunk at a time.
+ * <p>
+ * The file is read and decoded off the JavaFX Application Thread. Each decoded chunk is handed to the
+ * FX thread and appended to the window's document, so the start of the file is on screen long before
+ * the end has been read. The first chunk is kept small for that reason. Only a few chunks may be waiting
+ * for the FX thread at once; reading pauses if the FX thread falls behind.
+ * <p>
+ * The progress of the task is the number of bytes read, and the task can be cancelled at any time,
+ * in which case the window is emptied again.
+ * <p>
+ * If the file decoded without any malformed input and did not change while it was read, the document is told
+ * it is a copy of the file, which lets the next save copy unchanged text straight from it.
+ */
+public class FileLoadWorker extends Task<Long> {
+    public static final int FIRST_CHUNK_BYTES = 16 * 1024;
+    public static final int CHUNK_BYTES = 1024 * 1024;
+    private static final int MAX_PENDING_CHUNKS = 4;
+    // what the decoder puts in place of malformed input
+    private static final char REPLACEMENT_CHARACTER = '\uFFFD';
+
+    private final JPEditWindow owner;
+    private final File file;
+    private final Charset charset;
+    private final BlockingQueue<String> pending = new ArrayBlockingQueue<>(MAX_PENDING_CHUNKS);
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private volatile boolean sawReplacement = false;
+    private volatile BasicFileAttributes loadedAttributes;
+    private Runnable onLoaded;
+
+    public FileLoadWorker(@NotNull JPEditWindow owner, @NotNull File file) {
+        this(owner, file, StandardCharsets.UTF_8);
+    }
+
+    public FileLoadWorker(@NotNull JPEditWindow owner, @NotNull File file, @NotNull Charset charset) {
+        this.owner = owner;
+        this.file = file;
+        this.charset = charset;
+    }
+
+    public @NotNull File getFile() {
+        return file;
+    }
+
+    /**
+     * Sets what to do once the whole file is in the window, such as selecting part of it. Unlike a handler of
+     * {@link #setOnSucceeded(javafx.event.EventHandler)}, this runs after the last chunk has been added
+     *
+     * @param onLoaded run on the FX thread if the file loads, or null for nothing
+     */
+    public void setOnLoaded(@Nullable Runnable onLoaded) {
+        this.onLoaded = onLoaded;
+    }
+
+    /**
+     * Begins loading the file into the window on the application executor
+     */
+    public void start() {
+        owner.beginLoading(this);
+        ApplicationContext.getContext().getExecutor().execute(this);
+    }
+
+    @Override
+    protected Long call() throws IOException, InterruptedException {
+        CharsetDecoder decoder = charset.newDecoder()
+                                        .onMalformedInput(CodingErrorAction.REPLACE)
+                                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        Path path = file.toPath();
+        BasicFileAttributes before = Files.readAttributes(path, BasicFileAttributes.class);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long read = 0;
+            ByteBuffer in = ByteBuffer.allocate(CHUNK_BYTES);
+            CharBuffer out = CharBuffer.allocate(CHUNK_BYTES);
+            in.limit(FIRST_CHUNK_BYTES);
+            boolean eof = false;
+            while (!eof && !isCancelled()) {
+                int n = channel.read(in);
+                eof = n < 0;
+                read += Math.max(n, 0);
+                in.flip();
+                CoderResult result;
+                while ((result = decoder.decode(in, out, eof)).isOverflow()) {
+                    publish(out);
+                }
+                if (result.isError()) {
+                    result.throwException();
+                }
+                in.compact();
+                if (eof) {
+                    while (decoder.flush(out).isOverflow()) {
+                        publish(out);
+                    }
+                }
+                publish(out);
+                updateProgress(read, size);
+            }
+            BasicFileAttributes after = Files.readAttributes(path, BasicFileAttributes.class);
+            if (after.lastModifiedTime().equals(before.lastModifiedTime())
+                    && Objects.equals(after.fileKey(), before.fileKey())
+                    && after.size() == read) {
+                loadedAttributes = after;
+            }
+            return read;
+        }
+    }
+
+    private void publish(CharBuffer out) throws InterruptedException {
+        out.flip();
+        if (out.hasRemaining()) {
+            String chunk = out.toString();
+            if (chunk.indexOf(REPLACEMENT_CHARACTER) >= 0) {
+                sawReplacement = true;
+            }
+            pending.put(chunk);
+            if (drainScheduled.compareAndSet(false, true)) {
+                Platform.runLater(this::drain);
+            }
+        }
+        out.clear();
+    }
+
+    /**
+     * Moves every chunk that is waiting into the window. Runs on the FX thread
+     */
+    private void drain() {
+        drainScheduled.set(false);
+        String chunk;
+        while ((chunk = pending.poll()) != null) {
+            if (!isCancelled()) {
+                owner.appendLoadedText(chunk);
+            }
+        }
+    }
+
+    @Override
+    protected void succeeded() {
+        drain();
+        if (!owner.endLoading(this)) {
+            return;
+        }
+        BasicFileAttributes attributes = loadedAttributes;
+        if (attributes != null && !sawReplacement) {
+            owner.getDocument().loadedFrom(file.toPath().toAbsolutePath(), attributes);
+        }
+        owner.setSaveFile(file);
+        owner.saveUpdated();
+        ApplicationContext.getContext().newRecentFile(file);
+        JPLogger.getAppLog().info("Loaded " + getValue() + " bytes from " + file + " into window " + owner.getId());
+        if (onLoaded != null) {
+            onLoaded.run();
+        }
+    }
+
+    @Override
+    protected void cancelled() {
+        pending.clear();
+        if (owner.endLoading(this)) {
+            owner.newFile();
+        }
+        JPLogger.getAppLog().info("Loading " + file + " was cancelled");
+    }
+
+    @Override
+    protected void failed() {
+        pending.clear();
+        if (!owner.endLoading(this)) {
+            return;
+        }
+        owner.newFile();
+        Throwable e = getException();
+        JavaFXUtilsKt.popupAlert("The file " + file.getAbsolutePath() + " could not be read!", "Could not open file!");
+        JPLogger.getErrLog()
+                .warning("Failed to load " + file.getAbsolutePath() + "\n" + JavaFXUtilsKt.stackTraceToString(e.getStackTrace()));
+    }
+}
@@ -0,0 +1,221 @@
+package com.tom.jpedit.workers;
+
+import com.tom.jpedit.ApplicationContext;
+import com.tom.jpedit.document.DocumentSnapshot;
+import com.tom.jpedit.document.FileLayout;
+import com.tom.jpedit.gui.JPEditWindow;
+import com.tom.jpedit.logging.JPLogger;
+import javafx.concurrent.Task;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import tom.javafx.JavaFXUtilsKt;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.List;
+
+/**
+ * Background task that writes a {@link DocumentSnapshot} of a {@link JPEditWindow} to a file.
+ * <p>
+ * The snapshot is taken on the FX thread when the save is requested, so the user can keep editing
+ * while it is encoded and written. The text is written to a temporary file next to the target, optionally
+ * forced to the storage device, and then renamed over the target in one atomic step. If the application
+ * dies part way through a save, the previous version of the file is still intact. The temporary file is given the
+ * permissions, owner and group of the file it replaces, and a symbolic link is followed so that the file it
+ * points to is replaced rather than the link.
+ * <p>
+ * When saving as UTF-8, any part of the document that is still stored byte for byte in the file it was loaded
+ * from or last saved to (see {@link FileLayout}) is copied from that file with {@code transferTo} rather than
+ * encoded again. Afterward the document is told where each of its pieces is in the newly saved file.
+ * <p>
+ * Saves run one at a time on {@link ApplicationContext#getIoExecutor()}. The value of the task is the
+ * number of bytes written.
+ */
+public class FileSaveWorker extends Task<Long> {
+    private static final int ENCODER_BUFFER_BYTES = 64 * 1024;
+
+    private final JPEditWindow owner;
+    private final DocumentSnapshot snapshot;
+    private final File file;
+    private final Charset charset;
+    private final boolean force;
+    private volatile FileLayout savedLayout;
+    private Runnable onSaved;
+
+    public FileSaveWorker(@NotNull JPEditWindow owner, @NotNull File file) {
+        this(
+                owner,
+                owner.getDocument().snapshot(),
+                file,
+                StandardCharsets.UTF_8,
+                ApplicationContext.getContext().getUserPreferences().isForceOnSave()
+        );
+    }
+
+    public FileSaveWorker(
+            @NotNull JPEditWindow owner,
+            @NotNull DocumentSnapshot snapshot,
+            @NotNull File file,
+            @NotNull Charset charset,
+            boolean force
+    ) {
+        this.owner = owner;
+        this.snapshot = snapshot;
+        this.file = file;
+        this.charset = charset;
+        this.force = force;
+    }
+
+    public @NotNull File getFile() {
+        return file;
+    }
+
+    /**
+     * Sets what to do once the file has been replaced and the window marked as saved, such as closing the window.
+     * Unlike a handler of {@link #setOnSucceeded(javafx.event.EventHandler)}, this runs after the window has been
+     * updated
+     *
+     * @param onSaved run on the FX thread if the save succeeds, or null for nothing
+     */
+    public void setOnSaved(@Nullable Runnable onSaved) {
+        this.onSaved = onSaved;
+    }
+
+    /**
+     * Queues the save on the application's I/O executor
+     */
+    public void start() {
+        ApplicationContext.getContext().getIoExecutor().execute(this);
+    }
+
+    @Override
+    protected Long call() throws IOException {
+        Path target = resolveTarget(file.toPath());
+        Path temp = Files.createTempFile(target.getParent(), "." + target.getFileName() + ".", ".tmp");
+        try {
+            long written;
+            List<FileLayout.Span> spans;
+            CharsetEncoder encoder = charset.newEncoder()
+                                            .onMalformedInput(CodingErrorAction.REPLACE)
+                                            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                 Writer writer = Channels.newWriter(channel, encoder, ENCODER_BUFFER_BYTES)) {
+                spans = write(channel, writer);
+                if (force) {
+                    channel.force(true);
+                }
+                written = channel.size();
+            }
+            copyAttributes(target, temp);
+            moveOver(temp, target);
+            if (spans != null) {
+                savedLayout = FileLayout.of(target, Files.readAttributes(target, BasicFileAttributes.class), spans);
+            }
+            return written;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private List<FileLayout.Span> write(FileChannel channel, Writer writer) throws IOException {
+        if (!charset.equals(StandardCharsets.UTF_8)) {
+            snapshot.writeTo(writer);
+            writer.flush();
+            return null;
+        }
+        FileLayout layout = snapshot.fileLayout();
+        if (layout == null || !layout.isUnchangedOnDisk()) {
+            return snapshot.writeUtf8(channel, writer, null, null);
+        }
+        try (FileChannel source = FileChannel.open(layout.getFile(), StandardOpenOption.READ)) {
+            return snapshot.writeUtf8(channel, writer, layout, source);
+        }
+    }
+
+    /**
+     * @return the absolute path of the file, or of the file it links to if it is a symbolic link, so that saving
+     * replaces what the link points to and leaves the link in place
+     */
+    static Path resolveTarget(Path file) throws IOException {
+        Path target = file.toAbsolutePath();
+        return Files.exists(target) ? target.toRealPath() : target;
+    }
+
+    /**
+     * A temporary file is created readable only by whoever created it, so before it replaces a file it takes that
+     * file's permissions, owner and group. Does nothing if the target does not exist yet or the file system is not
+     * POSIX. An owner or group that cannot be given, because only a privileged user can, is left as it is
+     */
+    static void copyAttributes(Path from, Path to) throws IOException {
+        if (!Files.exists(from)) {
+            return;
+        }
+        PosixFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(from, PosixFileAttributes.class);
+        } catch (UnsupportedOperationException e) {
+            // not a POSIX file system, where the temporary file already has the usual permissions
+            return;
+        }
+        Files.setPosixFilePermissions(to, attributes.permissions());
+        PosixFileAttributeView view = Files.getFileAttributeView(to, PosixFileAttributeView.class);
+        try {
+            if (!attributes.owner().equals(view.getOwner())) {
+                view.setOwner(attributes.owner());
+            }
+            if (!attributes.group().equals(view.readAttributes().group())) {
+                view.setGroup(attributes.group());
+            }
+        } catch (FileSystemException e) {
+            JPLogger.getErrLog().warning("Could not give " + from + " its owner and group back: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Renames the temporary file over the target, in one atomic step where the file system allows it
+     */
+    static void moveOver(Path temp, Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            JPLogger.getErrLog().warning("Atomic move not supported for " + target + ", replacing it non-atomically");
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @Override
+    protected void succeeded() {
+        owner.setSaveFile(file);
+        owner.getDocument().setFileLayout(savedLayout);
+        // edited while the save was running, what is on screen may not be what was saved
+        owner.saveUpdated(snapshot);
+        JPLogger.getAppLog().info("Saved " + getValue() + " bytes to " + file + " from window " + owner.getId());
+        if (onSaved != null) {
+            onSaved.run();
+        }
+    }
+
+    @Override
+    protected void failed() {
+        Throwable e = getException();
+        JavaFXUtilsKt.popupAlert("The file " + file.getAbsolutePath() + " could not be saved!", "NOT SAVED");
+        JPLogger.getErrLog()
+                .warning("Failed to save " + file.getAbsolutePath() + "\n" + JavaFXUtilsKt.stackTraceToString(e.getStackTrace()));
+    }
+}
@@ -0,0 +1,219 @@
+package com.tom.jpedit.workers;
+
+import com.tom.jpedit.ApplicationContext;
+import com.tom.jpedit.logging.JPLogger;
+import com.tom.jpedit.search.FileMatch;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Base of the background tasks that go through many files at once, such as {@link FindInFilesWorker} and
+ * {@link ReplaceInFilesWorker}.
+ * <p>
+ * Each file is handed to the search pool as a task of its own. A semaphore bounds the files in flight to a couple
+ * per thread of the pool, however fast they are handed out, so the memory in use does not grow with the number
+ * of files. Matches the subclass finds are handed to the FX thread in batches, at most once a pulse. The
+ * message of the task is the number of files done so far.
+ *
+ * @param <V> the value of the task
+ */
+public abstract class FileTreeTask<V> extends Task<V> {
+    /**
+     * A file with a NUL byte this near its start is taken to be binary
+     */
+    static final int SNIFF_BYTES = 8 * 1024;
+
+    private final Path root;
+    private final Consumer<List<FileMatch>> onMatches;
+    private final ConcurrentLinkedQueue<FileMatch> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private final AtomicInteger filesDone = new AtomicInteger();
+
+    /**
+     * @param root      the directory the files are in
+     * @param onMatches called on the FX thread with each batch of matches, in no particular order of files
+     */
+    protected FileTreeTask(@NotNull Path root, @NotNull Consumer<List<FileMatch>> onMatches) {
+        this.root = root;
+        this.onMatches = onMatches;
+    }
+
+    /**
+     * Starts the task on the application's background executor
+     */
+    public void start() {
+        ApplicationContext.getContext().getExecutor().execute(this);
+    }
+
+    public @NotNull Path getRoot() {
+        return root;
+    }
+
+    /**
+     * Does whatever the task does to one file. Runs on a thread of the search pool
+     */
+    protected abstract void processFile(@NotNull Path file);
+
+    /**
+     * @return true once no more files should be started, which is at least once the task is cancelled
+     */
+    protected boolean isStopped() {
+        return isCancelled();
+    }
+
+    /**
+     * Walks the tree under the root, skipping hidden directories such as {@code .git}, and processes every regular
+     * file of at least {@code minSize} bytes. Returns once they are all done
+     */
+    protected void processTree(long minSize) throws IOException, InterruptedException {
+        Dispatcher dispatcher = new Dispatcher();
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (isStopped()) {
+                    return FileVisitResult.TERMINATE;
+                }
+                Path name = dir.getFileName();
+                boolean hidden = !dir.equals(root) && name != null && name.toString().startsWith(".");
+                return hidden ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (isStopped()) {
+                    return FileVisitResult.TERMINATE;
+                }
+                if (!attrs.isRegularFile() || attrs.size() < minSize) {
+                    return FileVisitResult.CONTINUE;
+                }
+                try {
+                    dispatcher.submit(file);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return FileVisitResult.TERMINATE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                JPLogger.debug(JPLogger.getAppLog(), "Skipped " + file + ": " + e.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        dispatcher.awaitAll();
+    }
+
+    /**
+     * Processes each of the files. Returns once they are all done
+     */
+    protected void processFiles(@NotNull Collection<Path> files) throws InterruptedException {
+        Dispatcher dispatcher = new Dispatcher();
+        for (Path file : files) {
+            if (isStopped()) {
+                break;
+            }
+            dispatcher.submit(file);
+        }
+        dispatcher.awaitAll();
+    }
+
+    /**
+     * Queues a match to be handed to the FX thread with the next batch
+     */
+    protected void publish(@NotNull FileMatch match) {
+        pending.add(match);
+        scheduleDrain();
+    }
+
+    /**
+     * Hands over any matches still queued. Called once the last file is done
+     */
+    protected void flushMatches() {
+        scheduleDrain();
+    }
+
+    /**
+     * @return true if there is a NUL byte among the first {@link #SNIFF_BYTES} bytes, which text files do not have
+     */
+    static boolean isBinary(@NotNull MemorySegment bytes) {
+        long n = Math.min(bytes.byteSize(), SNIFF_BYTES);
+        for (long i = 0; i < n; i++) {
+            if (bytes.get(ValueLayout.JAVA_BYTE, i) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            Platform.runLater(this::drain);
+        }
+    }
+
+    /**
+     * Hands every match that is waiting to the FX thread. Runs on the FX thread
+     */
+    private void drain() {
+        drainScheduled.set(false);
+        List<FileMatch> batch = new ArrayList<>();
+        FileMatch match;
+        while ((match = pending.poll()) != null) {
+            batch.add(match);
+        }
+        if (!batch.isEmpty() && !isCancelled()) {
+            onMatches.accept(batch);
+        }
+    }
+
+    /**
+     * Hands files to the search pool and waits for them
+     */
+    private class Dispatcher {
+        private final ForkJoinPool pool = ApplicationContext.getContext().getSearchPool();
+        // bounds the files open at once, and so the memory in use, however fast they are handed out
+        private final Semaphore inFlight = new Semaphore(pool.getParallelism() * 2);
+        private final Phaser running = new Phaser(1);
+
+        void submit(Path file) throws InterruptedException {
+            inFlight.acquire();
+            running.register();
+            pool.execute(() -> {
+                try {
+                    if (!isStopped()) {
+                        processFile(file);
+                    }
+                } finally {
+                    inFlight.release();
+                    running.arriveAndDeregister();
+                    updateMessage(Integer.toString(filesDone.incrementAndGet()));
+                }
+            });
+        }
+
+        void awaitAll() throws InterruptedException {
+            running.awaitAdvanceInterruptibly(running.arrive());
+        }
+    }
+}
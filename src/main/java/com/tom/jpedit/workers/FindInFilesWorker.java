@@ -0,0 +1,152 @@
+package com.tom.jpedit.workers;
+
+import com.tom.jpedit.listeners.TextAreaDocumentFilter;
+import com.tom.jpedit.logging.JPLogger;
+import com.tom.jpedit.search.ByteSearcher;
+import com.tom.jpedit.search.FileMatch;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Background task that searches every file under a directory for a fixed string.
+ * <p>
+ * The task walks the directory tree and hands each regular file to the search pool, where it is memory mapped
+ * and searched as raw bytes with a {@link ByteSearcher}. A file is unmapped as soon as it has been searched, so
+ * the heap holds nothing of the files but the matches found, and only a few files per thread are in flight at
+ * once, see {@link FileTreeTask}. How fast a large tree is searched then depends on how fast the disk can be
+ * read. Files whose first bytes contain a NUL byte are taken to be binary and skipped, and so are hidden
+ * directories such as {@code .git}.
+ * <p>
+ * Matches are handed to the FX thread in batches as they are found. The search stops once {@link #MAX_MATCHES}
+ * have been found. The message of the task is the number of files searched so far and the value is the number
+ * of matches.
+ */
+public class FindInFilesWorker extends FileTreeTask<Integer> {
+    /**
+     * The search stops after this many matches, which is more than anyone will look through
+     */
+    public static final int MAX_MATCHES = 10_000;
+    private static final int PREVIEW_BYTES = 160;
+    private static final long CANCEL_CHECK_BYTES = 1024 * 1024;
+
+    private final ByteSearcher searcher;
+    private final int queryChars;
+    private final AtomicInteger matchCount = new AtomicInteger();
+
+    /**
+     * @param root       the directory to search
+     * @param query      the text to find, which must not be empty
+     * @param ignoreCase true to match ASCII letters regardless of case
+     * @param onMatches  called on the FX thread with each batch of matches, in no particular order of files
+     */
+    public FindInFilesWorker(
+            @NotNull Path root,
+            @NotNull String query,
+            boolean ignoreCase,
+            @NotNull Consumer<List<FileMatch>> onMatches
+    ) {
+        super(root, onMatches);
+        this.searcher = new ByteSearcher(query, ignoreCase);
+        this.queryChars = query.length();
+    }
+
+    @Override
+    protected Integer call() throws IOException, InterruptedException {
+        processTree(searcher.length());
+        flushMatches();
+        return Math.min(matchCount.get(), MAX_MATCHES);
+    }
+
+    @Override
+    protected boolean isStopped() {
+        return super.isStopped() || matchCount.get() >= MAX_MATCHES;
+    }
+
+    @Override
+    protected void processFile(@NotNull Path file) {
+        try (Arena arena = Arena.ofConfined();
+             FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < searcher.length()) {
+                return;
+            }
+            MemorySegment bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size, arena);
+            if (!isBinary(bytes)) {
+                searchBytes(file, bytes);
+            }
+        } catch (IOException e) {
+            JPLogger.debug(JPLogger.getAppLog(), "Find in Files could not search " + file + ": " + e.getMessage());
+        }
+    }
+
+    private void searchBytes(Path file, MemorySegment bytes) {
+        long size = bytes.byteSize();
+        // the line and character counts are carried forward from one match to the next
+        long counted = 0;
+        int line = 0;
+        long chars = 0;
+        long from = 0;
+        while (from < size && !isCancelled()) {
+            long to = Math.min(size, from + CANCEL_CHECK_BYTES + searcher.length() - 1);
+            long start = searcher.indexOf(bytes, from, to);
+            if (start < 0) {
+                if (to == size) {
+                    return;
+                }
+                // a match may start in the last few bytes looked at and end past them
+                from = to - searcher.length() + 1;
+                continue;
+            }
+            for (; counted < start; counted++) {
+                byte b = bytes.get(ValueLayout.JAVA_BYTE, counted);
+                if (b == '\n') {
+                    line++;
+                }
+                chars += utf16Length(b);
+            }
+            if (matchCount.incrementAndGet() > MAX_MATCHES) {
+                return;
+            }
+            publish(new FileMatch(file, line, chars, queryChars, preview(bytes, start)));
+            from = start + searcher.length();
+        }
+    }
+
+    /**
+     * @return how many UTF-16 chars the UTF-8 sequence that the byte starts takes in a TextArea, or 0 if it does not
+     * start one or is a character the TextArea drops, such as the {@code \r} of a {@code \r\n}
+     */
+    private static int utf16Length(byte b) {
+        // a byte of a multibyte sequence is negative, and so is never taken for a control character
+        if ((b & 0xC0) == 0x80 || TextAreaDocumentFilter.isDropped((char) b)) {
+            return 0;
+        }
+        // four byte sequences are characters outside the BMP, which take a surrogate pair
+        return (b & 0xF8) == 0xF0 ? 2 : 1;
+    }
+
+    private static String preview(MemorySegment bytes, long at) {
+        long start = at;
+        while (start > 0 && at - start < PREVIEW_BYTES / 2 && bytes.get(ValueLayout.JAVA_BYTE, start - 1) != '\n') {
+            start--;
+        }
+        long end = at;
+        long limit = Math.min(bytes.byteSize(), start + PREVIEW_BYTES);
+        while (end < limit && bytes.get(ValueLayout.JAVA_BYTE, end) != '\n') {
+            end++;
+        }
+        byte[] line = bytes.asSlice(start, end - start).toArray(ValueLayout.JAVA_BYTE);
+        return new String(line, StandardCharsets.UTF_8).strip();
+    }
+}
@@ -0,0 +1,150 @@
+package com.tom.jpedit.workers;
+
+import com.tom.jpedit.ApplicationContext;
+import com.tom.jpedit.document.DocumentSnapshot;
+import com.tom.jpedit.gui.i18n.Strings;
+import com.tom.jpedit.search.CancellableText;
+import com.tom.jpedit.search.HorspoolSearcher;
+import com.tom.jpedit.search.MatchIndex;
+import com.tom.jpedit.search.ParallelSearch;
+import com.tom.jpedit.search.SearchMatch;
+import com.tom.jpedit.search.SearchMode;
+import com.tom.jpedit.search.TextSearcher;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Background task that searches a {@link DocumentSnapshot} as the user types a query.
+ * <p>
+ * The match nearest the anchor, searching forward and then wrapping around to the start, is handed to the FX
+ * thread as soon as it is found, and then every match in the text is collected for a {@link MatchIndex}.
+ * The matches of a fixed string in a large document are collected in parallel with {@link ParallelSearch}, which
+ * reports the matches of each segment as it finishes so the count still grows while they are collected.
+ * The count so far is the message of the task, which JavaFX hands to the FX thread at most once a pulse, and the
+ * value of the task is the collected matches. The same task without a nearest match callback rebuilds an index.
+ * <p>
+ * A new worker is started for every keystroke and the previous one cancelled, so the text is read through a
+ * {@link CancellableText} and a search that is no longer wanted stops within a few thousand characters.
+ * Nothing of a cancelled search ever reaches the FX thread.
+ */
+public class IncrementalSearchWorker extends Task<MatchIndex.Builder> {
+    private static final long COUNT_UPDATE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final DocumentSnapshot snapshot;
+    private final CharSequence text;
+    private final String query;
+    private final boolean ignoreCase;
+    private final SearchMode mode;
+    private final int anchor;
+    private final Consumer<SearchMatch> onNearest;
+
+    /**
+     * @param snapshot   the snapshot of the document to search
+     * @param query      what the user has typed so far, which must not be empty
+     * @param ignoreCase true to search case insensitively
+     * @param mode       how the query is read
+     * @param anchor     where to start looking for the nearest match
+     * @param onNearest  called on the FX thread with the nearest match, if there is one, or null to only collect
+     */
+    public IncrementalSearchWorker(
+            @NotNull DocumentSnapshot snapshot,
+            @NotNull String query,
+            boolean ignoreCase,
+            @NotNull SearchMode mode,
+            int anchor,
+            @Nullable Consumer<SearchMatch> onNearest
+    ) {
+        this.snapshot = snapshot;
+        this.text = new CancellableText(snapshot, this::isCancelled);
+        this.query = query;
+        this.ignoreCase = ignoreCase;
+        this.mode = mode;
+        this.anchor = anchor;
+        this.onNearest = onNearest;
+    }
+
+    /**
+     * Starts the search on the application's background executor
+     */
+    public void start() {
+        ApplicationContext.getContext().getExecutor().execute(this);
+    }
+
+    /**
+     * @return the snapshot that is searched. The collected matches are only valid for its revision
+     */
+    public @NotNull DocumentSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    @Override
+    protected MatchIndex.Builder call() {
+        // built here so compiling a large expression never holds up typing
+        TextSearcher searcher = mode.newSearcher(query, ignoreCase);
+        MatchIndex.Builder matches = new MatchIndex.Builder(searcher);
+        if (onNearest != null) {
+            SearchMatch nearest = nextNonEmpty(searcher, anchor);
+            if (nearest == null && anchor > 0) {
+                nearest = nextNonEmpty(searcher, 0);
+            }
+            if (nearest == null) {
+                return matches;
+            }
+            SearchMatch found = nearest;
+            Platform.runLater(() -> {
+                if (!isCancelled()) {
+                    onNearest.accept(found);
+                }
+            });
+        }
+
+        if (searcher instanceof HorspoolSearcher horspool) {
+            // every occurrence of a fixed string is indexed, even overlapping ones, and a large document is
+            // searched a segment per thread. Each segment adds to the count as it finishes
+            AtomicInteger found = new AtomicInteger();
+            AtomicLong lastUpdate = new AtomicLong(System.nanoTime());
+            matches.addStarts(ParallelSearch.findAll(
+                    horspool,
+                    snapshot,
+                    ApplicationContext.getContext().getSearchPool(),
+                    this::isCancelled,
+                    count -> {
+                        int total = found.addAndGet(count);
+                        long now = System.nanoTime();
+                        long last = lastUpdate.get();
+                        if (now - last > COUNT_UPDATE_NANOS && lastUpdate.compareAndSet(last, now)) {
+                            updateMessage(total + " " + Strings.Content.FIND_DIALOG_MATCHES_SO_FAR.text);
+                        }
+                    }
+            ));
+            return matches;
+        }
+        long lastUpdate = System.nanoTime();
+        SearchMatch match = nextNonEmpty(searcher, 0);
+        while (match != null) {
+            matches.add(match);
+            long now = System.nanoTime();
+            if (now - lastUpdate > COUNT_UPDATE_NANOS) {
+                updateMessage(matches.size() + " " + Strings.Content.FIND_DIALOG_MATCHES_SO_FAR.text);
+                lastUpdate = now;
+            }
+            match = nextNonEmpty(searcher, match.end());
+        }
+        return matches;
+    }
+
+    private @Nullable SearchMatch nextNonEmpty(TextSearcher searcher, int from) {
+        SearchMatch match = searcher.findNext(text, from);
+        while (match != null && match.isEmpty()) {
+            match = searcher.findNext(text, match.end() + 1);
+        }
+        return match;
+    }
+}
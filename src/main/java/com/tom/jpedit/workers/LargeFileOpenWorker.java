@@ -0,0 +1,100 @@
+package com.tom.jpedit.workers;
+
+import com.tom.jpedit.ApplicationContext;
+import com.tom.jpedit.document.MappedTextFile;
+import com.tom.jpedit.gui.JPEditWindow;
+import com.tom.jpedit.logging.JPLogger;
+import javafx.concurrent.Task;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import tom.javafx.JavaFXUtilsKt;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Background task that maps a file and indexes its lines, then shows it in a {@link JPEditWindow} in large file
+ * mode.
+ * <p>
+ * Mapping is quick, but finding where every line starts reads the whole file, which for a file of several
+ * gigabytes takes long enough that it must not happen on the JavaFX Application Thread. While the task runs the
+ * window shows that it is loading and the task can be cancelled, in which case the window is emptied again.
+ */
+public class LargeFileOpenWorker extends Task<MappedTextFile> {
+    private final JPEditWindow owner;
+    private final File file;
+    private Runnable onOpened;
+
+    public LargeFileOpenWorker(@NotNull JPEditWindow owner, @NotNull File file) {
+        this.owner = owner;
+        this.file = file;
+    }
+
+    public @NotNull File getFile() {
+        return file;
+    }
+
+    /**
+     * Sets what to do once the window is showing the file, such as moving to a line of it
+     *
+     * @param onOpened run on the FX thread if the file opens, or null for nothing
+     */
+    public void setOnOpened(@Nullable Runnable onOpened) {
+        this.onOpened = onOpened;
+    }
+
+    /**
+     * Begins opening the file on the application executor
+     */
+    public void start() {
+        owner.beginLoading(this);
+        ApplicationContext.getContext().getExecutor().execute(this);
+    }
+
+    @Override
+    protected MappedTextFile call() throws IOException {
+        MappedTextFile mapped = MappedTextFile.open(file);
+        if (isCancelled()) {
+            // nothing will take the file once the task is cancelled
+            mapped.close();
+        }
+        return mapped;
+    }
+
+    @Override
+    protected void succeeded() {
+        MappedTextFile mapped = getValue();
+        if (!owner.endLoading(this)) {
+            mapped.close();
+            return;
+        }
+        owner.setSaveFile(file);
+        owner.enterLargeFileMode(mapped);
+        owner.saveUpdated();
+        ApplicationContext.getContext().newRecentFile(file);
+        JPLogger.getAppLog().info("Mapped large file of " + mapped.size() + " bytes from " + file + " into window " + owner.getId());
+        if (onOpened != null) {
+            onOpened.run();
+        }
+    }
+
+    @Override
+    protected void cancelled() {
+        if (owner.endLoading(this)) {
+            owner.newFile();
+        }
+        JPLogger.getAppLog().info("Opening " + file + " was cancelled");
+    }
+
+    @Override
+    protected void failed() {
+        if (!owner.endLoading(this)) {
+            return;
+        }
+        owner.newFile();
+        Throwable e = getException();
+        JavaFXUtilsKt.popupAlert("The file " + file.getAbsolutePath() + " could not be opened!", "Could not open file!");
+        JPLogger.getErrLog()
+                .warning("Could not map large file: " + file.getAbsolutePath() + "\n" + JavaFXUtilsKt.stackTraceToString(e.getStackTrace()));
+    }
+}
@@ -0,0 +1,205 @@
+package com.tom.jpedit.workers;
+
+import com.tom.jpedit.listeners.TextAreaDocumentFilter;
+import com.tom.jpedit.logging.JPLogger;
+import com.tom.jpedit.search.FileMatch;
+import com.tom.jpedit.search.SearchMode;
+import com.tom.jpedit.search.StreamReplacer;
+import com.tom.jpedit.search.TextSearcher;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Background task that replaces every match of a query in many files on disk, without opening them in a window.
+ * <p>
+ * Matching is the same as Replace All in the Replace dialog: the query is read in any {@link SearchMode} and a
+ * regular expression's replacement may refer to its groups. Each file is decoded as UTF-8 and streamed through a
+ * {@link StreamReplacer}, so the memory used per file is a window of a few reads however large the file is, and
+ * files are processed in parallel on the search pool, see {@link FileTreeTask}.
+ * <p>
+ * A task either previews or writes. A preview walks the directory tree, writes nothing, and reports every match,
+ * up to {@link FindInFilesWorker#MAX_MATCHES} of them, along with which files have any, see
+ * {@link #getMatchedFiles()}. Writing goes through the files given, which are normally the ones a preview
+ * matched in. Each file is written to a temporary file beside it, which is then renamed over it in one atomic
+ * step, so a file is either replaced in full or left as it was. A file with no matches is not touched.
+ * <p>
+ * Files that are binary or not valid UTF-8 are skipped, as are files that cannot be read. A replacement that is
+ * not valid for the expression fails the task. The message of the task is the number of files done so far and
+ * the value is the number of matches replaced, or found by a preview.
+ */
+public class ReplaceInFilesWorker extends FileTreeTask<Integer> {
+    private static final int WRITER_BUFFER_BYTES = 64 * 1024;
+
+    private final String query;
+    private final boolean ignoreCase;
+    private final SearchMode mode;
+    private final String replacement;
+    private final @Nullable Collection<Path> files;
+    // fixed strings and terms are searched by a searcher shared between files; expressions need one each
+    private final TextSearcher sharedSearcher;
+    private final Set<Path> matchedFiles = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger matchCount = new AtomicInteger();
+    private final AtomicInteger published = new AtomicInteger();
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+    /**
+     * @param root        the directory the files are in
+     * @param files       the files to replace in, or null to preview every file under the root
+     * @param query       the query, which must not be empty
+     * @param ignoreCase  true to match regardless of case
+     * @param mode        how the query is read
+     * @param replacement the replacement as the user typed it
+     * @param onMatches   called on the FX thread with each batch of matches found by a preview
+     * @throws java.util.regex.PatternSyntaxException if the query is meant as a regular expression and is not valid
+     */
+    public ReplaceInFilesWorker(
+            @NotNull Path root,
+            @Nullable Collection<Path> files,
+            @NotNull String query,
+            boolean ignoreCase,
+            @NotNull SearchMode mode,
+            @NotNull String replacement,
+            @NotNull Consumer<List<FileMatch>> onMatches
+    ) {
+        super(root, onMatches);
+        this.files = files == null ? null : List.copyOf(files);
+        this.query = query;
+        this.ignoreCase = ignoreCase;
+        this.mode = mode;
+        this.replacement = replacement;
+        this.sharedSearcher = mode.newSearcher(query, ignoreCase);
+    }
+
+    /**
+     * @return true if this task only finds matches and writes nothing
+     */
+    public boolean isPreview() {
+        return files == null;
+    }
+
+    /**
+     * @return the files that had matches, once the task has succeeded. For a preview these are the files to
+     * write
+     */
+    public @NotNull Set<Path> getMatchedFiles() {
+        return Set.copyOf(matchedFiles);
+    }
+
+    @Override
+    protected Integer call() throws IOException, InterruptedException {
+        if (files == null) {
+            processTree(1);
+        } else {
+            processFiles(files);
+        }
+        flushMatches();
+        RuntimeException e = failure.get();
+        if (e != null) {
+            throw e;
+        }
+        return matchCount.get();
+    }
+
+    @Override
+    protected boolean isStopped() {
+        return super.isStopped() || failure.get() != null;
+    }
+
+    @Override
+    protected void processFile(@NotNull Path file) {
+        TextSearcher searcher = mode == SearchMode.REGEX ? mode.newSearcher(query, ignoreCase) : sharedSearcher;
+        // the offsets of a preview are where the match will be in a TextArea, which drops some characters
+        StreamReplacer replacer = new StreamReplacer(
+                searcher,
+                replacement,
+                c -> TextAreaDocumentFilter.isDropped((char) c)
+        );
+        try {
+            int replaced = files == null ? preview(file, replacer) : rewrite(file, replacer);
+            if (replaced > 0) {
+                matchedFiles.add(file);
+                matchCount.addAndGet(replaced);
+            }
+        } catch (CharacterCodingException e) {
+            JPLogger.debug(JPLogger.getAppLog(), "Replace in Files skipped " + file + ", which is not UTF-8");
+        } catch (IOException e) {
+            JPLogger.debug(JPLogger.getAppLog(), "Replace in Files could not process " + file + ": " + e.getMessage());
+        } catch (CancellationException ignored) {
+            // the task is being cancelled and the file is left as it was
+        } catch (IllegalArgumentException e) {
+            // the replacement refers to a group the expression does not have, which is the same in every file
+            failure.compareAndSet(null, e);
+        }
+    }
+
+    private int preview(Path file, StreamReplacer replacer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (isBinary(channel)) {
+                return 0;
+            }
+            Reader reader = Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), StreamReplacer.READ_CHARS);
+            return replacer.replace(reader, Writer.nullWriter(), (offset, line, length, preview) -> {
+                if (published.incrementAndGet() <= FindInFilesWorker.MAX_MATCHES) {
+                    publish(new FileMatch(file, line, offset, length, preview));
+                }
+            }, this::isStopped);
+        }
+    }
+
+    private int rewrite(Path file, StreamReplacer replacer) throws IOException {
+        Path target = FileSaveWorker.resolveTarget(file);
+        Path temp = Files.createTempFile(target.getParent(), "." + target.getFileName() + ".", ".tmp");
+        try {
+            int replaced;
+            try (FileChannel in = FileChannel.open(target, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                 Writer writer = Channels.newWriter(out, StandardCharsets.UTF_8.newEncoder(), WRITER_BUFFER_BYTES)) {
+                if (isBinary(in)) {
+                    return 0;
+                }
+                Reader reader = Channels.newReader(in, StandardCharsets.UTF_8.newDecoder(), StreamReplacer.READ_CHARS);
+                replaced = replacer.replace(reader, writer, null, this::isStopped);
+            }
+            if (replaced > 0) {
+                FileSaveWorker.copyAttributes(target, temp);
+                FileSaveWorker.moveOver(temp, target);
+            }
+            return replaced;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Reads the first bytes of the file to see if it is binary and goes back to its start
+     */
+    private static boolean isBinary(FileChannel channel) throws IOException {
+        ByteBuffer start = ByteBuffer.allocate(SNIFF_BYTES);
+        while (start.hasRemaining() && channel.read(start) >= 0) {
+            // keep reading until the buffer is full or the file ends
+        }
+        channel.position(0);
+        return isBinary(MemorySegment.ofBuffer(start.flip()));
+    }
+}
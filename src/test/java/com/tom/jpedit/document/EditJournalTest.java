@@ -0,0 +1,158 @@
+package com.tom.jpedit.document;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class EditJournalTest {
+    // no surrogate pairs, which a random edit could split into text that does not survive UTF-8
+    private static final String[] INSERTS = {"", "a", "bc", "\n", "typed line\n", "é", "€", "ß\n"};
+
+    @TempDir
+    Path directory;
+    private Path baseFile;
+    private Path journalFile;
+    private PieceTable document;
+    private DocumentChangeBus bus;
+    private EditJournal journal;
+
+    @BeforeEach
+    void setUp() {
+        baseFile = directory.resolve("tempSave_1.tmp");
+        journalFile = directory.resolve("tempSave_1.journal");
+        document = new PieceTable("the text of the file\nas it was opened\n");
+        // delivered by the test with bus.flush(), as the FX thread would at the end of each pulse
+        bus = new DocumentChangeBus(document, delivery -> {
+        });
+        journal = new EditJournal(bus, baseFile, journalFile);
+    }
+
+    private void editRandomly(Random random) {
+        int offset = random.nextInt(document.length() + 1);
+        int removed = random.nextInt(Math.min(document.length() - offset, 5) + 1);
+        document.replace(offset, removed, INSERTS[random.nextInt(INSERTS.length)]);
+    }
+
+    @Test
+    void recoversTheDocument() throws IOException {
+        Random random = new Random(4);
+        for (int edit = 0; edit < 5000; edit++) {
+            if (random.nextInt(500) == 0) {
+                document.reset("reset " + edit + "\n");
+            } else {
+                editRandomly(random);
+            }
+            if (random.nextInt(10) == 0) {
+                bus.flush();
+            }
+            if (random.nextInt(50) == 0) {
+                bus.flush();
+                journal.flush();
+                assertEquals(document.toString(), EditJournal.recover(baseFile, journalFile));
+            }
+        }
+        bus.flush();
+        journal.flush();
+        assertEquals(document.revision(), journal.getPersistedRevision());
+        assertEquals(document.toString(), EditJournal.recover(baseFile, journalFile));
+        journal.detach();
+        journal.close();
+    }
+
+    @Test
+    void tornJournalRecoversEveryWholeRecord() throws IOException {
+        Random random = new Random(5);
+        List<String> texts = new ArrayList<>();
+        List<Long> sizes = new ArrayList<>();
+        journal.flush();
+        texts.add(document.toString());
+        sizes.add(Files.size(journalFile));
+        while (texts.size() < 60) {
+            editRandomly(random);
+            bus.flush();
+            if (journal.flush() > 0) {
+                texts.add(document.toString());
+                sizes.add(Files.size(journalFile));
+            }
+        }
+        journal.close();
+
+        Path torn = directory.resolve("torn.journal");
+        for (long cut = 0; cut <= sizes.getLast(); cut++) {
+            Files.copy(journalFile, torn, StandardCopyOption.REPLACE_EXISTING);
+            try (FileChannel channel = FileChannel.open(torn, StandardOpenOption.WRITE)) {
+                channel.truncate(cut);
+            }
+            // the text as of the last record that was written whole
+            int whole = 0;
+            while (whole + 1 < sizes.size() && sizes.get(whole + 1) <= cut) {
+                whole++;
+            }
+            assertEquals(texts.get(whole), EditJournal.recover(baseFile, torn), "journal cut at " + cut);
+        }
+    }
+
+    @Test
+    void recordFailingItsCrcEndsTheReplay() throws IOException {
+        document.insert(document.length(), "first\n");
+        bus.flush();
+        journal.flush();
+        String beforeSecond = document.toString();
+        long secondStart = Files.size(journalFile);
+        document.insert(0, "second record ");
+        bus.flush();
+        journal.flush();
+        document.insert(document.length(), "third\n");
+        bus.flush();
+        journal.flush();
+        journal.close();
+
+        try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // a byte of the inserted text of the second record, after its offset and lengths
+            long position = secondStart + 3 * Integer.BYTES + 2;
+            ByteBuffer single = ByteBuffer.allocate(1);
+            channel.read(single, position);
+            single.put(0, (byte) (single.get(0) ^ 0x20)).rewind();
+            channel.write(single, position);
+        }
+        assertEquals(beforeSecond, EditJournal.recover(baseFile, journalFile));
+    }
+
+    @Test
+    void journalOfAnEarlierBaseIsNotReplayed() throws IOException {
+        journal.flush();
+        document.insert(0, "edit of the first base ");
+        bus.flush();
+        journal.flush();
+        Path earlier = directory.resolve("earlier.journal");
+        Files.copy(journalFile, earlier);
+
+        document.reset("a new base\n");
+        bus.flush();
+        journal.flush();
+        journal.close();
+        Files.copy(earlier, journalFile, StandardCopyOption.REPLACE_EXISTING);
+        assertEquals("a new base\n", EditJournal.recover(baseFile, journalFile));
+    }
+
+    @Test
+    void baseWithoutAHeaderIsReadAsPlainText() throws IOException {
+        journal.close();
+        Files.writeString(baseFile, "written before journals\n");
+        Files.deleteIfExists(journalFile);
+        assertEquals("written before journals\n", EditJournal.recover(baseFile, journalFile));
+    }
+}
@@ -0,0 +1,78 @@
+package com.tom.jpedit.document;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LineIndexTest {
+    /**
+     * Checks every line and every offset of the index against the starts found by counting newlines
+     */
+    private static void assertIndexes(PieceTable document, LineIndex index) {
+        String text = document.toString();
+        List<Integer> starts = new ArrayList<>();
+        starts.add(0);
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                starts.add(i + 1);
+            }
+        }
+        assertEquals(starts.size(), index.lineCount());
+        for (int line = 0; line < starts.size(); line++) {
+            assertEquals((int) starts.get(line), index.offsetOfLine(line));
+        }
+        int line = 0;
+        for (int offset = 0; offset <= text.length(); offset++) {
+            while (line + 1 < starts.size() && starts.get(line + 1) <= offset) {
+                line++;
+            }
+            assertEquals(line, index.lineOfOffset(offset), "line of " + offset);
+            assertEquals(offset - starts.get(line), index.columnOfOffset(offset), "column of " + offset);
+        }
+    }
+
+    @Test
+    void followsRandomEdits() {
+        Random random = new Random(3);
+        for (int round = 0; round < 1000; round++) {
+            PieceTable document = new PieceTable();
+            document.appendOriginal("ab\ncd");
+            LineIndex index = new LineIndex(document);
+            if (random.nextBoolean()) {
+                // chunks of a file still being loaded
+                document.appendOriginal("\n\nxy\n");
+                document.appendOriginal("z\n");
+            }
+            assertIndexes(document, index);
+            for (int edit = 0; edit < 50; edit++) {
+                if (random.nextInt(10) == 0) {
+                    document.reset("q\nw\n\ne".substring(random.nextInt(6)));
+                } else {
+                    int offset = random.nextInt(document.length() + 1);
+                    int removed = random.nextInt(Math.min(document.length() - offset, 4) + 1);
+                    StringBuilder inserted = new StringBuilder();
+                    for (int i = random.nextInt(4); i > 0; i--) {
+                        inserted.append(random.nextBoolean() ? 'a' : '\n');
+                    }
+                    document.replace(offset, removed, inserted);
+                }
+                assertIndexes(document, index);
+            }
+        }
+    }
+
+    @Test
+    void rejectsLinesAndOffsetsOutsideTheDocument() {
+        PieceTable document = new PieceTable("one\ntwo\n");
+        LineIndex index = new LineIndex(document);
+        assertEquals(3, index.lineCount());
+        assertThrows(IndexOutOfBoundsException.class, () -> index.offsetOfLine(3));
+        assertThrows(IndexOutOfBoundsException.class, () -> index.offsetOfLine(-1));
+        assertThrows(IndexOutOfBoundsException.class, () -> index.lineOfOffset(document.length() + 1));
+    }
+}
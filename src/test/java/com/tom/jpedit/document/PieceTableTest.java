@@ -0,0 +1,88 @@
+package com.tom.jpedit.document;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PieceTableTest {
+    private static final String[] INSERTS = {"", "a", "bc", "\n", "line\n", "é", "😀", "\n\n"};
+
+    private static void assertSameText(String expected, PieceTable document) {
+        assertEquals(expected, document.toString());
+        assertEquals(expected.length(), document.length());
+        for (int i = 0; i < expected.length(); i++) {
+            assertEquals(expected.charAt(i), document.charAt(i), "at " + i);
+        }
+    }
+
+    @Test
+    void randomEditsMatchAStringBuilder() throws IOException {
+        Random random = new Random(1);
+        for (int round = 0; round < 500; round++) {
+            StringBuilder expected = new StringBuilder("the original\ntext of the file");
+            PieceTable document = new PieceTable(expected);
+            for (int edit = 0; edit < 100; edit++) {
+                int offset = random.nextInt(expected.length() + 1);
+                int removed = random.nextInt(Math.min(expected.length() - offset, 6) + 1);
+                String inserted = INSERTS[random.nextInt(INSERTS.length)];
+                long revision = document.revision();
+                document.replace(offset, removed, inserted);
+                expected.replace(offset, offset + removed, inserted);
+                if (removed > 0 || !inserted.isEmpty()) {
+                    assertEquals(revision + 1, document.revision());
+                }
+                int start = random.nextInt(expected.length() + 1);
+                int end = start + random.nextInt(expected.length() - start + 1);
+                assertEquals(expected.substring(start, end), document.subSequence(start, end));
+            }
+            assertSameText(expected.toString(), document);
+            StringWriter writer = new StringWriter();
+            document.writeTo(writer);
+            assertEquals(expected.toString(), writer.toString());
+        }
+    }
+
+    @Test
+    void snapshotKeepsItsTextWhileTheDocumentChanges() {
+        Random random = new Random(2);
+        PieceTable document = new PieceTable("some text to edit\n".repeat(20));
+        for (int i = 0; i < 200; i++) {
+            String before = document.toString();
+            DocumentSnapshot snapshot = document.snapshot();
+            int offset = random.nextInt(document.length() + 1);
+            document.replace(offset, Math.min(3, document.length() - offset), INSERTS[random.nextInt(INSERTS.length)]);
+            assertEquals(before, snapshot.toString());
+            assertEquals(before.hashCode(), snapshot.toString().hashCode());
+            assertEquals(before.length(), snapshot.length());
+        }
+    }
+
+    @Test
+    void contentHashDependsOnlyOnTheText() {
+        PieceTable typed = new PieceTable();
+        for (char c : "hello world".toCharArray()) {
+            typed.insert(typed.length(), String.valueOf(c));
+        }
+        PieceTable loaded = new PieceTable("hello world");
+        assertEquals(loaded.contentHash(), typed.contentHash());
+        assertEquals(loaded.snapshot().contentHash(), typed.snapshot().contentHash());
+    }
+
+    @Test
+    void appendOriginalOnlyWhileUnedited() {
+        PieceTable document = new PieceTable();
+        document.appendOriginal("first chunk, ");
+        document.appendOriginal("second chunk");
+        assertSameText("first chunk, second chunk", document);
+        document.insert(0, "edited ");
+        assertThrows(IllegalStateException.class, () -> document.appendOriginal("more"));
+        document.reset("new text");
+        document.appendOriginal(" and more");
+        assertSameText("new text and more", document);
+    }
+}
@@ -0,0 +1,85 @@
+package com.tom.jpedit.document;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UndoManagerTest {
+    private static UndoManager undoManagerOf(PieceTable document, long budgetBytes) {
+        return new UndoManager(document, document::replace, budgetBytes);
+    }
+
+    @Test
+    void undoesAndRedoesEveryStep() throws IOException {
+        PieceTable document = new PieceTable("");
+        try (UndoManager undo = undoManagerOf(document, 1L << 30)) {
+            String typed = "hello big world";
+            for (int i = 0; i < typed.length(); i++) {
+                document.insert(i, typed.substring(i, i + 1));
+            }
+            document.delete(document.length() - 3, 3);
+            List<String> texts = new ArrayList<>();
+            while (undo.undo()) {
+                texts.add(document.toString());
+            }
+            // the deletes, then one step per typed word
+            assertEquals(List.of("hello big world", "hello big ", "hello ", ""), texts);
+            while (undo.redo()) {
+                assertTrue(undo.canUndo());
+            }
+            assertEquals("hello big wo", document.toString());
+        }
+    }
+
+    @Test
+    void undoesAWholeDocumentReplace() throws IOException {
+        String original = "the original text of the document\n".repeat(1000);
+        PieceTable document = new PieceTable(original);
+        try (UndoManager undo = undoManagerOf(document, 1L << 20)) {
+            document.reset(original.toUpperCase());
+            assertTrue(undo.undo());
+            assertEquals(original, document.toString());
+            assertTrue(undo.redo());
+            assertEquals(original.toUpperCase(), document.toString());
+        }
+    }
+
+    @Test
+    void spillFileStaysBoundedAndSpilledStepsUndo() throws IOException {
+        Random random = new Random(8);
+        PieceTable document = new PieceTable("start\n");
+        List<String> texts = new ArrayList<>();
+        long largestSpill = 0;
+        try (UndoManager undo = undoManagerOf(document, 16 * 1024)) {
+            for (int edit = 0; edit < 5000; edit++) {
+                texts.add(document.toString());
+                StringBuilder pasted = new StringBuilder();
+                for (int i = 100 + random.nextInt(400); i > 0; i--) {
+                    pasted.append((char) ('a' + random.nextInt(26)));
+                }
+                int offset = random.nextInt(document.length() + 1);
+                document.replace(offset, Math.min(document.length() - offset, 200), pasted);
+                undo.endStep();
+                largestSpill = Math.max(largestSpill, undo.getSpillFileSize());
+            }
+            assertTrue(undo.getSpillFileSize() > 0);
+            // far less than the 5000 steps of text written to the file over the session
+            assertTrue(largestSpill < 2L * 1024 * 1024, "spill file grew to " + largestSpill);
+
+            int undone = 0;
+            while (undo.undo()) {
+                undone++;
+                assertEquals(texts.get(texts.size() - undone), document.toString());
+            }
+            assertTrue(undone > 0 && undone < texts.size());
+            assertFalse(undo.canUndo());
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.tom.jpedit.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class StreamReplacerTest {
+    // long enough that a window holding all of it would be too large
+    private static final int LONG_TEXT_CHARS = StreamReplacer.MAX_WINDOW_CHARS + 1024 * 1024;
+
+    private static String longText() {
+        StringBuilder text = new StringBuilder(LONG_TEXT_CHARS + 64);
+        for (int line = 0; text.length() < LONG_TEXT_CHARS; line++) {
+            text.append("line ").append(line).append(" lorem ipsum dolor sit amet\n");
+        }
+        return text.toString();
+    }
+
+    private static String replace(TextSearcher searcher, String replacement, String text, List<Long> offsets)
+            throws IOException {
+        StringWriter out = new StringWriter(text.length());
+        int count = new StreamReplacer(searcher, replacement).replace(
+                new StringReader(text), out, (offset, line, length, preview) -> offsets.add(offset), () -> false);
+        assertEquals(offsets.size(), count);
+        return out.toString();
+    }
+
+    private static List<Long> matchStarts(String regex, String text) {
+        Matcher matcher = Pattern.compile(regex).matcher(text);
+        List<Long> starts = new ArrayList<>();
+        while (matcher.find()) {
+            starts.add((long) matcher.start());
+        }
+        return starts;
+    }
+
+    @Test
+    void regexWithNoMatchCopiesTextLongerThanTheWindow() {
+        String text = longText();
+        List<Long> offsets = new ArrayList<>();
+        String result = assertTimeoutPreemptively(
+                Duration.ofSeconds(30), () -> replace(new RegexSearcher("ne+dle", false), "pin", text, offsets));
+        assertEquals(0, offsets.size());
+        assertEquals(text, result);
+    }
+
+    @Test
+    void regexReplacesEveryMatchInTextLongerThanTheWindow() throws IOException {
+        String text = longText() + "line 0 at the very end";
+        List<Long> offsets = new ArrayList<>();
+        String result = replace(new RegexSearcher("line (\\d+)0 ", false), "row $1_ ", text, offsets);
+        assertEquals(text.replaceAll("line (\\d+)0 ", "row $1_ "), result);
+        assertEquals(matchStarts("line (\\d+)0 ", text), offsets);
+    }
+
+    @Test
+    void regexMatchLongerThanAReadIsReplacedWhole() throws IOException {
+        String body = "lorem ipsum dolor\n".repeat(3 * StreamReplacer.READ_CHARS / 18);
+        String text = "x".repeat(1000) + "BEGIN" + body + "END, BEGIN short END and BEGIN" + body + "END"
+                      + "y".repeat(StreamReplacer.READ_CHARS);
+        List<Long> offsets = new ArrayList<>();
+        String result = replace(new RegexSearcher("BEGIN[\\s\\S]*?END", false), "[]", text, offsets);
+        assertEquals(text.replaceAll("BEGIN[\\s\\S]*?END", "[]"), result);
+        assertEquals(matchStarts("BEGIN[\\s\\S]*?END", text), offsets);
+        assertEquals(3, offsets.size());
+    }
+
+    @Test
+    void regexMatchStillOpenPastTheWindowFails() {
+        String text = "BEGIN" + longText() + "END";
+        assertThrows(IOException.class,
+                     () -> replace(new RegexSearcher("BEGIN[\\s\\S]*?END", false), "", text, new ArrayList<>()));
+    }
+
+    @Test
+    void plainTextMatchesAcrossReads() throws IOException {
+        String text = "x".repeat(StreamReplacer.READ_CHARS - 3) + "needle" + "x".repeat(10) + "needle";
+        List<Long> offsets = new ArrayList<>();
+        String result = replace(new HorspoolSearcher("needle", false), "pin", text, offsets);
+        assertEquals(text.replace("needle", "pin"), result);
+        assertEquals(List.of((long) StreamReplacer.READ_CHARS - 3, (long) StreamReplacer.READ_CHARS + 13), offsets);
+    }
+
+    @Test
+    void regexMatchingWholeTextLongerThanTheWindowFails() {
+        String text = longText();
+        assertThrows(
+                IOException.class, () -> replace(new RegexSearcher("[\\s\\S]*", false), "", text, new ArrayList<>()));
+    }
+}
@@ -0,0 +1,93 @@
+package com.tom.jpedit.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class TextSearcherTest {
+    private static final String ALPHABET = "abAB \n";
+
+    private static String randomText(Random random, int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return text.toString();
+    }
+
+    @Test
+    void horspoolFindsWhatIndexOfFinds() {
+        Random random = new Random(6);
+        for (int round = 0; round < 2000; round++) {
+            String text = randomText(random, random.nextInt(200));
+            String query = randomText(random, 1 + random.nextInt(4));
+            boolean ignoreCase = random.nextBoolean();
+            HorspoolSearcher searcher = new HorspoolSearcher(query, ignoreCase);
+            String haystack = ignoreCase ? text.toLowerCase(Locale.ROOT) : text;
+            String needle = ignoreCase ? query.toLowerCase(Locale.ROOT) : query;
+            for (int from = 0; from <= text.length(); from++) {
+                int expected = haystack.indexOf(needle, from);
+                SearchMatch match = searcher.findNext(text, from);
+                assertEquals(expected, match == null ? -1 : match.start(), query + " from " + from);
+                expected = haystack.lastIndexOf(needle, from - needle.length());
+                match = searcher.findPrevious(text, from);
+                assertEquals(expected, match == null ? -1 : match.start(), query + " before " + from);
+            }
+        }
+    }
+
+    @Test
+    void ahoCorasickFindsTheFirstAndLongestTerm() {
+        Random random = new Random(7);
+        for (int round = 0; round < 2000; round++) {
+            String text = randomText(random, random.nextInt(200));
+            String[] terms = new String[1 + random.nextInt(4)];
+            for (int i = 0; i < terms.length; i++) {
+                terms[i] = randomText(random, 1 + random.nextInt(3)).replaceAll("\\s", "a");
+            }
+            boolean ignoreCase = random.nextBoolean();
+            AhoCorasickSearcher searcher = new AhoCorasickSearcher(String.join(" ", terms), ignoreCase);
+            // an alternation tried longest first finds the longest of the terms starting at the first place
+            String alternation = Arrays.stream(terms)
+                                       .sorted(Comparator.comparingInt(String::length).reversed())
+                                       .map(Pattern::quote)
+                                       .collect(Collectors.joining("|"));
+            Matcher matcher = Pattern.compile(alternation, ignoreCase ? Pattern.CASE_INSENSITIVE : 0).matcher(text);
+            int from = 0;
+            while (matcher.find()) {
+                SearchMatch match = searcher.findNext(text, from);
+                assertEquals(new SearchMatch(matcher.start(), matcher.end()),
+                             match == null ? null : new SearchMatch(match.start(), match.end()), alternation);
+                from = match.end();
+            }
+            assertNull(searcher.findNext(text, from), alternation);
+        }
+    }
+
+    @Test
+    void regexReplacementExpandsGroupsLikeMatcher() {
+        String text = "2024-01-31, 1999-12-01 and 12-3";
+        String regex = "(?<year>\\d{4})-(\\d\\d)-(\\d\\d)";
+        String replacement = "$3/$2/${year} \\$";
+        RegexSearcher searcher = new RegexSearcher(regex, false);
+        StringBuilder replaced = new StringBuilder();
+        int copied = 0;
+        SearchMatch match = searcher.findNext(text, 0);
+        while (match != null) {
+            replaced.append(text, copied, match.start()).append(searcher.replacementFor(text, match, replacement));
+            copied = match.end();
+            match = searcher.findNext(text, copied);
+        }
+        replaced.append(text, copied, text.length());
+        assertEquals(text.replaceAll(regex, replacement), replaced.toString());
+    }
+}
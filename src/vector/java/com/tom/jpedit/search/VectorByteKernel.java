@@ -0,0 +1,73 @@
+package com.tom.jpedit.search;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteOrder;
+
+/**
+ * The SIMD half of {@link ByteSearcher}, written with the incubating Vector API.
+ * <p>
+ * A whole vector of candidate start offsets is tested at once: one load of the bytes at those offsets is compared
+ * with the first byte of the pattern and a second load, {@code length - 1} bytes further on, with the last byte.
+ * Only offsets where both compare equal are checked byte by byte, which in ordinary text is rarely more than one
+ * in a few hundred. When ignoring case a letter of the pattern is compared with its byte or'ed with
+ * {@code 0x20}, which lower cases an ASCII letter and can make no other byte equal to a lower case letter.
+ * <p>
+ * The class is in its own source set, which is only compiled by the {@code vector} build profile, so that the
+ * rest of the build does not need the incubating module. It must only be loaded when the
+ * {@code jdk.incubator.vector} module is present, which {@link ByteSearcher} checks before it looks it up.
+ */
+final class VectorByteKernel {
+    /**
+     * The preferred species, but at most 64 lanes, since a mask of candidates is read as the bits of a long.
+     * A platform with wider vectors, such as SVE with up to 256 byte lanes, searches 64 bytes per step
+     */
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED.length() > Long.SIZE
+                                                       ? ByteVector.SPECIES_512
+                                                       : ByteVector.SPECIES_PREFERRED;
+
+    private VectorByteKernel() {
+    }
+
+    /**
+     * @return true if the platform has vectors wide enough to be worth using. Where it has none the Vector API
+     * falls back to plain Java, which is much slower than the scalar search
+     */
+    static boolean isUsable() {
+        return SPECIES.length() >= 16;
+    }
+
+    /**
+     * Finds the first match that starts at or after {@code fromIndex} and ends at or before {@code toIndex}
+     *
+     * @see ByteSearcher#indexOf(MemorySegment, long, long)
+     */
+    static long indexOf(ByteSearcher searcher, MemorySegment bytes, long fromIndex, long toIndex) {
+        byte[] pattern = searcher.pattern();
+        int last = pattern.length - 1;
+        byte first = pattern[0];
+        byte lastByte = pattern[last];
+        byte firstFold = searcher.foldBits(first);
+        byte lastFold = searcher.foldBits(lastByte);
+        int lanes = SPECIES.length();
+        long end = Math.min(toIndex, bytes.byteSize());
+        long i = Math.max(fromIndex, 0);
+        // both loads of a step must lie before end
+        for (; i + last + lanes <= end; i += lanes) {
+            ByteVector head = ByteVector.fromMemorySegment(SPECIES, bytes, i, ByteOrder.nativeOrder());
+            ByteVector tail = ByteVector.fromMemorySegment(SPECIES, bytes, i + last, ByteOrder.nativeOrder());
+            VectorMask<Byte> candidates = head.or(firstFold).eq(first).and(tail.or(lastFold).eq(lastByte));
+            for (long bits = candidates.toLong(); bits != 0; bits &= bits - 1) {
+                long start = i + Long.numberOfTrailingZeros(bits);
+                if (searcher.matchesAt(bytes, start, last)) {
+                    return start;
+                }
+            }
+        }
+        // fewer offsets are left than fill a vector
+        return searcher.scalarIndexOf(bytes, i, toIndex);
+    }
+}